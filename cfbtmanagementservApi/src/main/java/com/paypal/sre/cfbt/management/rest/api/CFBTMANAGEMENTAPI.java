@@ -216,7 +216,9 @@ public interface CFBTMANAGEMENTAPI {
     
     @ApiOperation(
             value = "Request the paginated list of release tests, queued and running.",
-            notes = "If includePendingTestCompleteCallback is true, then this list will include all the release test which are yet to make a test complete callback in the last 30 minutes.",
+            notes = "If includePendingTestCompleteCallback is true, then this list will include all the release test which are yet to make a test complete callback in the last 30 minutes. "
+                    + "The execution requests are summaries without their tests unless detail=full is requested. "
+                    + "The list is sorted by position, a full page returns the X-CFBT-NEXT-CURSOR header which can be passed as the cursor of the next page instead of the page number.",
             response = PagedResource.class
     )
     @ApiResponses(value={
@@ -227,7 +229,8 @@ public interface CFBTMANAGEMENTAPI {
     @GET
     @Path("release-tests")
     Response getReleaseTests(@HeaderParam("X-CFBT-USER-INFO") String userInfo,
-            @QueryParam("page") int page_number, @QueryParam("size") int size, @QueryParam("queuestatus") String queuestatus, @QueryParam("includePendingTestCompleteCallback") boolean includePendingTestCompleteCallback);
+            @QueryParam("page") int page_number, @QueryParam("size") int size, @QueryParam("queuestatus") String queuestatus, @QueryParam("includePendingTestCompleteCallback") boolean includePendingTestCompleteCallback,
+            @QueryParam("detail") String detail, @QueryParam("cursor") String cursor);
     
     @ApiOperation(
             value = "Request a specific Release Test.",
@@ -242,7 +245,23 @@ public interface CFBTMANAGEMENTAPI {
     }) 
     @GET
     @Path("release-tests/{id}")
-    Response getReleaseTest(@HeaderParam("X-CFBT-USER-INFO") String userInfo, @PathParam("id") String id);   
+    Response getReleaseTest(@HeaderParam("X-CFBT-USER-INFO") String userInfo, @PathParam("id") String id);
+
+    @ApiOperation(
+            value = "Download the content of a test attachment.",
+            notes = "The content is streamed decoded, with the attachment type. A single byte range can be requested with the Range header."
+    )
+    @ApiResponses(value={
+        @ApiResponse(code = 200, message = "Attachment content"),
+        @ApiResponse(code = 206, message = "Requested range of the attachment content"),
+        @ApiResponse(code = 400, message = "Attachment does not exist"),
+        @ApiResponse(code = 416, message = "Range not satisfiable"),
+        @ApiResponse(code = 500, message = "Internal server error")
+    })
+    @GET
+    @Path("attachments/{id}/content")
+    @Produces(MediaType.WILDCARD)
+    Response getAttachmentContent(@HeaderParam("X-CFBT-USER-INFO") String userInfo, @PathParam("id") String id, @HeaderParam("Range") String range);
 
     /**
      * This method return the specified execution request id.
@@ -281,7 +300,7 @@ public interface CFBTMANAGEMENTAPI {
      */
     @ApiOperation(
         value = "Execution Request List",
-        notes = "Returns a list of pending, in-progress, and recently completed execution requests",
+        notes = "Returns a list of pending, in-progress, and recently completed execution requests. The requests are summaries without their tests unless detail=full is requested.",
         response = ExecutionRequest.class,
         responseContainer = "List"
     )
@@ -294,7 +313,8 @@ public interface CFBTMANAGEMENTAPI {
     @Path("execution-requests/system-status")
     Response systemStatusExecutionRequests(
         @HeaderParam("X-CFBT-USER-INFO") String userInfo,
-        @ApiParam(name = "systemStatusRequest", required = false) SystemStatusRequest request
+        @ApiParam(name = "systemStatusRequest", required = false) SystemStatusRequest request,
+        @QueryParam("detail") String detail
     );
 
     // =======================================================
@@ -482,7 +502,7 @@ public interface CFBTMANAGEMENTAPI {
             @ApiParam(name = "slackNotification", required = true) SlackNotification slackNotification);
 
     // =======================================================
-    @ApiOperation(value = "API to check if the components are covered by the release vetting cfbt tests for the specified/default (i.e. cfbt11) systemUnderTest dataCenter.", notes = "This API will return true in the response if it has the release vetting tests for the specified/default (i.e. cfbt11) systemUnderTest dataCenter that cover the specified components in the request.", response = ComponentsStatus.class)
+    @ApiOperation(value = "API to check if the components are covered by the release vetting cfbt tests for the specified/default (i.e. cfbt11) systemUnderTest dataCenter.", notes = "This API will return true in the response if it has the release vetting tests for the specified/default (i.e. cfbt11) systemUnderTest dataCenter that cover the specified components in the request. Tests installed or updated outside of this service are reflected within componentIndexRefreshInSeconds (60 seconds by default).", response = ComponentsStatus.class)
     @ApiResponses(value = { @ApiResponse(code = 500, message = "Internal Server Error"), @ApiResponse(code = 400, message = "If components list or systemUnderTest is not valid.") })
     @POST
     @Path("components-status")
@@ -491,7 +511,7 @@ public interface CFBTMANAGEMENTAPI {
 
     @ApiOperation(
             value="GetComponentList",
-            notes="Retrieves the component lists supported by CFBT system",
+            notes="Retrieves the component lists supported by CFBT system. With covered=true, tests installed or updated outside of this service are reflected within componentIndexRefreshInSeconds (60 seconds by default).",
             response=ComponentList.class
     )
     @ApiResponses(value={
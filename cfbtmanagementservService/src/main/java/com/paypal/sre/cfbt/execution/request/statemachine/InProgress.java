@@ -9,7 +9,10 @@ import com.ebay.kernel.cal.api.sync.CalTransactionFactory;
 import com.paypal.infra.util.cal.CalType;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import com.paypal.sre.cfbt.data.execapi.ReleaseTest;
 import org.slf4j.LoggerFactory;
@@ -28,6 +31,7 @@ import com.paypal.sre.cfbt.management.timeout.Timeout;
 import com.paypal.sre.cfbt.scheduler.Scheduler;
 import com.paypal.sre.cfbt.shared.CFBTLogger;
 import com.paypal.sre.cfbt.shared.DateUtil;
+import com.rits.cloning.Cloner;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -88,22 +92,39 @@ public class InProgress extends RequestState {
 
             try {
 
-                //Map containing request id & its associated test ids
-                Map<String, List<String>> testIdsForRequest = new HashMap<>();
+                //Union of the test ids of all requests, grouped by datacenter, so each datacenter is loaded once.
+                Map<String, Set<String>> testIdsByDatacenter = new HashMap<>();
                 for(ExecutionRequest executionRequest: requests) {
-                    List<String> testIds = new ArrayList<>();
+                    Set<String> testIds = testIdsByDatacenter.computeIfAbsent(executionRequest.getDatacenter(), (dc) -> new LinkedHashSet<>());
                     executionRequest.getTests().forEach((test) -> {
                         testIds.add(test.getId());
                     });
-                    testIdsForRequest.put(executionRequest.getId(), testIds);
                 }
+                long start = System.currentTimeMillis();
+                Map<String, Map<String, Test>> testsByDatacenter = testDAO.loadEnabledConfiguredTests(testIdsByDatacenter);
+                CFBTLogger.logInfo(LOGGER, InProgress.class.getCanonicalName(), "Loaded the tests of " + requests.size()
+                        + " requests for " + testIdsByDatacenter.size() + " datacenters in " + (System.currentTimeMillis() - start) + " ms");
 
                 //Map containing request id & its associated tests which are configured & enabled.
                 Map<String, List<Test>> testsForRequest = new HashMap<>();
+                Set<String> assignedTestIds = new HashSet<>();
+                Cloner cloner = new Cloner();
                 for(ExecutionRequest executionRequest: requests) {
+                    Map<String, Test> loadedTests = testsByDatacenter.get(executionRequest.getDatacenter());
+                    Set<String> requestTestIds = new LinkedHashSet<>();
+                    executionRequest.getTests().forEach((test) -> {
+                        requestTestIds.add(test.getId());
+                    });
+
                     List<Test> tests = new ArrayList<>();
-                    tests.addAll(testDAO.loadEnabledConfiguredTests(testIdsForRequest.get(executionRequest.getId()), executionRequest.getDatacenter()));
-                    if(tests != null && !tests.isEmpty()) {
+                    for (String testId : requestTestIds) {
+                        Test test = loadedTests.get(testId);
+                        if (test != null) {
+                            // Each request gets its own copy of a test shared within the batch.
+                            tests.add(assignedTestIds.add(executionRequest.getDatacenter() + "|" + testId) ? test : cloner.deepClone(test));
+                        }
+                    }
+                    if(!tests.isEmpty()) {
                         testsForRequest.put(executionRequest.getId(), tests);
                     }
                 }
@@ -180,7 +180,7 @@ public class RequestStatus {
     }
     
     public void processResult() throws Exception {
-        ExecutionRequest loadedRequest = requestDAO.getById(request.getId());
+        ExecutionRequest loadedRequest = requestDAO.getById(request.getId(), true);
         MongoConnectionFactory db = ConfigManager.getDatabaseConfig().getConnectionFactory();
         TestRepository testRepo = new TestRepository();
 
@@ -0,0 +1,261 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.executor;
+
+import com.paypal.sre.cfbt.data.ThreadDetails;
+import com.paypal.sre.cfbt.data.execapi.Execution;
+import com.paypal.sre.cfbt.data.executor.TestExecutionContainer;
+import com.paypal.sre.cfbt.management.cluster.ClusterInfo;
+import com.paypal.sre.cfbt.management.cluster.ClusterView;
+import com.paypal.sre.cfbt.management.dal.TestExecutionDAO;
+import com.paypal.sre.cfbt.management.dal.ThreadStatistics.ThreadStatistic;
+import com.paypal.sre.cfbt.management.rest.impl.ConfigManager;
+import com.paypal.sre.cfbt.mongo.MongoConnection;
+import com.paypal.sre.cfbt.mongo.MongoConnectionFactory;
+import com.paypal.sre.cfbt.shared.CFBTLogger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admission control of the test partitions published to the executors.
+ *
+ * Each partition runs sequentially on a single executor thread, so at most as many partitions as there are live
+ * threads in the cluster are kept in flight. The other partitions are held, highest priority first, and released as
+ * the in flight partitions complete. A later high priority release therefore does not wait behind the whole backlog
+ * of a large release already sitting in the topic.
+ *
+ * The controller is disabled by default ("dispatchBackpressureEnabled"): the held partitions only live in the memory
+ * of this node and are lost on restart, and only the partitions published by this node are accounted for, so several
+ * nodes dispatching at once can overcommit the executors. The capacity and execution status reads run on the
+ * dispatch thread, never under the lock guarding the held partitions. When admission control fails the partitions
+ * stay held and are retried on the next poll.
+ */
+public class DispatchController {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DispatchController.class);
+    private static final DispatchController INSTANCE = new DispatchController(DispatchController::getClusterCapacity, null);
+
+    /**
+     * Source of the number of partitions the executors can run at once.
+     */
+    interface CapacitySource {
+        int get(MongoConnectionFactory db) throws Exception;
+    }
+
+    private final PriorityQueue<HeldPartition> heldPartitions = new PriorityQueue<>();
+    /**
+     * Only used by the dispatch, under the dispatch lock.
+     */
+    private final List<List<String>> inFlightPartitions = new ArrayList<>();
+    private final Object dispatchLock = new Object();
+    private final CapacitySource capacitySource;
+    private ScheduledExecutorService poller;
+    private long sequence = 0;
+
+    private static class HeldPartition implements Comparable<HeldPartition> {
+        private final List<TestExecutionContainer> partition;
+        private final Consumer<List<TestExecutionContainer>> publisher;
+        private final long sequence;
+
+        HeldPartition(List<TestExecutionContainer> partition, Consumer<List<TestExecutionContainer>> publisher, long sequence) {
+            this.partition = partition;
+            this.publisher = publisher;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(HeldPartition other) {
+            // Partitions are sorted by priority, the first test carries the highest priority.
+            int priority = partition.get(0).getTest().getPriorityWeight()
+                    .compareTo(other.partition.get(0).getTest().getPriorityWeight());
+            return priority != 0 ? priority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * @param capacitySource The number of partitions the executors can run at once.
+     * @param poller         Runs the dispatch, created on first use when null.
+     */
+    DispatchController(CapacitySource capacitySource, ScheduledExecutorService poller) {
+        this.capacitySource = capacitySource;
+        this.poller = poller;
+    }
+
+    public static DispatchController getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Submit a partition for publication. The partition is published as soon as there is free capacity, it is held
+     * until then.
+     *
+     * @param partition The sorted partition of {@link TestExecutionContainer}
+     * @param publisher Publishes the partition to the executors.
+     */
+    public void submit(List<TestExecutionContainer> partition, Consumer<List<TestExecutionContainer>> publisher) {
+        if (partition == null || partition.isEmpty()) {
+            return;
+        }
+        if (!ConfigManager.getConfiguration().getBoolean("dispatchBackpressureEnabled", false)) {
+            publisher.accept(partition);
+            return;
+        }
+
+        ScheduledExecutorService dispatcher;
+        synchronized (this) {
+            heldPartitions.add(new HeldPartition(partition, publisher, sequence++));
+            dispatcher = startPolling();
+        }
+        dispatcher.execute(this::dispatch);
+    }
+
+    /**
+     * @return The number of partitions waiting for capacity.
+     */
+    public synchronized int getHeldPartitionCount() {
+        return heldPartitions.size();
+    }
+
+    /**
+     * @return The number of partitions published and not completed yet.
+     */
+    int getInFlightPartitionCount() {
+        synchronized (dispatchLock) {
+            return inFlightPartitions.size();
+        }
+    }
+
+    /**
+     * Release the held partitions which fit in the free capacity.
+     */
+    void dispatch() {
+        synchronized (dispatchLock) {
+            if (getHeldPartitionCount() == 0) {
+                return;
+            }
+            MongoConnectionFactory db = ConfigManager.getDatabaseConfig().getConnectionFactory();
+            TestExecutionDAO testExecutionDAO = TestExecutionDAO.getInstance(db);
+
+            try (MongoConnection c = db.newConnection()) {
+                Iterator<List<String>> inFlight = inFlightPartitions.iterator();
+                while (inFlight.hasNext()) {
+                    if (testExecutionDAO.getExecutionIdsInStatus(c, inFlight.next(),
+                            Arrays.asList(Execution.Status.PENDING, Execution.Status.IN_PROGRESS)).isEmpty()) {
+                        inFlight.remove();
+                    }
+                }
+
+                int threads = capacitySource.get(db);
+                if (threads <= 0) {
+                    CFBTLogger.logWarn(LOGGER, DispatchController.class.getCanonicalName(), "No live executor thread found, publishing "
+                            + getHeldPartitionCount() + " partitions without admission control");
+                }
+
+                while (threads <= 0 || inFlightPartitions.size() < threads) {
+                    HeldPartition held;
+                    synchronized (this) {
+                        held = heldPartitions.poll();
+                    }
+                    if (held == null) {
+                        break;
+                    }
+                    try {
+                        release(c, testExecutionDAO, held);
+                    } catch (Exception ex) {
+                        hold(held);
+                        throw ex;
+                    }
+                }
+            } catch (Exception ex) {
+                CFBTLogger.logError(LOGGER, DispatchController.class.getCanonicalName(), "Error during admission control, holding "
+                        + getHeldPartitionCount() + " partitions until the next poll", ex);
+            }
+
+            int held = getHeldPartitionCount();
+            if (held > 0) {
+                CFBTLogger.logInfo(LOGGER, DispatchController.class.getCanonicalName(), inFlightPartitions.size()
+                        + " partitions in flight, holding " + held + " partitions for capacity");
+            }
+        }
+    }
+
+    /**
+     * Publish what is still pending of a held partition. Executions skipped or aborted while held, e.g. by an
+     * emergency stop, are not published.
+     */
+    private void release(MongoConnection c, TestExecutionDAO testExecutionDAO, HeldPartition held) throws Exception {
+        Set<String> pending = testExecutionDAO.getExecutionIdsInStatus(c, executionIds(held.partition),
+                Arrays.asList(Execution.Status.PENDING));
+        List<TestExecutionContainer> partition = new ArrayList<>();
+        for (TestExecutionContainer container : held.partition) {
+            if (pending.contains(container.getExecution().getId())) {
+                partition.add(container);
+            }
+        }
+        if (!partition.isEmpty()) {
+            held.publisher.accept(partition);
+            inFlightPartitions.add(executionIds(partition));
+        }
+    }
+
+    private synchronized void hold(HeldPartition held) {
+        heldPartitions.add(held);
+    }
+
+    /**
+     * The number of live executor threads across the active nodes accepting test runs, from the {@link ClusterView}.
+     */
+    private static int getClusterCapacity(MongoConnectionFactory db) throws Exception {
+        int threads = 0;
+        for (ClusterInfo.Node node : ClusterView.getInstance().get(db, ConfigManager.getConfiguration()).getFullCluster().values()) {
+            if (Boolean.FALSE.equals(node.getActive()) || Boolean.FALSE.equals(node.getEnableTestRun())) {
+                continue;
+            }
+            int liveThreads = 0;
+            for (ThreadStatistic thread : node.getThreadList()) {
+                if (ThreadDetails.Status.UP.equals(thread.getStatus())) {
+                    liveThreads++;
+                }
+            }
+            threads += node.getNumThreads() == null ? liveThreads : Math.min(liveThreads, node.getNumThreads());
+        }
+        return threads;
+    }
+
+    private ScheduledExecutorService startPolling() {
+        if (poller == null) {
+            int interval = ConfigManager.getConfiguration().getInt("dispatchPollIntervalInSeconds", 5);
+            poller = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+                Thread thread = new Thread(runnable, "DispatchController");
+                thread.setDaemon(true);
+                return thread;
+            });
+            poller.scheduleWithFixedDelay(() -> {
+                try {
+                    dispatch();
+                } catch (Exception ex) {
+                    CFBTLogger.logError(LOGGER, DispatchController.class.getCanonicalName(), ex.getMessage(), ex);
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+        }
+        return poller;
+    }
+
+    private static List<String> executionIds(List<TestExecutionContainer> partition) {
+        List<String> ids = new ArrayList<>();
+        for (TestExecutionContainer container : partition) {
+            ids.add(container.getExecution().getId());
+        }
+        return ids;
+    }
+}
@@ -4,6 +4,7 @@
 package com.paypal.sre.cfbt.executor;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import org.slf4j.LoggerFactory;
 import com.paypal.sre.cfbt.data.execapi.ExecutionRequest;
@@ -29,16 +30,12 @@ public class Executor {
         CFBTLogger.logInfo(LOGGER, Executor.class.getCanonicalName(), "scheduleTests");
         List<TestExecutionContainer> requestList = null;
         try {
-            requestList = new TestExecutionContainerFactory().createRequestList(requests);
-            if(!requestList.isEmpty()) {
-                List<List<TestExecutionContainer>> partitionTests = PartitionUtil.partitionTestsBySharedData(requestList);
-                PartitionUtil.getTestPartitions(partitionTests);
-                PartitionUtil.sortPartitionsByPriority(partitionTests);
-                PartitionUtil.printTestPartitions(partitionTests);
-                for (List<TestExecutionContainer> testExecutionContainerList : partitionTests) {
-                    TestExecutionProducer.scheduleTasks(stripParameters(testExecutionContainerList));
-                }
-            } 
+            // Each partition is submitted as soon as it is initialized, highest priority first, and
+            // published once there is executor capacity for it.
+            requestList = new TestExecutionContainerFactory().createRequestList(requests, (partition) -> {
+                PartitionUtil.printTestPartitions(Collections.singletonList(partition));
+                DispatchController.getInstance().submit(stripParameters(partition), TestExecutionProducer::scheduleTasks);
+            });
         } catch (Exception e) {
             CFBTLogger.logError(LOGGER, Executor.class.getCanonicalName(), "Error creating the request List", e);
             
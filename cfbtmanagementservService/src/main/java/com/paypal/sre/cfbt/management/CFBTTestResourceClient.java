@@ -3,6 +3,7 @@ package com.paypal.sre.cfbt.management;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.ws.rs.client.Entity;
@@ -22,6 +23,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.paypal.sre.cfbt.data.test.AccountInfo;
 import com.paypal.sre.cfbt.data.test.Parameter;
+import com.paypal.sre.cfbt.management.rest.impl.ConfigManager;
 import com.paypal.sre.cfbt.shared.CFBTLogger;
 import com.paypal.sre.cfbt.testresource.api.rest.AccountRequest;
 import com.paypal.sre.cfbt.testresource.api.rest.AccountRequestType;
@@ -39,29 +41,72 @@ public class CFBTTestResourceClient {
 
     private static final Logger logger = LoggerFactory.getLogger(CFBTTestResourceClient.class);
     private static final String TESTRESOURCESERV_BASE_PATH = "v1/cfbt/";
+    private static final ObjectMapper PARAMETER_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private static final TypeReference<List<Parameter>> PARAMETER_LIST_TYPE = new TypeReference<List<Parameter>>() {
+    };
+
+    private ParameterCache parameterCache = null;
 
     /**
-     * Wrapper method to load the {@link Parameter} for the specified test
+     * Wrapper method to load the {@link Parameter} for the specified test, served from the {@link ParameterCache}
+     * when the same test and group were loaded recently.
      * 
      * @param testId the id of the test
+     * @param groupName the parameter group
      * @return the list of {@link Parameter} for the test
      */
     public List<Parameter> loadParameters(String testId, String groupName) {
-        List<Parameter> parameterList = new ArrayList<>();
-
         if (cfbtTestResourceServ == null) {
-            return parameterList;
+            return new ArrayList<>();
         }
+        return getParameterCache().get(testId, groupName, () -> fetchParameters(testId, groupName));
+    }
+
+    /**
+     * Drop all the cached parameters.
+     */
+    public void invalidateAllParameters() {
+        getParameterCache().invalidateAll();
+    }
+
+    /**
+     * @return the current {@link ParameterCache.Stats}
+     */
+    public ParameterCache.Stats getParameterCacheStats() {
+        return getParameterCache().getStats();
+    }
+
+    private synchronized ParameterCache getParameterCache() {
+        if (parameterCache == null) {
+            int maxEntries = 5000;
+            int ttlInMinutes = 10;
+            if (ConfigManager.getConfiguration() != null) {
+                maxEntries = ConfigManager.getConfiguration().getInt("parameterCacheMaxEntries", maxEntries);
+                ttlInMinutes = ConfigManager.getConfiguration().getInt("parameterCacheTtlInMinutes", ttlInMinutes);
+            }
+            parameterCache = new ParameterCache(maxEntries, TimeUnit.MINUTES.toMillis(ttlInMinutes));
+        }
+        return parameterCache;
+    }
+
+    /**
+     * Load the {@link Parameter} for the specified test from cfbttestresourceserv.
+     *
+     * @param testId the id of the test
+     * @param groupName the parameter group
+     * @return the list of {@link Parameter} for the test
+     */
+    private List<Parameter> fetchParameters(String testId, String groupName) {
+        List<Parameter> parameterList = new ArrayList<>();
+
         Response response = cfbtTestResourceServ.path(TESTRESOURCESERV_BASE_PATH + "parameters/")
                 .queryParam("test-id", testId).queryParam("group-name", groupName).request().header("Content-Type", "application/json").get();
 
         String responseString = response.readEntity(String.class);
         if (response.getStatus() == 200) {
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
             try {
-                parameterList = mapper.readValue(responseString, new TypeReference<List<Parameter>>() {
-                });
+                parameterList = PARAMETER_MAPPER.readValue(responseString, PARAMETER_LIST_TYPE);
 
             } catch (Exception e) {
                 CFBTLogger.logError(logger, CFBTTestResourceClient.class.getCanonicalName(),
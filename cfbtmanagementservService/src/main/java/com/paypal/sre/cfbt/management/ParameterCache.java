@@ -0,0 +1,212 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management;
+
+import com.paypal.sre.cfbt.data.test.Parameter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Size bounded, time limited cache of the {@link Parameter} lists served by cfbttestresourceserv, keyed by test id
+ * and parameter group.
+ *
+ * Both invalidations bump the generation, and a load is only cached when no invalidation happened while it was in
+ * flight, so that it cannot put back the value the invalidation dropped. Lists containing secure parameters are never
+ * cached, the secure values only live as long as the {@link com.paypal.sre.cfbt.data.execapi.Test} they are merged
+ * into. Callers always receive copies so merging values into a test cannot alter the cached entry.
+ */
+public class ParameterCache {
+
+    private final int maxEntries;
+    private final long ttlInMillis;
+    private final Map<String, Entry> entries;
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong missMillis = new AtomicLong();
+
+    /**
+     * @param maxEntries  The maximum number of (test, group) entries kept, least recently used are evicted first.
+     * @param ttlInMillis How long an entry is served before it is loaded again.
+     */
+    public ParameterCache(int maxEntries, long ttlInMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlInMillis = ttlInMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > ParameterCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Return the cached parameters for the test and group, loading them with the supplied loader on a miss.
+     *
+     * @param testId    The id of the test.
+     * @param groupName The parameter group.
+     * @param loader    Loads the parameters from cfbttestresourceserv.
+     * @return A copy of the {@link Parameter} list.
+     */
+    public List<Parameter> get(String testId, String groupName, Supplier<List<Parameter>> loader) {
+        String key = key(testId, groupName);
+        long now = System.currentTimeMillis();
+
+        long loadGeneration;
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && now - entry.loadTime < ttlInMillis) {
+                hits.incrementAndGet();
+                return copy(entry.parameters);
+            }
+            entries.remove(key);
+            loadGeneration = generation.get();
+        }
+
+        List<Parameter> parameters = loader.get();
+        long elapsed = System.currentTimeMillis() - now;
+        misses.incrementAndGet();
+        missMillis.addAndGet(elapsed);
+
+        if (maxEntries > 0 && parameters != null && !parameters.isEmpty() && !hasSecureValue(parameters)) {
+            synchronized (entries) {
+                if (loadGeneration == generation.get()) {
+                    entries.put(key, new Entry(copy(parameters), now));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Drop all the entries for a test, whatever the parameter group, including loads that are currently in flight.
+     *
+     * @param testId The id of the test.
+     */
+    public void invalidate(String testId) {
+        String prefix = testId + "|";
+        synchronized (entries) {
+            generation.incrementAndGet();
+            Iterator<String> keys = entries.keySet().iterator();
+            while (keys.hasNext()) {
+                if (keys.next().startsWith(prefix)) {
+                    keys.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop every entry, including loads that are currently in flight.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return A snapshot of the hit and miss counters.
+     */
+    public Stats getStats() {
+        return new Stats(hits.get(), misses.get(), missMillis.get());
+    }
+
+    private static String key(String testId, String groupName) {
+        return testId + "|" + (groupName == null ? "" : groupName);
+    }
+
+    private static boolean hasSecureValue(List<Parameter> parameters) {
+        for (Parameter parameter : parameters) {
+            if (Boolean.TRUE.equals(parameter.getSecure())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<Parameter> copy(List<Parameter> parameters) {
+        List<Parameter> copies = new ArrayList<>();
+        for (Parameter parameter : parameters) {
+            Parameter copy = new Parameter();
+            copy.setName(parameter.getName());
+            copy.setSecure(parameter.getSecure());
+            copy.setShared(parameter.getShared());
+            copy.setType(parameter.getType());
+            copy.setValue(parameter.getValue() == null ? null : parameter.getValue().clone());
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    private static class Entry {
+        private final List<Parameter> parameters;
+        private final long loadTime;
+
+        private Entry(List<Parameter> parameters, long loadTime) {
+            this.parameters = parameters;
+            this.loadTime = loadTime;
+        }
+    }
+
+    /**
+     * Point in time view of the cache effectiveness.
+     */
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long missMillis;
+
+        public Stats(long hits, long misses, long missMillis) {
+            this.hits = hits;
+            this.misses = misses;
+            this.missMillis = missMillis;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return The fraction of lookups served from the cache.
+         */
+        public double getHitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        /**
+         * @return The latency saved by the hits, estimated from the average miss latency.
+         */
+        public long getSavedMillis() {
+            return misses == 0 ? 0 : hits * missMillis / misses;
+        }
+
+        /**
+         * Counters accumulated since an earlier snapshot.
+         *
+         * @param earlier The earlier snapshot.
+         * @return The {@link Stats} difference.
+         */
+        public Stats since(Stats earlier) {
+            return new Stats(hits - earlier.hits, misses - earlier.misses, missMillis - earlier.missMillis);
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + ", misses=" + misses + ", hitRatio=" + String.format("%.2f", getHitRatio())
+                    + ", savedMs=" + getSavedMillis();
+        }
+    }
+}
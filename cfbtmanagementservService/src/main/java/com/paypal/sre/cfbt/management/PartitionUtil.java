@@ -3,23 +3,23 @@
  */
 package com.paypal.sre.cfbt.management;
 
+import com.paypal.sre.cfbt.data.execapi.Test;
 import com.paypal.sre.cfbt.data.executor.TestExecutionContainer;
 import com.paypal.sre.cfbt.data.test.Parameter;
+import com.paypal.sre.cfbt.data.test.TestStatistics;
 import com.paypal.sre.cfbt.shared.CFBTLogger;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import org.jgrapht.UndirectedGraph;
-import org.jgrapht.alg.ConnectivityInspector;
-import org.jgrapht.graph.DefaultEdge;
-import org.jgrapht.graph.SimpleGraph;
+import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,11 +48,12 @@ import org.slf4j.LoggerFactory;
  * </pre>
  * 
  * In this situation, we really want to know if there is a connection between one test
- * and another.  In order to do this, we consider "T1, T2, T3" to be the "nodes" of the
- * graph we consider that T1 and T2 are "connected" by an edge in this case because
- * there is a resource (P1) which is used by both tests T1 and T2.  From this graph, we can use the well-known
- * <a href="http://jgrapht.org/javadoc/org/jgrapht/alg/ConnectivityInspector.html">connectedSets</a>
- * algorithm to determine what resources are "connected" to each other.
+ * and another.  We consider that T1 and T2 are "connected" because there is a resource (P1)
+ * which is used by both tests T1 and T2, connection being transitive.  The connected tests are
+ * found with a <a href="https://en.wikipedia.org/wiki/Disjoint-set_data_structure">disjoint-set</a>
+ * (union-find) structure: every test starts in its own set and the sets of tests sharing a
+ * resource are merged, which is near-linear in the number of tests and shared parameters
+ * instead of adding an edge for every pair of tests sharing a resource.
  * 
  * Once that is done, we can find all of the tests which are independent in this sense
  * and those tests can be executed on separate threads with separate processors whereas the
@@ -71,80 +72,107 @@ public class PartitionUtil {
     
     /**
      * This method partitions the tests into tests that can be run
-     * independently.  This is done through a graph-theoretic mechanism
-     * where each test" is treated as a node in a graph
-     * and the nodes are connected if they use the same resource.  From
-     * this graph, the set of independently connected subgraphs is found, these
-     * are the sets of tests which can be executed independently.
+     * independently.  Tests are connected if they use the same resource,
+     * the sets of connected tests are the sets of tests which can be
+     * executed independently of each other.
      * @param requestList A collection of tests to evaluate.
      * @return A partition of tests into ones that can be executed on separate threads.
      */
     public static List<List<TestExecutionContainer>> partitionTestsBySharedData(List<TestExecutionContainer> requestList) {
+        return partition(requestList, TestExecutionContainer::getTest);
+    }
 
-        // The resources are the "nodes" in the graph.
-        
-        UndirectedGraph<String, DefaultEdge> g =
-            new SimpleGraph<>(DefaultEdge.class);
+    /**
+     * Same as {@link #partitionTestsBySharedData(List)} for tests which do not have an execution yet,
+     * allowing each partition to be initialized and scheduled on its own.
+     * @param tests A collection of tests, with their parameter values merged, to evaluate.
+     * @return A partition of tests into ones that can be executed on separate threads.
+     */
+    public static List<List<Test>> partitionTests(List<Test> tests) {
+        return partition(tests, Function.identity());
+    }
 
-        Map<String, Set<String>> testsByResource = new HashMap<>();
-        Map<String, TestExecutionContainer> testsById = new HashMap<>();
-        
-        for (TestExecutionContainer container : requestList) {
-            String id = container.getTest().getId();
-            testsById.put(id, container);
-            
-            g.addVertex(id);
+    /**
+     * Partition any item carrying a test by the shared resources of the test.
+     * @param items The items to partition.
+     * @param testOf Extracts the {@link Test} from an item.
+     * @return A partition of the items into ones that can be executed on separate threads.
+     */
+    private static <T> List<List<T>> partition(List<T> items, Function<T, Test> testOf) {
+        List<T> tests = new ArrayList<>();
+        Map<String, Integer> indexById = new HashMap<>();
+        // The first test seen using each shared resource, the other users are merged into its set.
+        Map<String, Integer> firstUserByResource = new HashMap<>();
+        DisjointSets sets = new DisjointSets(items.size());
+
+        for (T item : items) {
+            Test test = testOf.apply(item);
+            Integer index = indexById.get(test.getId());
+            if (index == null) {
+                index = tests.size();
+                indexById.put(test.getId(), index);
+                tests.add(item);
+            } else {
+                tests.set(index, item);
+            }
 
-            // For each shared resource, collect
-            // the tests which use it together.
-            List<String> r = new ArrayList<>();
-            for (Parameter p : container.getTest().getParameters()) {
+            for (Parameter p : test.getParameters()) {
                 if (p.getShared()) {
                     // note: because this is not decrypted at this point, it should NOT need to be stored as a char []
-                    r.add(String.copyValueOf(p.getValue()));
+                    Integer firstUser = firstUserByResource.putIfAbsent(String.copyValueOf(p.getValue()), index);
+                    if (firstUser != null) {
+                        sets.union(firstUser, index);
+                    }
                 }
             }
-            for (String res : r) {
-                if (!testsByResource.containsKey(res)) {
-                    testsByResource.put(res, new HashSet<>());
-                }
-                testsByResource.get(res).add(id);
+        }
+
+        // Now partition the tests according to the set they ended up in.
+        Map<Integer, List<T>> partitionByRoot = new LinkedHashMap<>();
+        for (int i = 0; i < tests.size(); i++) {
+            partitionByRoot.computeIfAbsent(sets.find(i), (root) -> new ArrayList<>()).add(tests.get(i));
+        }
+        return new ArrayList<>(partitionByRoot.values());
+    }
+
+    /**
+     * Disjoint sets over the indexes 0..n-1 with union by size and path halving.
+     */
+    private static class DisjointSets {
+        private final int[] parent;
+        private final int[] size;
+
+        DisjointSets(int n) {
+            parent = new int[n];
+            size = new int[n];
+            for (int i = 0; i < n; i++) {
+                parent[i] = i;
+                size[i] = 1;
             }
         }
-        
-        // For each shared resource, mark edges between
-        // tests which share it.
-        for (Map.Entry<String, Set<String>> e : testsByResource.entrySet()) {
-            for (String t0 : e.getValue()) {
-                for (String t1 : e.getValue()) {
-                    if (!t0.equals(t1)) {
-                        g.addEdge(t0, t1);
-                    }
-                }
+
+        int find(int i) {
+            while (parent[i] != i) {
+                parent[i] = parent[parent[i]];
+                i = parent[i];
             }
+            return i;
         }
-        
-        
-        // Find the set of connected sets.  These are the
-        // resources which can be handled independently.
-        ConnectivityInspector<String, DefaultEdge> connectivityInspector = new ConnectivityInspector(g);
-        List<Set<String>> connectedTests = connectivityInspector.connectedSets();
-
-        // Now partition the tests according to the connected
-        // resources.  This works because the tests have the
-        // same connectivity as the resources because the tests
-        // represent the "edges" in that graph, so if the graph
-        // is connected, the edges are also connected.
-        List<List<TestExecutionContainer>> partition = new ArrayList<>();
-        for (Set<String> tests : connectedTests) {
-            List<TestExecutionContainer> testsForResources = new ArrayList<>();
-            for (String testId : tests) {
-                testsForResources.add(testsById.get(testId));
+
+        void union(int a, int b) {
+            int rootA = find(a);
+            int rootB = find(b);
+            if (rootA == rootB) {
+                return;
+            }
+            if (size[rootA] < size[rootB]) {
+                int swap = rootA;
+                rootA = rootB;
+                rootB = swap;
             }
-            partition.add(testsForResources);
+            parent[rootB] = rootA;
+            size[rootA] += size[rootB];
         }
-        
-        return partition;
     }
     
     /**
@@ -154,30 +182,85 @@ public class PartitionUtil {
      * @param partitionTests A collection of partitions of tests to sort.
      */  
     public static void sortPartitionsByPriority(List<List<TestExecutionContainer>> partitionTests) {
+        sortByPriority(partitionTests, TestExecutionContainer::getTest);
+    }
+
+    /**
+     * Same as {@link #sortPartitionsByPriority(List)} for partitions of tests.
+     * @param partitionTests A collection of partitions of tests to sort.
+     */
+    public static void sortTestPartitionsByPriority(List<List<Test>> partitionTests) {
+        sortByPriority(partitionTests, Function.identity());
+    }
+
+    private static <T> void sortByPriority(List<List<T>> partitionTests, Function<T, Test> testOf) {
+        Comparator<T> byPriority = (t1, t2) -> testOf.apply(t1).getPriorityWeight().compareTo(testOf.apply(t2).getPriorityWeight());
        
         //then sort all tests within partitions
-        for (List<TestExecutionContainer> testsPartition : partitionTests) {
+        for (List<T> testsPartition : partitionTests) {
             //sort tests within partition by highest priority
-            Collections.sort(testsPartition, new Comparator<TestExecutionContainer>(){
-                public int compare(TestExecutionContainer t1, TestExecutionContainer t2){
-                    if(t1.getTest().getPriorityWeight().equals(t2.getTest().getPriorityWeight()))
-                        return 0;
-                    return t1.getTest().getPriorityWeight() < t2.getTest().getPriorityWeight() ? -1 : 1;
-                }
-           });
+            Collections.sort(testsPartition, byPriority);
         }
         
         //now sort partitions by highest priority (will be array index 0)
-        Collections.sort(partitionTests, new Comparator<List<TestExecutionContainer>>(){
-            public int compare(List<TestExecutionContainer> p1, List<TestExecutionContainer> p2){
-                if(p1.get(0).getTest().getPriorityWeight().equals(p2.get(0).getTest().getPriorityWeight()))
-                    return 0;
-                return p1.get(0).getTest().getPriorityWeight() < p2.get(0).getTest().getPriorityWeight() ? -1 : 1;
-            }
-        });
+        Collections.sort(partitionTests, (p1, p2) -> byPriority.compare(p1.get(0), p2.get(0)));
        
     }
     
+    /**
+     * Makespan aware ordering of the test partitions.  Tests are sorted within each partition by
+     * priority weight as in {@link #sortTestPartitionsByPriority(List)}, then partitions in the
+     * same priority tier are ordered longest first so that a long partition does not start last
+     * and dominate the release.
+     *
+     * Partitions are connected by shared resources and are never split, their tests must run
+     * sequentially on the same thread.
+     * @param partitionTests A collection of partitions of tests to sort.
+     * @param defaultDurationInSeconds The duration assumed for tests without any statistics.
+     */
+    public static void sortTestPartitionsByEstimatedDuration(List<List<Test>> partitionTests, int defaultDurationInSeconds) {
+        sortByPriority(partitionTests, Function.identity());
+
+        Map<List<Test>, Long> estimates = new IdentityHashMap<>();
+        long total = 0;
+        for (List<Test> partition : partitionTests) {
+            long estimate = 0;
+            for (Test test : partition) {
+                estimate += estimateDuration(test, defaultDurationInSeconds);
+            }
+            estimates.put(partition, estimate);
+            total += estimate;
+        }
+
+        Collections.sort(partitionTests, (p1, p2) -> {
+            int tier = p1.get(0).getPriorityWeight().compareTo(p2.get(0).getPriorityWeight());
+            return tier != 0 ? tier : Long.compare(estimates.get(p2), estimates.get(p1));
+        });
+
+        if (!partitionTests.isEmpty()) {
+            long longest = Collections.max(estimates.values());
+            CFBTLogger.logInfo(LOGGER, PartitionUtil.class.getCanonicalName(), "Estimated duration of "
+                    + partitionTests.size() + " partitions: total " + total + " s, longest partition " + longest + " s");
+        }
+    }
+
+    /**
+     * Estimate the duration of a test from the statistics of its recent executions, falling back
+     * to the older statistics when there were no recent executions.
+     * @param test The {@link Test}
+     * @param defaultDurationInSeconds The duration assumed for tests without any statistics.
+     * @return The estimated duration in seconds.
+     */
+    public static long estimateDuration(Test test, int defaultDurationInSeconds) {
+        for (TestStatistics stats : Arrays.asList(test.getTestStatistics7(), test.getTestStatistics30(),
+                test.getTestStatistics())) {
+            if (stats != null && stats.getAverageExecutionTime() != null && stats.getAverageExecutionTime() > 0) {
+                return Math.round(stats.getAverageExecutionTime());
+            }
+        }
+        return defaultDurationInSeconds;
+    }
+
     /**
      * Takes in a partition based on the TestExecutionContainer and returns a partition of test id's.
      * @param partitionTests A partitioned set of TestExecutionContainers
@@ -23,10 +23,20 @@ import com.paypal.sre.cfbt.request.Queue;
 import com.paypal.sre.cfbt.request.QueueMonitor;
 import com.paypal.sre.cfbt.scheduler.Scheduler;
 import com.paypal.sre.cfbt.shared.CFBTLogger;
+import com.rits.cloning.Cloner;
 import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -37,6 +47,11 @@ public class TestExecutionContainerFactory {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TestExecutionContainerFactory.class);
 
+    /**
+     * Bounded pool shared by all factories to load test parameters and initialize executions concurrently.
+     */
+    private static ExecutorService parameterLoadPool = null;
+
     private final CFBTTestResourceClient testresourceservClient;
     private final MongoConnectionFactory db;
     private int numRetries;
@@ -65,80 +80,246 @@ public class TestExecutionContainerFactory {
      * @throws java.lang.Exception throws errors trying to connect TestResourceServ.
      */
     public List<TestExecutionContainer> createRequestList(List<ExecutionRequest> executionRequests) throws Exception {
+        return createRequestList(executionRequests, (partition) -> { });
+    }
+
+    /***
+     * This function is responsible for creating the executions in containers one partition at a time.
+     * The parameters of every test are loaded first since they determine the shared resources, then
+     * each partition is initialized, stored and handed to the consumer as soon as it is ready,
+     * highest priority partition first.
+     *
+     * @param executionRequests List of {@link ExecutionRequest} objects containing valid tests
+     * @param partitionConsumer Receives each sealed partition of runnable containers, in priority order.
+     * @return {@link List<TestExecutionContainer>> } returns all the initialized executions.
+     * @throws java.lang.Exception throws errors trying to connect TestResourceServ.
+     */
+    public List<TestExecutionContainer> createRequestList(List<ExecutionRequest> executionRequests,
+            Consumer<List<TestExecutionContainer>> partitionConsumer) throws Exception {
 
         List<TestExecutionContainer> thisRequest = new ArrayList<>();
         Map<String, Test> testMap = new HashMap<>();
-        Execution testExecution = null;
-
-        //Map containing test id & associated execution
-        Map<String, Execution> testExecutionMap = new HashMap<>();
 
         //If multiple requests have the same tests, create & run the test execution only once.
+        //The first request referencing a test owns its initialization, later ones are just associated.
+        Map<String, ExecutionRequest> testOwnerMap = new LinkedHashMap<>();
+        Map<String, List<String>> additionalRequestIds = new HashMap<>();
         for(ExecutionRequest exRequest: executionRequests) {
             for (Test thisTest : exRequest.getTests()) {
-                if(thisTest != null && (testExecutionMap.isEmpty() || !testExecutionMap.containsKey(thisTest.getId())))
-                {
-                    try {
-                        List<Parameter> parameters = testresourceservClient.loadParameters(thisTest.getId(), exRequest.getParameterGroup());
-                        TestDAO.getInstance(db).mergeTestParameterValues(thisTest,parameters);
-                        testMap.put(thisTest.getId(), thisTest);
-
-                        testExecution = new ExecutionRepository().initializeExecution(db, thisTest, exRequest.getId(),
-                                    exRequest.getDatacenter(), numRetries, exRequest.getSystemUnderTest(), exRequest.getSyntheticLocation());
-                    } catch (Exception ex) {
-                        CFBTLogger.logError(LOGGER, TestExecutionContainer.class.getCanonicalName(),
-                                    "Error while initializing the test : " + thisTest.getId(), ex);
-                        // Mark the test as error.
-                        List<Step> steps = new ArrayList<>();
-
-                        steps.add(createErrorStep("Error while initializing the test", 1));
-                        testExecution = new ExecutionRepository().initializeExecutionAsError(db, thisTest,
-                                    exRequest.getId(), exRequest.getDatacenter(), numRetries,
-                                    exRequest.getSystemUnderTest(), steps);
-                    }
-
-                    testExecutionMap.put(thisTest.getId(), testExecution);
-                } else if(thisTest != null && testExecutionMap.containsKey(thisTest.getId()))
-                {
-                    //associate existing test execution to multiple requests.
-                    Execution existingExecution = testExecutionMap.get(thisTest.getId());
-                    existingExecution.getExecutionRequestIds().add(exRequest.getId());
+                if (thisTest == null) {
+                    continue;
+                }
+                if (!testOwnerMap.containsKey(thisTest.getId())) {
+                    testOwnerMap.put(thisTest.getId(), exRequest);
+                    testMap.put(thisTest.getId(), thisTest);
+                } else {
+                    additionalRequestIds.computeIfAbsent(thisTest.getId(), (id) -> new ArrayList<>()).add(exRequest.getId());
                 }
             }
         }
 
-        TestExecutionDAO testExecutionDAO = TestExecutionDAO.getInstance(db);
-        List<Execution> storedExecutions = null;
+        long stageStart = System.currentTimeMillis();
+        ParameterCache.Stats cacheStatsBefore = testresourceservClient.getParameterCacheStats();
+        TestDAO testDAO = TestDAO.getInstance(db);
+        Cloner cloner = new Cloner();
+        Map<String, Callable<Test>> parameterLoads = new LinkedHashMap<>();
+        for (Map.Entry<String, ExecutionRequest> entry : testOwnerMap.entrySet()) {
+            // Each load merges into its own copy, a load that times out keeps running and must not touch the shared test.
+            Test thisTest = cloner.deepClone(testMap.get(entry.getKey()));
+            ExecutionRequest exRequest = entry.getValue();
+            parameterLoads.put(entry.getKey(), () -> {
+                List<Parameter> parameters = testresourceservClient.loadParameters(thisTest.getId(), exRequest.getParameterGroup());
+                testDAO.mergeTestParameterValues(thisTest, parameters);
+                return thisTest;
+            });
+        }
+        Map<String, Execution> erroredExecutions = new LinkedHashMap<>();
+        runConcurrently(parameterLoads, testMap::put, (testId, reason) -> erroredExecutions.put(testId,
+                initializeErroredExecution(testMap.get(testId), testOwnerMap.get(testId), reason)));
+
+        ParameterCache.Stats cacheStats = testresourceservClient.getParameterCacheStats();
+        CFBTLogger.logInfo(LOGGER, TestExecutionContainerFactory.class.getCanonicalName(),
+                "Parameter fetch stage loaded " + testOwnerMap.size() + " tests (" + erroredExecutions.size()
+                + " in error) in " + (System.currentTimeMillis() - stageStart) + " ms, parameter cache: "
+                + (cacheStats == null || cacheStatsBefore == null ? "unavailable" : cacheStats.since(cacheStatsBefore)));
 
         List<String> requestIds = executionRequests.stream().map(ExecutionRequest::getId).collect(Collectors.toList());
+        Map<String, String> paramGroupMap = new HashMap<>();
+        testOwnerMap.forEach((testId, exRequest) -> paramGroupMap.put(testId, exRequest.getParameterGroup()));
+
+        // Tests which could not be loaded are stored and resolved before anything is scheduled.
+        if (!erroredExecutions.isEmpty()) {
+            storeExecutions(new ArrayList<>(erroredExecutions.values()), requestIds, additionalRequestIds, testMap, paramGroupMap);
+        }
+
+        List<Test> loadedTests = new ArrayList<>();
+        testMap.forEach((testId, test) -> {
+            if (!erroredExecutions.containsKey(testId)) {
+                loadedTests.add(test);
+            }
+        });
+        List<List<Test>> partitions = PartitionUtil.partitionTests(loadedTests);
+        if ("makespan".equalsIgnoreCase(ConfigManager.getConfiguration().getString("partitionOrdering", "priority"))) {
+            PartitionUtil.sortTestPartitionsByEstimatedDuration(partitions,
+                    ConfigManager.getConfiguration().getInt("defaultTestDurationInSeconds", 60));
+        } else {
+            PartitionUtil.sortTestPartitionsByPriority(partitions);
+        }
+
+        int partitionIndex = 0;
+        for (List<Test> partition : partitions) {
+            Map<String, Execution> partitionExecutions = new HashMap<>();
+            Map<String, Callable<Execution>> initializations = new LinkedHashMap<>();
+            for (Test thisTest : partition) {
+                ExecutionRequest exRequest = testOwnerMap.get(thisTest.getId());
+                initializations.put(thisTest.getId(), () -> new ExecutionRepository().initializeExecution(db, thisTest,
+                        exRequest.getId(), exRequest.getDatacenter(), numRetries, exRequest.getSystemUnderTest(),
+                        exRequest.getSyntheticLocation()));
+            }
+            runConcurrently(initializations, partitionExecutions::put, (testId, reason) -> partitionExecutions.put(testId,
+                    initializeErroredExecution(testMap.get(testId), testOwnerMap.get(testId), reason)));
+
+            // Keep the priority order of the partition.
+            List<Execution> executions = new ArrayList<>();
+            partition.forEach((test) -> executions.add(partitionExecutions.get(test.getId())));
+
+            List<TestExecutionContainer> runnable = storeExecutions(executions, requestIds, additionalRequestIds,
+                    testMap, paramGroupMap);
+            if (!runnable.isEmpty()) {
+                partitionConsumer.accept(runnable);
+                thisRequest.addAll(runnable);
+            }
+            if (partitionIndex++ == 0) {
+                CFBTLogger.logInfo(LOGGER, TestExecutionContainerFactory.class.getCanonicalName(),
+                        "First partition ready in " + (System.currentTimeMillis() - stageStart) + " ms");
+            }
+        }
+
+        CFBTLogger.logInfo(LOGGER, TestExecutionContainerFactory.class.getCanonicalName(),
+                "Initialized " + partitions.size() + " partitions with " + thisRequest.size() + " runnable tests in "
+                + (System.currentTimeMillis() - stageStart) + " ms");
+        return thisRequest;
+    }
+
+    /**
+     * Run the supplied tasks on the shared pool and wait for all of them, the whole stage bounded by the
+     * "parameterLoadTimeoutInSeconds" configuration. Tasks still running at the deadline are cancelled and
+     * reported as failed, their results are never handed to the caller.
+     *
+     * @param tasks     The tasks, keyed by test id.
+     * @param onSuccess Called with the test id and the result of each task that completed in time.
+     * @param onFailure Called with the test id and the reason when a task fails or times out.
+     */
+    private <T> void runConcurrently(Map<String, Callable<T>> tasks, BiConsumer<String, T> onSuccess,
+            BiConsumer<String, String> onFailure) {
+        ExecutorService parameterLoadPool = getParameterLoadPool();
+        int timeoutInSeconds = ConfigManager.getConfiguration().getInt("parameterLoadTimeoutInSeconds", 30);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutInSeconds);
+        Map<String, Future<T>> pending = new LinkedHashMap<>();
+        tasks.forEach((testId, task) -> pending.put(testId, parameterLoadPool.submit(task)));
+
+        for (Map.Entry<String, Future<T>> entry : pending.entrySet()) {
+            T result;
+            try {
+                result = entry.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (Exception ex) {
+                entry.getValue().cancel(true);
+                String reason = ex instanceof TimeoutException ?
+                        "Timed out after " + timeoutInSeconds + " seconds while initializing the test" :
+                        "Error while initializing the test";
+                CFBTLogger.logError(LOGGER, TestExecutionContainer.class.getCanonicalName(),
+                        reason + " : " + entry.getKey(), ex);
+                onFailure.accept(entry.getKey(), reason);
+                continue;
+            }
+            onSuccess.accept(entry.getKey(), result);
+        }
+    }
+
+    /**
+     * Create the error execution for a test that could not be initialized.
+     *
+     * @param thisTest  The {@link Test}
+     * @param exRequest The {@link ExecutionRequest} owning the test.
+     * @param reason    The reason for the error.
+     * @return the errored {@link Execution}
+     */
+    private Execution initializeErroredExecution(Test thisTest, ExecutionRequest exRequest, String reason) {
+        // Mark the test as error.
+        List<Step> steps = new ArrayList<>();
+
+        steps.add(createErrorStep(reason, 1));
+        return new ExecutionRepository().initializeExecutionAsError(db, thisTest,
+                exRequest.getId(), exRequest.getDatacenter(), numRetries,
+                exRequest.getSystemUnderTest(), steps);
+    }
+
+    /**
+     * Store a batch of executions and build their containers. Errored and skipped executions are resolved
+     * right away, the runnable containers are returned in the order of the supplied executions.
+     *
+     * @param executions           The executions to store.
+     * @param requestIds           The ids of the requests being scheduled.
+     * @param additionalRequestIds Other requests sharing a test, by test id.
+     * @param testMap              The tests by id.
+     * @param paramGroupMap        The parameter group used for each test, by test id.
+     * @return The runnable {@link TestExecutionContainer}
+     * @throws Exception On error accessing Mongo.
+     */
+    private List<TestExecutionContainer> storeExecutions(List<Execution> executions, List<String> requestIds,
+            Map<String, List<String>> additionalRequestIds, Map<String, Test> testMap,
+            Map<String, String> paramGroupMap) throws Exception {
+        List<String> testIds = new ArrayList<>();
+        for (Execution execution : executions) {
+            //associate existing test execution to multiple requests.
+            if (additionalRequestIds.containsKey(execution.getTestId())) {
+                execution.getExecutionRequestIds().addAll(additionalRequestIds.get(execution.getTestId()));
+            }
+            testIds.add(execution.getTestId());
+        }
+
+        TestExecutionDAO testExecutionDAO = TestExecutionDAO.getInstance(db);
+        // A request can hold more than one execution of a test, e.g. earlier runs of it, so keep them all.
+        Map<String, List<Execution>> storedExecutions = new HashMap<>();
 
         try (MongoConnection c = db.newConnection()) {
-            testExecutionDAO.insertExecutions(db.newConnection(), new ArrayList<>(testExecutionMap.values()));
+            testExecutionDAO.insertExecutions(c, executions);
 
-            storedExecutions = testExecutionDAO.getExecutionsByRequestIds(c, requestIds);
+            for (Execution stored : testExecutionDAO.getExecutionsByRequestIdsAndTestIds(c, requestIds, testIds)) {
+                storedExecutions.computeIfAbsent(stored.getTestId(), (testId) -> new ArrayList<>()).add(stored);
+            }
         }
 
-        Map<String, String> executionParamGroupMap = new HashMap<>();
-        for(Execution execution: storedExecutions) {
-            for(ExecutionRequest executionRequest: executionRequests) {
-                if(execution.getExecutionRequestIds().contains(executionRequest.getId())) {
-                    executionParamGroupMap.put(execution.getId(), executionRequest.getParameterGroup());
-                    break;
+        List<TestExecutionContainer> runnable = new ArrayList<>();
+        for (String testId : testIds) {
+            for (Execution execution : storedExecutions.getOrDefault(testId, new ArrayList<>())) {
+                TestExecutionContainer container = new TestExecutionContainer(testMap.get(testId), execution,
+                        new ArrayList<>(), paramGroupMap.get(testId));
+                // Do not add the test to the request if the status is error.
+                if (!execution.getStatus().equals(Status.ERROR) && !execution.getStatus().equals(Status.SKIP)) {
+                    runnable.add(container);
+                } else {
+                    updateErroredResult(container, db);
                 }
             }
         }
+        return runnable;
+    }
 
-        for (Execution execution : storedExecutions) {
-            TestExecutionContainer container = new TestExecutionContainer(testMap.get(execution.getTestId()), execution,
-                    new ArrayList<>(), executionParamGroupMap.get(execution.getId()));
-            // Do not add the test to the request if the status is error.
-            if (!execution.getStatus().equals(Status.ERROR) && !execution.getStatus().equals(Status.SKIP)) {
-                thisRequest.add(container);
-            } else {
-                updateErroredResult(container, db);
-            }
+    /**
+     * Lazily create the pool used to load parameters, sized by the "parameterLoadThreads" configuration. The pool
+     * is shut down with the JVM.
+     *
+     * @return the shared {@link ExecutorService}
+     */
+    private static synchronized ExecutorService getParameterLoadPool() {
+        if (parameterLoadPool == null) {
+            int threads = ConfigManager.getConfiguration().getInt("parameterLoadThreads", 10);
+            ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+            Runtime.getRuntime().addShutdownHook(new Thread(pool::shutdownNow));
+            parameterLoadPool = pool;
         }
-        return thisRequest;
+        return parameterLoadPool;
     }
 
     /**
@@ -7,6 +7,9 @@ import com.paypal.sre.cfbt.data.Activity;
 import com.paypal.sre.cfbt.data.execapi.*;
 import com.paypal.sre.cfbt.dataaccess.ActivityDAO;
 import com.paypal.sre.cfbt.management.cluster.ClusterInfo;
+import com.paypal.sre.cfbt.management.cluster.ClusterView;
+import com.paypal.sre.cfbt.management.dal.ApplicationPropertyCache;
+import com.paypal.sre.cfbt.management.dal.ConnectionScope;
 import com.paypal.sre.cfbt.management.dal.ApplicationPropertyDAO;
 import com.paypal.sre.cfbt.management.rest.impl.CFBTManagementService;
 import com.paypal.sre.cfbt.mongo.MongoConnection;
@@ -47,7 +50,7 @@ public class ApplicationPropertiesInfo {
     public int getNumberOfThreads() {
         int numConfiguredThreads = this.getDefaultNumberOfThreads();
 
-        NodeConfiguration nodeConfiguration = this.findOrInsertNodeConfiguration();
+        NodeConfiguration nodeConfiguration = this.nodeConfiguration();
 
         if (nodeConfiguration != null && nodeConfiguration.getNumberOfThreads() != null) {
             numConfiguredThreads = nodeConfiguration.getNumberOfThreads();
@@ -63,7 +66,7 @@ public class ApplicationPropertiesInfo {
     public int getNodeIsDeadInMinutes() {
         int nodeIsDeadInMinutes = this.getDefaultNodeIsDeadInMinutes();
 
-        NodeConfiguration nodeConfiguration = this.findOrInsertNodeConfiguration();
+        NodeConfiguration nodeConfiguration = this.nodeConfiguration();
 
         if (nodeConfiguration != null && nodeConfiguration.getNodeIsDeadInMinutes() != null) {
             nodeIsDeadInMinutes = nodeConfiguration.getNodeIsDeadInMinutes();
@@ -79,7 +82,7 @@ public class ApplicationPropertiesInfo {
     public int getThreadIsDownInMinutes() {
         int threadIsDownInMinutes = this.getDefaultThreadIsDownInMinutes();
 
-        NodeConfiguration nodeConfiguration = this.findOrInsertNodeConfiguration();
+        NodeConfiguration nodeConfiguration = this.nodeConfiguration();
 
         if (nodeConfiguration != null && nodeConfiguration.getThreadIsDownInMinutes() != null) {
             threadIsDownInMinutes = nodeConfiguration.getThreadIsDownInMinutes();
@@ -91,9 +94,13 @@ public class ApplicationPropertiesInfo {
      * @return The maximum number of pending execution requests that the System Status page will display.
      */
     public int getSystemStatusPendingLimit() {
-        try {
+        ApplicationProperty cached = this.cachedApplicationProperty();
+        if (cached != null && cached.getSystemStatusPendingLimit() != null) {
+            return cached.getSystemStatusPendingLimit();
+        }
+        try (ConnectionScope scope = ConnectionScope.open(mongoConnectionFactory)) {
             ApplicationPropertyDAO appDAO = ApplicationPropertyDAO.getInstance();
-            MongoConnection mongoConnection = mongoConnectionFactory.newConnection();
+            MongoConnection mongoConnection = scope.connection();
             ApplicationProperty property = appDAO.findOrInsertSystemStatusLimits(mongoConnection);
             return property.getSystemStatusPendingLimit();
         } catch (Exception ex) {
@@ -106,9 +113,13 @@ public class ApplicationPropertiesInfo {
      * @return The maximum number of completed execution requests that the System Status page will display.
      */
     public int getSystemStatusCompletedLimit() {
-        try {
+        ApplicationProperty cached = this.cachedApplicationProperty();
+        if (cached != null && cached.getSystemStatusCompletedLimit() != null) {
+            return cached.getSystemStatusCompletedLimit();
+        }
+        try (ConnectionScope scope = ConnectionScope.open(mongoConnectionFactory)) {
             ApplicationPropertyDAO appDAO = ApplicationPropertyDAO.getInstance();
-            MongoConnection mongoConnection = mongoConnectionFactory.newConnection();
+            MongoConnection mongoConnection = scope.connection();
             ApplicationProperty property = appDAO.findOrInsertSystemStatusLimits(mongoConnection);
             return property.getSystemStatusCompletedLimit();
         } catch (Exception ex) {
@@ -117,6 +128,34 @@ public class ApplicationPropertiesInfo {
         }
     }
 
+    /**
+     * @return The {@link NodeConfiguration} object of the cached application
+     * property, or the existing/ inserted one from the DB.
+     */
+    private NodeConfiguration nodeConfiguration() {
+        ApplicationProperty cached = this.cachedApplicationProperty();
+        if (cached != null) {
+            return cached.nodeConfiguration();
+        }
+        return this.findOrInsertNodeConfiguration();
+    }
+
+    /**
+     * @return The cached {@link ApplicationProperty} object, null when the
+     * cache is disabled or can't be loaded.
+     */
+    private ApplicationProperty cachedApplicationProperty() {
+        if (!ApplicationPropertyCache.isEnabled()) {
+            return null;
+        }
+        try {
+            return ApplicationPropertyCache.getInstance().get(mongoConnectionFactory, config);
+        } catch (Exception ex) {
+            CFBTLogger.logError(LOGGER, ApplicationPropertiesInfo.class.getCanonicalName(), "Error while reading the cached application property.", ex);
+            return null;
+        }
+    }
+
     /**
      * @return The existing/ inserted {@link NodeConfiguration} object from the
      * DB.
@@ -173,9 +212,9 @@ public class ApplicationPropertiesInfo {
         ApplicationProperties applicationProperties = new ApplicationProperties();
         User user = new User(userInfo);
         if (user.validateAdminUser(userInfo)) {
-            try {
+            try (ConnectionScope scope = ConnectionScope.open(mongoConnectionFactory)) {
                 ApplicationPropertyDAO applicationPropertyDAO = ApplicationPropertyDAO.getInstance();
-                MongoConnection mongoConnection = mongoConnectionFactory.newConnection();
+                MongoConnection mongoConnection = scope.connection();
                 appProperty = applicationPropertyDAO.getApplicationProperty(mongoConnection);
                 if (appProperty == null) {
                     CFBTExceptionUtil.throwBusinessException(CommonError.INVALID_RESOURCE_ID,
@@ -222,8 +261,8 @@ public class ApplicationPropertiesInfo {
 
             ApplicationPropertyDAO applicationPropertyDAO = ApplicationPropertyDAO.getInstance();
             String errorMessage = "An exception occurred while updating the Application Property. Root cause: ";
-            try {
-                MongoConnection mongoConnection = mongoConnectionFactory.newConnection();
+            try (ConnectionScope scope = ConnectionScope.open(mongoConnectionFactory)) {
+                MongoConnection mongoConnection = scope.connection();
                 ApplicationProperty appProperty = applicationPropertyDAO.getApplicationProperty(mongoConnection);
                 if (appProperty == null) {
                     CFBTExceptionUtil.throwBusinessException(CommonError.INVALID_RESOURCE_ID, "No record found to update an ApplicationProperty. ", null);
@@ -256,6 +295,8 @@ public class ApplicationPropertiesInfo {
                 throw ex;
             } catch (Exception ex) {
                 CFBTExceptionUtil.throwBusinessException(CommonError.INTERNAL_SERVICE_ERROR, errorMessage + ex, ex);
+            } finally {
+                ApplicationPropertyCache.getInstance().invalidate();
             }
         }
         return applicationProperty;
@@ -310,7 +351,7 @@ public class ApplicationPropertiesInfo {
             // of threads for the cluster nodes.
             if (patchProcessor.isFieldUpdated("numberOfThreads") && nodeConfiguration != null
                     && nodeConfiguration.getNumberOfThreads() != null) {
-                ClusterInfo clusterInfo = new ClusterInfo(mongoConnectionFactory, config, this);
+                ClusterInfo clusterInfo = ClusterView.getInstance().get(mongoConnectionFactory, config);
                 Map<String, ClusterInfo.Node> theCluster = clusterInfo.getFullCluster();
                 updateRequest = new ClusterUpdateRequest();
                 List<NodeUpdateProperties> nodeUpdateProperties = new ArrayList<>();
@@ -4,6 +4,7 @@
 package com.paypal.sre.cfbt.management.cluster;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -84,10 +85,17 @@ public class ClusterInfo {
      * @throws Exception Typically mongo connection exceptions.
      */
     public ClusterInfo(MongoConnectionFactory db, Configuration config, ApplicationPropertiesInfo applicationPropertiesInfo) throws Exception {
-        Map<String, NodeRegistrationData> nodeMap = nodeDetailsDAO.getAllNodes(db);  // get list of all nodes
-        ThreadStatistics statsRepo = new ThreadStatistics(db, config, applicationPropertiesInfo);
-        Map<String, List<ThreadStatistic>> threadStatistics = statsRepo.loadActiveNodes(); // get not dead threads
-        DateTime lastGood = DateUtil.currentDateTimeUTC().minusMinutes(applicationPropertiesInfo.getNodeIsDeadInMinutes());
+        this(nodeDetailsDAO.getAllNodes(db), new ThreadStatistics(db, config, applicationPropertiesInfo).loadActiveNodes(),
+                DateUtil.currentDateTimeUTC().minusMinutes(applicationPropertiesInfo.getNodeIsDeadInMinutes()));
+    }
+
+    /**
+     * Merges the registered nodes with their threads which are not dead.
+     * @param nodeMap The active registered nodes, the key is the IP address.
+     * @param threadStatistics The threads which are not dead, the key is the IP address.
+     * @param lastGood The registration time before which a node without threads is dead.
+     */
+    ClusterInfo(Map<String, NodeRegistrationData> nodeMap, Map<String, List<ThreadStatistic>> threadStatistics, DateTime lastGood) {
         // Now add to the cluster only the active nodes
         for (Map.Entry<String, NodeRegistrationData> map : nodeMap.entrySet()) {
             String ip = map.getKey();
@@ -131,7 +139,7 @@ public class ClusterInfo {
      * @return Map, key is the IP address, Node is the node details.
      */
     public Map<String, Node> getFullCluster() {
-        return theCluster;
+        return Collections.unmodifiableMap(theCluster);
     }
 
     /**
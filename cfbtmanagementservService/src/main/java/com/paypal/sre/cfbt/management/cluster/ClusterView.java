@@ -0,0 +1,221 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management.cluster;
+
+import com.mongodb.client.model.changestream.OperationType;
+import com.mongodb.client.model.changestream.UpdateDescription;
+import com.paypal.sre.cfbt.data.ThreadDetails;
+import com.paypal.sre.cfbt.management.appproperty.ApplicationPropertiesInfo;
+import com.paypal.sre.cfbt.management.dal.ChangeStreamInvalidator;
+import com.paypal.sre.cfbt.management.dal.ConnectionScope;
+import com.paypal.sre.cfbt.management.dal.NodeDetailsDAO;
+import com.paypal.sre.cfbt.management.dal.ThreadStatistics.ThreadStatistic;
+import com.paypal.sre.cfbt.management.dal.ThreadStatisticsDAO;
+import com.paypal.sre.cfbt.mongo.MongoConnection;
+import com.paypal.sre.cfbt.mongo.MongoConnectionFactory;
+import com.paypal.sre.cfbt.shared.CFBTLogger;
+import com.paypal.sre.cfbt.shared.DateUtil;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.configuration.Configuration;
+import org.bson.Document;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In memory {@link ClusterInfo} of this node, maintained from the thread heartbeats and node registrations.
+ *
+ * Every "clusterViewRefreshIntervalInSeconds" only the heartbeats written since the previous refresh, less
+ * "clusterViewClockSkewInSeconds" for the clocks of the nodes, are read and merged into the known threads, and the
+ * registered nodes are reread. Reads return the current snapshot, which is refreshed inline when it is older than
+ * "clusterViewMaxStalenessInSeconds". The threads of retired nodes are deleted after
+ * "threadStatisticsRetentionInDays".
+ *
+ * Every change of a node registration, and every change of a thread other than its heartbeat, whether written by
+ * this node or the others, invalidates the snapshot through a {@link ChangeStreamInvalidator}, so the next read
+ * refreshes it. Standalone mongo has no change streams, the snapshot is then only as fresh as the staleness bound.
+ */
+public class ClusterView {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClusterView.class);
+    private static final ClusterView INSTANCE = new ClusterView();
+
+    /**
+     * The threads by ip and name, only used while refreshing.
+     */
+    private final Map<String, Map<String, ThreadStatistic>> threads = new HashMap<>();
+    private DateTime watermark = null;
+    private volatile ClusterInfo snapshot = null;
+    private volatile long snapshotTime = 0;
+    private final AtomicLong generation = new AtomicLong();
+    private final ChangeStreamInvalidator nodeChanges = new ChangeStreamInvalidator("NodeRegistrationData",
+            (change) -> invalidate(), this::invalidate);
+    private final ChangeStreamInvalidator threadChanges = new ChangeStreamInvalidator("ThreadStatistics", (change) -> {
+        if (changesThreadState(change.getOperationType(), change.getUpdateDescription())) {
+            invalidate();
+        }
+    }, this::invalidate);
+    private ScheduledExecutorService refresher = null;
+    private long purgeTime = 0;
+
+    ClusterView() {
+    }
+
+    public static ClusterView getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param db     The {@link MongoConnectionFactory}
+     * @param config The configuration.
+     * @return The cluster, no older than "clusterViewMaxStalenessInSeconds".
+     * @throws Exception On error refreshing the cluster.
+     */
+    public ClusterInfo get(MongoConnectionFactory db, Configuration config) throws Exception {
+        long maxStaleness = TimeUnit.SECONDS.toMillis(config.getInt("clusterViewMaxStalenessInSeconds", 10));
+        ClusterInfo current = snapshot;
+        if (current != null && System.currentTimeMillis() - snapshotTime <= maxStaleness) {
+            return current;
+        }
+
+        nodeChanges.start(db);
+        threadChanges.start(db);
+        synchronized (this) {
+            startRefresher(db, config);
+            if (snapshot == null || System.currentTimeMillis() - snapshotTime > maxStaleness) {
+                refresh(db, config);
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Refresh on the next read, after a change of the registration of a node or of the state of a thread.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        snapshotTime = 0;
+    }
+
+    /**
+     * @param type   The type of the change of a thread.
+     * @param update The updated fields, for an update.
+     * @return false, when only the heartbeat of the thread changed, the refresh merges those.
+     */
+    static boolean changesThreadState(OperationType type, UpdateDescription update) {
+        if (type != OperationType.UPDATE || update == null || update.getUpdatedFields() == null) {
+            return true;
+        }
+        if (update.getRemovedFields() != null && !update.getRemovedFields().isEmpty()) {
+            return true;
+        }
+        for (String field : update.getUpdatedFields().keySet()) {
+            if (!"heartBeatDate".equals(field)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void startRefresher(MongoConnectionFactory db, Configuration config) {
+        if (refresher != null) {
+            return;
+        }
+        int interval = config.getInt("clusterViewRefreshIntervalInSeconds", 5);
+        refresher = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "ClusterView");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                synchronized (this) {
+                    refresh(db, config);
+                }
+            } catch (Exception ex) {
+                CFBTLogger.logError(LOGGER, ClusterView.class.getCanonicalName(), "Error refreshing the cluster view", ex);
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Delete the threads without heartbeat for "threadStatisticsRetentionInDays", at most every
+     * "threadStatisticsPurgeIntervalInMinutes".
+     */
+    private void purge(MongoConnection c, Configuration config, DateTime now) {
+        long interval = TimeUnit.MINUTES.toMillis(config.getInt("threadStatisticsPurgeIntervalInMinutes", 60));
+        if (System.currentTimeMillis() - purgeTime < interval) {
+            return;
+        }
+        purgeTime = System.currentTimeMillis();
+        long deleted = ThreadStatisticsDAO.getInstance().deleteBefore(c,
+                now.minusDays(config.getInt("threadStatisticsRetentionInDays", 7)));
+        if (deleted > 0) {
+            CFBTLogger.logInfo(LOGGER, ClusterView.class.getCanonicalName(), "Purged " + deleted + " dead thread statistics");
+        }
+    }
+
+    private void refresh(MongoConnectionFactory db, Configuration config) throws Exception {
+        long refreshGeneration = generation.get();
+        ApplicationPropertiesInfo properties = new ApplicationPropertiesInfo(config, db);
+        DateTime now = DateUtil.currentDateTimeUTC();
+        DateTime deadTime = now.minusMinutes(properties.getNodeIsDeadInMinutes());
+        DateTime downTime = now.minusMinutes(properties.getThreadIsDownInMinutes());
+        DateTime since = deadTime;
+        if (watermark != null && watermark.isAfter(deadTime)) {
+            since = watermark.minusSeconds(config.getInt("clusterViewClockSkewInSeconds", 30));
+        }
+
+        Map<String, NodeRegistrationData> nodes = new HashMap<>();
+        List<ThreadStatistic> heartbeats;
+        try (ConnectionScope scope = ConnectionScope.open(db)) {
+            for (NodeRegistrationData node : NodeDetailsDAO.getInstance().read(scope.connection(), new Document("active", Boolean.TRUE))) {
+                nodes.put(node.getIP(), node);
+            }
+            // The purge checks the format of the heartbeats, before they're read.
+            purge(scope.connection(), config, now);
+            heartbeats = ThreadStatisticsDAO.getInstance().readSince(scope.connection(), since);
+        }
+
+        for (ThreadStatistic heartbeat : heartbeats) {
+            if (heartbeat.getIp() != null && heartbeat.getHeartBeatDate() != null) {
+                threads.computeIfAbsent(heartbeat.getIp(), (ip) -> new HashMap<>()).put(heartbeat.getName(), heartbeat);
+            }
+        }
+
+        Map<String, List<ThreadStatistic>> liveThreads = new HashMap<>();
+        for (Iterator<Map<String, ThreadStatistic>> nodeThreads = threads.values().iterator(); nodeThreads.hasNext();) {
+            Map<String, ThreadStatistic> byName = nodeThreads.next();
+            for (Iterator<ThreadStatistic> it = byName.values().iterator(); it.hasNext();) {
+                ThreadStatistic thread = it.next();
+                DateTime lastDate = DateUtil.dateTimeUTC(thread.getHeartBeatDate());
+                if (!lastDate.isAfter(deadTime)) {
+                    it.remove();
+                    continue;
+                }
+                ThreadDetails.Status status = lastDate.isBefore(downTime) ? ThreadDetails.Status.DOWN : thread.getStatus();
+                liveThreads.computeIfAbsent(thread.getIp(), (ip) -> new ArrayList<>()).add(new ThreadStatistic(thread.getIp(),
+                        thread.getHostName(), thread.getName(), thread.getTestName(), thread.getHeartBeatDate(), status));
+            }
+            if (byName.isEmpty()) {
+                nodeThreads.remove();
+            }
+        }
+
+        snapshot = new ClusterInfo(nodes, liveThreads, deadTime);
+        snapshotTime = System.currentTimeMillis();
+        // An invalidation during the refresh may not be in what was read, the next read refreshes again.
+        if (generation.get() != refreshGeneration) {
+            snapshotTime = 0;
+        }
+        watermark = now;
+    }
+}
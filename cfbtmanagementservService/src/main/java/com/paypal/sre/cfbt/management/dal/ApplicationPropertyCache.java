@@ -0,0 +1,126 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management.dal;
+
+import com.paypal.sre.cfbt.management.appproperty.ApplicationProperty;
+import com.paypal.sre.cfbt.management.rest.impl.ConfigManager;
+import com.paypal.sre.cfbt.mongo.MongoConnection;
+import com.paypal.sre.cfbt.mongo.MongoConnectionFactory;
+import com.rits.cloning.Cloner;
+import org.apache.commons.configuration.Configuration;
+
+/**
+ * Snapshot of the {@link ApplicationProperty} document, with its node configuration and system status limits.
+ *
+ * The defaults missing from the document are inserted when the snapshot is loaded, not on every read. Updates
+ * through this node invalidate the snapshot, as does any change seen by a {@link ChangeStreamInvalidator} on the
+ * ApplicationProperty collection, and the snapshot is reloaded after "applicationPropertyCacheTtlInMillis" in any
+ * case. Snapshots are copied on the way out, callers are free to change them.
+ */
+public class ApplicationPropertyCache {
+    private static final ApplicationPropertyCache INSTANCE = new ApplicationPropertyCache();
+
+    private final Cloner cloner = new Cloner();
+    private final ChangeStreamInvalidator changeStream = new ChangeStreamInvalidator("ApplicationProperty",
+            (change) -> invalidate(), this::invalidate);
+    private ApplicationProperty property = null;
+    private MongoConnectionFactory source = null;
+    private long loadTime = 0;
+    private long generation = 0;
+
+    private ApplicationPropertyCache() {
+    }
+
+    public static ApplicationPropertyCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return true, when the application property is cached.
+     */
+    public static boolean isEnabled() {
+        Configuration config = ConfigManager.getConfiguration();
+        return config != null && config.getBoolean("applicationPropertyCacheEnabled", false);
+    }
+
+    /**
+     * Read the application property, from the snapshot when the cache is enabled.
+     *
+     * @param db The {@link MongoConnectionFactory}
+     * @return The {@link ApplicationProperty}, null when there is none.
+     * @throws Exception On error reading mongo.
+     */
+    public static ApplicationProperty read(MongoConnectionFactory db) throws Exception {
+        if (isEnabled()) {
+            return INSTANCE.get(db, ConfigManager.getConfiguration());
+        }
+        try (ConnectionScope scope = ConnectionScope.open(db)) {
+            return ApplicationPropertyDAO.getInstance().getApplicationProperty(scope.connection());
+        }
+    }
+
+    /**
+     * Return the snapshot, or load it.
+     *
+     * @param db     The {@link MongoConnectionFactory}
+     * @param config The configuration, for the default node configuration.
+     * @return A copy of the snapshot, null when there is no application property.
+     * @throws Exception On error loading the application property.
+     */
+    public ApplicationProperty get(MongoConnectionFactory db, Configuration config) throws Exception {
+        long ttl = config.getInt("applicationPropertyCacheTtlInMillis", 30000);
+        long loadGeneration;
+        ApplicationProperty cached = null;
+
+        changeStream.start(db);
+        synchronized (this) {
+            if (property != null && source == db && System.currentTimeMillis() - loadTime < ttl) {
+                cached = property;
+            }
+            loadGeneration = generation;
+        }
+        // The snapshot is replaced rather than changed, it's copied outside of the lock.
+        if (cached != null) {
+            return cloner.deepClone(cached);
+        }
+
+        ApplicationProperty loaded = load(db, config);
+        ApplicationProperty snapshot = loaded == null ? null : cloner.deepClone(loaded);
+        synchronized (this) {
+            // A load which raced with an invalidation may hold the replaced value, it's returned but not kept.
+            if (snapshot != null && loadGeneration == generation) {
+                property = snapshot;
+                source = db;
+                loadTime = System.currentTimeMillis();
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Drop the snapshot, after an update of the application property.
+     */
+    public synchronized void invalidate() {
+        generation++;
+        property = null;
+    }
+
+    private ApplicationProperty load(MongoConnectionFactory db, Configuration config) throws Exception {
+        ApplicationPropertyDAO dao = ApplicationPropertyDAO.getInstance();
+        try (ConnectionScope scope = ConnectionScope.open(db)) {
+            MongoConnection c = scope.connection();
+            ApplicationProperty loaded = dao.getApplicationProperty(c);
+            if (loaded == null || loaded.getNumberOfThreads() == null || loaded.getNodeIsDeadInMinutes() == null
+                    || loaded.getThreadIsDownInMinutes() == null) {
+                dao.findOrInsertNodeConfiguration(db, config.getInt("numberOfThreads", 2),
+                        config.getInt("nodeIsDeadInMinutes", 4 * 60), config.getInt("threadIsDownInMinutes", 15));
+                loaded = dao.getApplicationProperty(c);
+            }
+            if (loaded != null && loaded.noSystemStatusLimits()) {
+                loaded = dao.findOrInsertSystemStatusLimits(c);
+            }
+            return loaded;
+        }
+    }
+}
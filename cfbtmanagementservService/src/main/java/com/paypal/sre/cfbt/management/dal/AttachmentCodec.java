@@ -0,0 +1,105 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management.dal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+/**
+ * The compression of the stored attachment content, recorded with the content so that it can be read back whatever
+ * the current {@link AttachmentCodecPolicy}.
+ */
+public enum AttachmentCodec {
+    /**
+     * Stored as is, for small or already compressed content.
+     */
+    NONE {
+        @Override
+        OutputStream open(OutputStream out, int level) {
+            return out;
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            return in;
+        }
+    },
+    /**
+     * Deflate in the gzip format, the only codec of the attachments stored inline.
+     */
+    GZIP {
+        @Override
+        OutputStream open(OutputStream out, int level) throws IOException {
+            return new GZIPOutputStream(out, BUFFER_SIZE) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+    },
+    /**
+     * Deflate in the zlib format, without the gzip header and CRC.
+     */
+    DEFLATE {
+        @Override
+        OutputStream open(OutputStream out, int level) {
+            Deflater deflater = new Deflater(level);
+            return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            return new InflaterInputStream(in);
+        }
+    };
+
+    private static final int BUFFER_SIZE = 8192;
+
+    abstract OutputStream open(OutputStream out, int level) throws IOException;
+
+    /**
+     * Compress the content into the output, which is closed once the content is complete and left open on error, so
+     * that a partial upload can be aborted. The compressor is released either way.
+     *
+     * @param in    The content.
+     * @param out   Where to write the compressed content.
+     * @param level The deflate level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}.
+     * @throws IOException On error reading or writing.
+     */
+    public void compress(InputStream in, OutputStream out, int level) throws IOException {
+        try (OutputStream compressed = open(new CloseShieldOutputStream(out), level)) {
+            IOUtils.copyLarge(in, compressed, new byte[BUFFER_SIZE]);
+        }
+        out.close();
+    }
+
+    /**
+     * @param in The compressed content.
+     * @return The content, decompressed while it's read.
+     * @throws IOException On error reading the compression header.
+     */
+    public abstract InputStream decompress(InputStream in) throws IOException;
+}
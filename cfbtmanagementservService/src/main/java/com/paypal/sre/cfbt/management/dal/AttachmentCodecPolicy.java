@@ -0,0 +1,82 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management.dal;
+
+import com.paypal.sre.cfbt.management.rest.impl.ConfigManager;
+import com.paypal.sre.cfbt.shared.CFBTLogger;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Picks the {@link AttachmentCodec} of new attachments by type and size.
+ *
+ * Text content larger than "attachmentCompressionMinSize" bytes is compressed with "attachmentCodec" at
+ * "attachmentCompressionLevel", or at {@link Deflater#BEST_SPEED} from "attachmentFastCompressionMinSize" bytes.
+ * Images, archives and other binary types are stored as is, compressing them again costs CPU for no gain. An unknown
+ * "attachmentCodec" falls back to {@link AttachmentCodec#DEFLATE}.
+ */
+public final class AttachmentCodecPolicy {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AttachmentCodecPolicy.class);
+
+    private AttachmentCodecPolicy() {
+    }
+
+    /**
+     * @param type The attachment content type.
+     * @param size The decoded size in bytes.
+     * @return The codec to store the attachment with.
+     */
+    public static AttachmentCodec codec(String type, long size) {
+        return codec(ConfigManager.getConfiguration(), type, size);
+    }
+
+    /**
+     * @param size The decoded size in bytes.
+     * @return The deflate level to compress the attachment with.
+     */
+    public static int level(long size) {
+        return level(ConfigManager.getConfiguration(), size);
+    }
+
+    static AttachmentCodec codec(Configuration config, String type, long size) {
+        long minSize = config == null ? 100 : config.getLong("attachmentCompressionMinSize", 100);
+        if (size <= minSize || !isCompressible(type)) {
+            return AttachmentCodec.NONE;
+        }
+        String codec = config == null ? null : config.getString("attachmentCodec", null);
+        if (codec == null) {
+            return AttachmentCodec.DEFLATE;
+        }
+        try {
+            return AttachmentCodec.valueOf(codec.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            CFBTLogger.logWarn(LOGGER, AttachmentCodecPolicy.class.getCanonicalName(),
+                    "Unknown attachmentCodec " + codec + ", using " + AttachmentCodec.DEFLATE);
+            return AttachmentCodec.DEFLATE;
+        }
+    }
+
+    static int level(Configuration config, long size) {
+        long fastMinSize = config == null ? 1048576 : config.getLong("attachmentFastCompressionMinSize", 1048576);
+        if (size >= fastMinSize) {
+            return Deflater.BEST_SPEED;
+        }
+        return config == null ? Deflater.DEFAULT_COMPRESSION
+                : config.getInt("attachmentCompressionLevel", Deflater.DEFAULT_COMPRESSION);
+    }
+
+    static boolean isCompressible(String type) {
+        if (type == null) {
+            return false;
+        }
+        String mediaType = type.split(";")[0].trim().toLowerCase(Locale.ROOT);
+        return mediaType.startsWith("text/") || mediaType.endsWith("+json") || mediaType.endsWith("+xml")
+                || "application/json".equals(mediaType) || "application/xml".equals(mediaType)
+                || "application/javascript".equals(mediaType)
+                || "application/x-www-form-urlencoded".equals(mediaType);
+    }
+}
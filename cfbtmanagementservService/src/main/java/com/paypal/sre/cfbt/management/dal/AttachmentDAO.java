@@ -1,16 +1,44 @@
 package com.paypal.sre.cfbt.management.dal;
 
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSBuckets;
+import com.mongodb.client.gridfs.GridFSUploadStream;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
 import com.paypal.sre.cfbt.data.test.Attachment;
 import com.paypal.sre.cfbt.dataaccess.AbstractDAO;
+import com.paypal.sre.cfbt.management.rest.impl.ConfigManager;
 import com.paypal.sre.cfbt.mongo.MongoConnection;
+import com.paypal.sre.cfbt.mongo.MongoConnectionFactory;
+import com.paypal.sre.cfbt.mongo.MongoDataMarshaller;
 import com.paypal.sre.cfbt.shared.CFBTLogger;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.xml.bind.DatatypeConverter;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CharSequenceInputStream;
+import org.apache.commons.io.input.CountingInputStream;
+import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.slf4j.LoggerFactory;
 
 /**
@@ -18,12 +46,32 @@ import org.slf4j.LoggerFactory;
  * that handles {@link Attachment} data operations in the MongoDB "Attachment"
  * collection.
  *
+ * With "attachmentChunkedStorageEnabled", the attachment document only holds the
+ * attachment details and the content is streamed into the "AttachmentContent"
+ * GridFS bucket. The content is stored once per SHA-256 of its decoded bytes:
+ * "AttachmentContentHash" maps each hash to its file and "AttachmentContentRef"
+ * maps each attachment to its file. Attachments are never deleted by the service,
+ * a purge of attachments must only delete the files no longer referenced from
+ * "AttachmentContentRef". Files stored under the id of the attachment, and
+ * attachments stored inline in the document, base64 or binary, are still read.
  */
 public class AttachmentDAO extends AbstractDAO<Attachment> {
 
     private static final AttachmentDAO mInstance = new AttachmentDAO("Attachment");
     private static final org.slf4j.Logger logger = LoggerFactory.getLogger(AttachmentDAO.class);
-    
+    private static final String CONTENT_BUCKET = "AttachmentContent";
+    private static final int CONTENT_CHUNK_SIZE = 255 * 1024;
+    private static final int BUFFER_SIZE = 8192;
+    private static final String CONTENT_HASH_COLLECTION = "AttachmentContentHash";
+    private static final String CONTENT_REF_COLLECTION = "AttachmentContentRef";
+    private static final int METRICS_WINDOW = 100;
+    private static final int DUPLICATE_KEY = 11000;
+    private static final AtomicLong ATTACHMENTS = new AtomicLong();
+    private static final AtomicLong DEDUPLICATED = new AtomicLong();
+    private static final AtomicLong BYTES_RECEIVED = new AtomicLong();
+    private static final AtomicLong BYTES_REUSED = new AtomicLong();
+    private static ExecutorService compressionPool = null;
+
     /**
      * Constructor of singleton instance for this object.
      *
@@ -42,10 +90,20 @@ public class AttachmentDAO extends AbstractDAO<Attachment> {
         return mInstance;
     }
 
+    /**
+     * @return true, when new attachments are stored in chunks.
+     */
+    public static boolean isChunkedStorageEnabled() {
+        return ConfigManager.getConfiguration().getBoolean("attachmentChunkedStorageEnabled", false);
+    }
+
     /**
      * Reads from target data collection in MongoDB that match with the
      * collection record id.
      *
+     * The content is returned base64 encoded in memory, use {@link #openContent(MongoConnection, String)}
+     * to stream it.
+     *
      * @param c a {@link MongoConnection} object
      * @param aId id for collection record
      * @return the record with specified object id or null if not found.
@@ -59,55 +117,109 @@ public class AttachmentDAO extends AbstractDAO<Attachment> {
         }
 
         // If we are reading the old format of attachment then return it as it is.
-        if (attachment.getBinaryContent() == null) {
+        if (attachment.getContent() != null) {
             return attachment;
         }
 
         /**
-         * For the new format, take the binary data we got from the DB and place
-         * it into base64 so that all of the callers don't know that we've made
-         * a change.
+         * For the binary and chunked formats, place the data into base64 so
+         * that all of the callers don't know that we've made a change.
          */
-        boolean isGzippable = false;
-        
-        if(attachment.getGzippable() != null) {
-            isGzippable = attachment.getGzippable();
+        if (attachment.getBinaryContent() != null) {
+            attachment.setContent(DatatypeConverter.printBase64Binary(inflate(attachment)));
+            attachment.setBinaryContent(null);
+            return attachment;
+        }
+
+        try (Content content = openChunkedContent(c, attachment)) {
+            if (content != null) {
+                ByteArrayOutputStream base64 = new ByteArrayOutputStream();
+                try (OutputStream encoder = Base64.getEncoder().wrap(base64)) {
+                    content.writeTo(encoder, 0, -1);
+                }
+                attachment.setContent(new String(base64.toByteArray(), StandardCharsets.US_ASCII));
+            }
+        } catch (IOException ex) {
+            CFBTLogger.logError(logger, AttachmentDAO.class.getCanonicalName(), "Error trying to read the attachment content.", ex);
+        }
+        return attachment;
+    }
+
+    /**
+     * Open the decoded content of an attachment, to stream it.
+     *
+     * @param c a {@link MongoConnection} object, which must stay open while the content is read.
+     * @param aId id of the attachment
+     * @return the {@link Content} to close, null if the attachment or its content is not found.
+     */
+    public Content openContent(MongoConnection c, String aId) {
+        Attachment attachment = super.readOne(c, aId);
+        if (attachment == null) {
+            return null;
+        }
+
+        if (attachment.getContent() != null) {
+            byte[] data = DatatypeConverter.parseBase64Binary(attachment.getContent());
+            return new Content(attachment, new ByteArrayInputStream(data), data.length);
+        }
+        if (attachment.getBinaryContent() != null) {
+            byte[] data = inflate(attachment);
+            return new Content(attachment, new ByteArrayInputStream(data), data.length);
+        }
+        return openChunkedContent(c, attachment);
+    }
+
+    private Content openChunkedContent(MongoConnection c, Attachment attachment) {
+        GridFSBucket bucket = GridFSBuckets.create(c.getDB(), CONTENT_BUCKET);
+        ObjectId fileId = new ObjectId(attachment.getId());
+        Document ref = c.getDB().getCollection(CONTENT_REF_COLLECTION).find(new Document("_id", fileId)).first();
+        if (ref != null) {
+            fileId = ref.getObjectId("fileId");
+        }
+        GridFSFile file = bucket.find(new Document("_id", fileId)).first();
+        if (file == null) {
+            return null;
+        }
+
+        Document metadata = file.getMetadata() == null ? new Document() : file.getMetadata();
+        // Files stored before the codec was recorded only tell whether they are gzipped.
+        AttachmentCodec codec = metadata.containsKey("codec") ? AttachmentCodec.valueOf(metadata.getString("codec"))
+                : (metadata.getBoolean("gzip", false) ? AttachmentCodec.GZIP : AttachmentCodec.NONE);
+        Number contentLength = (Number) metadata.get("contentLength");
+        long length = contentLength != null ? contentLength.longValue()
+                : (AttachmentCodec.NONE.equals(codec) ? file.getLength() : -1);
+
+        InputStream stream = bucket.openDownloadStream(fileId);
+        try {
+            return new Content(attachment, codec.decompress(stream), length);
+        } catch (IOException ex) {
+            IOUtils.closeQuietly(stream);
+            CFBTLogger.logError(logger, AttachmentDAO.class.getCanonicalName(), "Error trying to decompress the attachment.", ex);
+            return null;
         }
-        
+    }
+
+    /**
+     * Decompress the binary content of an attachment stored in the document.
+     */
+    private byte[] inflate(Attachment attachment) {
         byte[] attachmentData = (byte[]) attachment.getBinaryContent();
 
-        if (isGzippable) {
-            ByteArrayOutputStream byteArrayOutputStream = null;
-            GZIPInputStream gzipInputStream = null;
-            try {
-                byteArrayOutputStream = new ByteArrayOutputStream();
-                ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(attachmentData);
-                gzipInputStream = new GZIPInputStream(byteArrayInputStream);
+        if (attachment.getGzippable() != null && attachment.getGzippable()) {
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+            try (InputStream gzipInputStream = AttachmentCodec.GZIP.decompress(new ByteArrayInputStream(attachmentData))) {
                 IOUtils.copy(gzipInputStream, byteArrayOutputStream);
-                
-                
             } catch (Exception ex) {
                 CFBTLogger.logError(logger, AttachmentDAO.class.getCanonicalName(), "Error trying to decompress the gzipped attachment.", ex);
-                
-            } finally {
-                try {
-                    gzipInputStream.close();
-                    byteArrayOutputStream.close();
-                } catch (Exception ex) {
-                    CFBTLogger.logError(logger, AttachmentDAO.class.getCanonicalName(), ex.getMessage(), ex);
-                }
             }
             attachmentData = byteArrayOutputStream.toByteArray();
-
         }
-        attachment.setContent(DatatypeConverter.printBase64Binary(attachmentData));
-        attachment.setBinaryContent(null);
-        return attachment;
+        return attachmentData;
     }
 
     /**
      * This method is responsible to convert the attachment contents to binary,
-     * GZIP it if needed and then inserts a new record {@link Attachment} data
+     * compress it as the {@link AttachmentCodecPolicy} picks and then inserts a new record {@link Attachment} data
      * into the MongoDB collection.
      *
      * @param c a {@link MongoConnection} object.
@@ -121,45 +233,342 @@ public class AttachmentDAO extends AbstractDAO<Attachment> {
             return null;
         }
 
-        long attachmentSize = Long.parseLong(attachment.getSize());
-        String attachmentType = attachment.getType();
-        byte[] binaryData = DatatypeConverter.parseBase64Binary(attachment.getContent());
+        Document ref = prepare(c, attachment);
+        if (ref == null) {
+            return null;
+        }
+        List<Document> documents = new ArrayList<>();
+        List<Document> refs = new ArrayList<>();
+        String id = add(attachment, ref, documents, refs);
+        return write(c, documents, refs) ? id : null;
+    }
+
+    /**
+     * Insert the attachments of an execution with bulk writes of "attachmentInsertBatchSize" attachments. Their
+     * content is compressed, or hashed and stored, in parallel on a pool of "attachmentCompressionThreads" threads.
+     * Only the content stored in the bucket takes a connection of the pool thread, inline content never reads mongo.
+     *
+     * Each batch is inserted whole or not at all. The content is dropped from the attachments once they're inserted,
+     * so only one batch of encoded content is held at a time.
+     *
+     * @param db a {@link MongoConnectionFactory}, for the connections of the pool threads.
+     * @param c a {@link MongoConnection} object.
+     * @param attachments The {@link Attachment} objects
+     * @return the ids of the inserted attachments, in order, null for the attachments which failed.
+     */
+    public List<String> insertAll(MongoConnectionFactory db, MongoConnection c, List<Attachment> attachments) {
+        int batchSize = Math.max(1, ConfigManager.getConfiguration().getInt("attachmentInsertBatchSize", 16));
+        List<String> ids = new ArrayList<>();
+        for (int from = 0; from < attachments.size(); from += batchSize) {
+            ids.addAll(insertBatch(db, c, attachments.subList(from, Math.min(from + batchSize, attachments.size()))));
+        }
+        return ids;
+    }
+
+    private List<String> insertBatch(MongoConnectionFactory db, MongoConnection c, List<Attachment> attachments) {
+        List<Future<Document>> prepared = new ArrayList<>();
+        for (Attachment attachment : attachments) {
+            prepared.add(compressionPool().submit(() -> {
+                if (!isChunked(attachment)) {
+                    return prepareInline(attachment);
+                }
+                try (ConnectionScope scope = ConnectionScope.open(db)) {
+                    return storeContent(scope.connection(), attachment);
+                }
+            }));
+        }
+
+        List<String> ids = new ArrayList<>();
+        List<Document> documents = new ArrayList<>();
+        List<Document> refs = new ArrayList<>();
+        for (int i = 0; i < attachments.size(); i++) {
+            Document ref = null;
+            try {
+                ref = prepared.get(i).get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                CFBTLogger.logError(logger, AttachmentDAO.class.getCanonicalName(), "Error trying to prepare the attachment.", ex);
+            }
+            ids.add(ref == null ? null : add(attachments.get(i), ref, documents, refs));
+        }
+
+        if (!write(c, documents, refs)) {
+            Collections.fill(ids, null);
+            return ids;
+        }
+        for (Attachment attachment : attachments) {
+            attachment.setBinaryContent(null);
+        }
+        return ids;
+    }
+
+    /**
+     * Add the document of a prepared attachment, and its reference to its content, to the writes.
+     *
+     * @return the id of the attachment.
+     */
+    private static String add(Attachment attachment, Document ref, List<Document> documents, List<Document> refs) {
+        attachment.setId(null);
+        Document document = MongoDataMarshaller.encode(attachment);
+        document.remove("id");
+        ObjectId id = new ObjectId();
+        document.put("_id", id);
+        documents.add(document);
+        if (!ref.isEmpty()) {
+            refs.add(ref.append("_id", id));
+        }
+        return id.toHexString();
+    }
+
+    /**
+     * Insert the references to the content before the attachments, an attachment is never read without its content.
+     * The references are removed when the attachments can't be inserted, a reference without its attachment is never
+     * read. The content stored for them is left for the next attachments of the same content.
+     *
+     * @return true, when all of the attachments are inserted.
+     */
+    private boolean write(MongoConnection c, List<Document> documents, List<Document> refs) {
+        if (documents.isEmpty()) {
+            return true;
+        }
+        List<ObjectId> ids = new ArrayList<>();
+        for (Document document : documents) {
+            ids.add(document.getObjectId("_id"));
+        }
+
+        try {
+            if (!refs.isEmpty()) {
+                c.getDB().getCollection(CONTENT_REF_COLLECTION).insertMany(refs);
+            }
+            c.getDB().getCollection("Attachment").insertMany(documents);
+            return true;
+        } catch (Exception ex) {
+            CFBTLogger.logError(logger, AttachmentDAO.class.getCanonicalName(), "Error trying to insert the attachments.", ex);
+        }
+
+        Document byIds = new Document("_id", new Document("$in", ids));
+        try {
+            c.getDB().getCollection("Attachment").deleteMany(byIds);
+            c.getDB().getCollection(CONTENT_REF_COLLECTION).deleteMany(byIds);
+        } catch (Exception ex) {
+            CFBTLogger.logError(logger, AttachmentDAO.class.getCanonicalName(), "Error trying to remove the partially inserted attachments.", ex);
+        }
+        return false;
+    }
+
+    private static synchronized ExecutorService compressionPool() {
+        if (compressionPool == null) {
+            compressionPool = Executors.newFixedThreadPool(
+                    ConfigManager.getConfiguration().getInt("attachmentCompressionThreads", 4), (runnable) -> {
+                        Thread thread = new Thread(runnable, "AttachmentCompression");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+        return compressionPool;
+    }
+
+    /**
+     * Move the content out of the attachment, ready to insert: inline as binary, gzipped unless the policy picks no
+     * compression, or in the bucket.
+     *
+     * @return the reference of the attachment to its content in the bucket, empty for inline content, null on error.
+     */
+    private Document prepare(MongoConnection c, Attachment attachment) {
+        return isChunked(attachment) ? storeContent(c, attachment) : prepareInline(attachment);
+    }
+
+    /**
+     * @return true, when the content of the attachment goes to the bucket.
+     */
+    private static boolean isChunked(Attachment attachment) {
+        return isChunkedStorageEnabled() && attachment.getContent() != null;
+    }
 
-        boolean isGZippable = ("text/html".equals(attachmentType) || "text/plain".equals(attachmentType) || "application/x-www-form-urlencoded".equals(attachmentType)
-                || "application/json".equals(attachmentType)) && attachmentSize > 100 && binaryData != null;
+    /**
+     * Move the content into the attachment as binary, gzipped unless the policy picks no compression.
+     *
+     * @return an empty reference, the content is inline.
+     */
+    private static Document prepareInline(Attachment attachment) {
+        byte[] binaryData = DatatypeConverter.parseBase64Binary(attachment.getContent());
 
-        if (isGZippable) {
-            ByteArrayOutputStream byteArrayOutputStream = null;
-            GZIPOutputStream gzipOutputStream = null;
+        // The inline format only records whether the content is gzipped.
+        if (binaryData != null && !AttachmentCodec.NONE.equals(AttachmentCodecPolicy.codec(attachment.getType(), binaryData.length))) {
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
             try {
-                byteArrayOutputStream = new ByteArrayOutputStream();
-                gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream);
-                ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(binaryData);
-                IOUtils.copy(byteArrayInputStream, gzipOutputStream);
-                
+                AttachmentCodec.GZIP.compress(new ByteArrayInputStream(binaryData), byteArrayOutputStream,
+                        AttachmentCodecPolicy.level(binaryData.length));
             } catch (Exception ex) {
                 CFBTLogger.logError(logger, AttachmentDAO.class.getCanonicalName(), "Error trying to gzip binary content of the attachment.", ex);
-                
-            } finally {
-                try {
-                    gzipOutputStream.close();
-                    byteArrayOutputStream.close();
-                } catch (Exception ex) {
-                    CFBTLogger.logError(logger, AttachmentDAO.class.getCanonicalName(), ex.getMessage(), ex);
-                }
             }
-            
+
             binaryData = byteArrayOutputStream.toByteArray();
             attachment.setGzippable(true);
-            
+
         } else {
             attachment.setGzippable(false);
         }
 
         attachment.setBinaryContent(binaryData);
         attachment.setContent(null);
-        String id = super.insert(c, attachment);
-        return id;
+        return new Document();
     }
 
+    /**
+     * Reference the content by the SHA-256 of the decoded bytes. Content already stored is only referenced, new
+     * content is compressed into the GridFS bucket. The base64 content is decoded as a stream, twice for new content:
+     * once to hash it and again to compress it, so only a buffer is held next to the encoded content.
+     *
+     * @return the reference to the content, null on error.
+     */
+    private Document storeContent(MongoConnection c, Attachment attachment) {
+        String content = attachment.getContent();
+        long contentLength;
+        String hash;
+        try (CountingInputStream decoded = new CountingInputStream(decode(content))) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int read = decoded.read(buffer); read != -1; read = decoded.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+            contentLength = decoded.getByteCount();
+            hash = DatatypeConverter.printHexBinary(digest.digest()).toLowerCase();
+        } catch (Exception ex) {
+            CFBTLogger.logError(logger, AttachmentDAO.class.getCanonicalName(), "Error trying to hash the attachment content.", ex);
+            return null;
+        }
+
+        MongoCollection<Document> hashes = c.getDB().getCollection(CONTENT_HASH_COLLECTION);
+        Document stored = hashes.find(new Document("_id", hash)).first();
+        ObjectId fileId;
+        if (stored != null) {
+            fileId = stored.getObjectId("fileId");
+        } else {
+            fileId = upload(c, attachment, content, contentLength, hash);
+            if (fileId == null) {
+                return null;
+            }
+            Document winner;
+            try {
+                winner = hashes.findOneAndUpdate(new Document("_id", hash),
+                        new Document("$setOnInsert", new Document("fileId", fileId).append("contentLength", contentLength)),
+                        new FindOneAndUpdateOptions().upsert(true));
+            } catch (MongoCommandException ex) {
+                if (ex.getErrorCode() != DUPLICATE_KEY) {
+                    throw ex;
+                }
+                winner = hashes.find(new Document("_id", hash)).first();
+            }
+            if (winner != null) {
+                // The same content was stored concurrently, keep the first copy.
+                GridFSBuckets.create(c.getDB(), CONTENT_BUCKET).delete(fileId);
+                fileId = winner.getObjectId("fileId");
+            }
+        }
+
+        // The codec of the content is recorded with the file, the file may have been stored for another attachment.
+        attachment.setGzippable(false);
+        attachment.setContent(null);
+        attachment.setBinaryContent(null);
+        recordDeduplication(stored != null, contentLength);
+        return new Document("hash", hash).append("fileId", fileId).append("executionId", attachment.getExecutionId());
+    }
+
+    /**
+     * @return the decoded stream of base64 content.
+     */
+    private static InputStream decode(String content) {
+        return Base64.getMimeDecoder().wrap(new CharSequenceInputStream(content, StandardCharsets.US_ASCII, BUFFER_SIZE));
+    }
+
+    /**
+     * Compress the content into a new file of the bucket.
+     *
+     * @param content the base64 content.
+     * @param contentLength the decoded length of the content.
+     * @return the file id, null on error.
+     */
+    private ObjectId upload(MongoConnection c, Attachment attachment, String content, long contentLength, String hash) {
+        AttachmentCodec codec = AttachmentCodecPolicy.codec(attachment.getType(), contentLength);
+        GridFSBucket bucket = GridFSBuckets.create(c.getDB(), CONTENT_BUCKET);
+        GridFSUploadOptions options = new GridFSUploadOptions().chunkSizeBytes(CONTENT_CHUNK_SIZE)
+                .metadata(new Document("contentType", attachment.getType()).append("codec", codec.name())
+                        .append("sha256", hash).append("contentLength", contentLength));
+        GridFSUploadStream upload = bucket.openUploadStream(attachment.getName() == null ? hash : attachment.getName(), options);
+
+        try (InputStream decoded = decode(content)) {
+            codec.compress(decoded, upload, AttachmentCodecPolicy.level(contentLength));
+        } catch (Exception ex) {
+            CFBTLogger.logError(logger, AttachmentDAO.class.getCanonicalName(), "Error trying to store the attachment content.", ex);
+            upload.abort();
+            return null;
+        }
+        return upload.getObjectId();
+    }
+
+    private static void recordDeduplication(boolean deduplicated, long contentLength) {
+        long attachments = ATTACHMENTS.incrementAndGet();
+        long received = BYTES_RECEIVED.addAndGet(contentLength);
+        long reused = deduplicated ? DEDUPLICATED.incrementAndGet() : DEDUPLICATED.get();
+        long bytesReused = deduplicated ? BYTES_REUSED.addAndGet(contentLength) : BYTES_REUSED.get();
+        if (attachments % METRICS_WINDOW == 0) {
+            CFBTLogger.logInfo(logger, AttachmentDAO.class.getCanonicalName(), "Attachment deduplication: " + reused + " of "
+                    + attachments + " attachments (" + (100 * reused / attachments) + "%), " + bytesReused + " of " + received
+                    + " bytes (" + (received == 0 ? 0 : 100 * bytesReused / received) + "%) not written again");
+        }
+    }
+
+    /**
+     * The decoded content of an attachment, read once.
+     */
+    public static class Content implements Closeable {
+        private final Attachment attachment;
+        private final InputStream stream;
+        private final long length;
+
+        Content(Attachment attachment, InputStream stream, long length) {
+            this.attachment = attachment;
+            this.stream = stream;
+            this.length = length;
+        }
+
+        /**
+         * @return the attachment details, without the content.
+         */
+        public Attachment getAttachment() {
+            return attachment;
+        }
+
+        /**
+         * @return the decoded length in bytes, -1 when unknown.
+         */
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * Copy a range of the content.
+         *
+         * @param out   where to write the content.
+         * @param start the first byte to write.
+         * @param end   the last byte to write, inclusive, -1 for the end of the content.
+         * @throws IOException on error reading or writing the content.
+         */
+        public void writeTo(OutputStream out, long start, long end) throws IOException {
+            IOUtils.skipFully(stream, start);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            if (end < 0) {
+                IOUtils.copyLarge(stream, out, buffer);
+            } else {
+                IOUtils.copyLarge(stream, out, 0, end - start + 1, buffer);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            stream.close();
+        }
+    }
 }
@@ -0,0 +1,103 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management.dal;
+
+import com.paypal.sre.cfbt.management.rest.impl.ConfigManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.apache.commons.lang3.StringUtils;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+/**
+ * Reads documents by id with {@code $in} queries on {@code _id}.
+ *
+ * Large id sets are split into chunks of "idLookupChunkSize" ids (default 500), each chunk is a single query served
+ * by the {@code _id} index. Results are returned in the order of the supplied ids, duplicate ids are read once and
+ * ids which are not found are skipped.
+ */
+public final class BatchedIdLookup {
+
+    /**
+     * Reads the documents matching a query, typically a lambda on {@code AbstractDAO.read}.
+     *
+     * @param <T> The type of the documents.
+     */
+    @FunctionalInterface
+    public interface Reader<T> {
+        List<T> read(Document query, Bson projection) throws Exception;
+    }
+
+    private BatchedIdLookup() {
+    }
+
+    /**
+     * Build the filter matching any of the ids.
+     *
+     * @param ids The ids as {@link String}
+     * @return The {@code _id $in} filter.
+     */
+    public static Document idFilter(Collection<String> ids) {
+        return new Document("_id", new Document("$in", toObjectIds(ids)));
+    }
+
+    /**
+     * Read the documents with the given ids.
+     *
+     * @param <T>        The type of the documents.
+     * @param ids        The ids to read.
+     * @param filter     Additional conditions, null for none.
+     * @param projection The fields to read, null for the whole document. The projection must include {@code _id}.
+     * @param reader     Runs a query.
+     * @param idOf       Returns the id of a document.
+     * @return The matching documents in the order of {@code ids}.
+     * @throws Exception On error reading the documents.
+     */
+    public static <T> List<T> read(Collection<String> ids, Document filter, Bson projection, Reader<T> reader,
+            Function<T, String> idOf) throws Exception {
+        List<T> results = new ArrayList<>();
+        if (ids == null || ids.isEmpty()) {
+            return results;
+        }
+
+        List<String> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        int chunkSize = Math.max(1, ConfigManager.getConfiguration().getInt("idLookupChunkSize", 500));
+        Map<String, T> found = new HashMap<>();
+
+        for (int start = 0; start < distinctIds.size(); start += chunkSize) {
+            Document query = idFilter(distinctIds.subList(start, Math.min(start + chunkSize, distinctIds.size())));
+            if (filter != null) {
+                query = new Document("$and", Arrays.asList(query, filter));
+            }
+            for (T document : reader.read(query, projection)) {
+                found.put(idOf.apply(document), document);
+            }
+        }
+
+        for (String id : distinctIds) {
+            T document = found.get(id);
+            if (document != null) {
+                results.add(document);
+            }
+        }
+        return results;
+    }
+
+    private static List<ObjectId> toObjectIds(Collection<String> ids) {
+        List<ObjectId> objectIds = new ArrayList<>();
+        for (String id : ids) {
+            if (StringUtils.isNotBlank(id)) {
+                objectIds.add(new ObjectId(id));
+            }
+        }
+        return objectIds;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management.dal;
+
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.paypal.sre.cfbt.mongo.MongoConnection;
+import com.paypal.sre.cfbt.mongo.MongoConnectionFactory;
+import com.paypal.sre.cfbt.shared.CFBTLogger;
+import java.util.function.Consumer;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Invalidates a cache from the change stream of a collection, for the writes of the other nodes.
+ *
+ * The change stream is reopened whenever it fails, with a backoff doubling from a second up to a minute, standalone
+ * mongo has no change streams at all. The whole cache is dropped when the stream fails and again when it is reopened,
+ * since the changes in between are lost.
+ */
+public class ChangeStreamInvalidator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeStreamInvalidator.class);
+
+    private final String collection;
+    private final Consumer<ChangeStreamDocument<Document>> onChange;
+    private final Runnable invalidateAll;
+    private final long minBackoffMillis;
+    private final long maxBackoffMillis;
+    private Thread listener = null;
+    private long failures = 0;
+
+    /**
+     * @param collection    The collection to watch.
+     * @param onChange      Invalidates the cache entries of a change.
+     * @param invalidateAll Drops the whole cache.
+     */
+    public ChangeStreamInvalidator(String collection, Consumer<ChangeStreamDocument<Document>> onChange, Runnable invalidateAll) {
+        this(collection, onChange, invalidateAll, 1000, 60000);
+    }
+
+    ChangeStreamInvalidator(String collection, Consumer<ChangeStreamDocument<Document>> onChange, Runnable invalidateAll,
+            long minBackoffMillis, long maxBackoffMillis) {
+        this.collection = collection;
+        this.onChange = onChange;
+        this.invalidateAll = invalidateAll;
+        this.minBackoffMillis = minBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Start listening, once.
+     *
+     * @param db The {@link MongoConnectionFactory}
+     */
+    public synchronized void start(MongoConnectionFactory db) {
+        if (listener != null) {
+            return;
+        }
+        listener = new Thread(() -> listen(db), collection + "ChangeStream");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    /**
+     * Stop listening, the listener exits once it's interrupted.
+     */
+    public synchronized void stop() {
+        if (listener != null) {
+            listener.interrupt();
+            listener = null;
+        }
+    }
+
+    /**
+     * @return The number of times the change stream failed.
+     */
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    private void listen(MongoConnectionFactory db) {
+        long backoff = minBackoffMillis;
+        while (!Thread.currentThread().isInterrupted()) {
+            try (MongoConnection c = db.newConnection();
+                    MongoCursor<ChangeStreamDocument<Document>> changes = c.getDB().getCollection(collection).watch().iterator()) {
+                invalidateAll.run();
+                backoff = minBackoffMillis;
+                while (changes.hasNext()) {
+                    onChange.accept(changes.next());
+                }
+            } catch (Exception ex) {
+                CFBTLogger.logInfo(LOGGER, ChangeStreamInvalidator.class.getCanonicalName(), collection
+                        + " change stream unavailable, relying on the cache ttl for " + backoff + " ms: " + ex.getMessage());
+            }
+
+            invalidateAll.run();
+            synchronized (this) {
+                failures++;
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException ex) {
+                return;
+            }
+            backoff = Math.min(backoff * 2, maxBackoffMillis);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management.dal;
+
+import com.paypal.sre.cfbt.management.rest.impl.ConfigManager;
+import com.paypal.sre.cfbt.mongo.MongoConnection;
+import com.paypal.sre.cfbt.mongo.MongoConnectionFactory;
+import com.paypal.sre.cfbt.shared.CFBTLogger;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A unit of work sharing one {@link MongoConnection}.
+ *
+ * Scopes opened on the same thread and factory while a scope is open reuse its connection, the connection is closed
+ * when the outermost scope is closed. Always open a scope with try-with-resources:
+ *
+ * <pre>
+ * try (ConnectionScope scope = ConnectionScope.open(db)) {
+ *     dao.read(scope.connection(), ...);
+ * }
+ * </pre>
+ *
+ * The checkouts and their wait time are logged every "connectionMetricsInterval" checkouts, 0 disables them. With
+ * "connectionLeakDetectionEnabled", one in "connectionLeakDetectionSampleInterval" scopes records the stack which
+ * opened it, and is logged once with that stack when it's still open after "connectionLeakThresholdInSeconds", or the
+ * threshold given to {@link #open(MongoConnectionFactory, int)}.
+ */
+public final class ConnectionScope implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionScope.class);
+    private static final ThreadLocal<ConnectionScope> CURRENT = new ThreadLocal<>();
+    private static final Map<ConnectionScope, Boolean> OPEN_SCOPES = new ConcurrentHashMap<>();
+    private static final AtomicLong CHECKOUTS = new AtomicLong();
+    private static final AtomicLong REUSES = new AtomicLong();
+    private static final AtomicLong WAIT_NANOS = new AtomicLong();
+    private static final AtomicLong LEAKS = new AtomicLong();
+    private static ScheduledExecutorService leakDetector = null;
+
+    private final MongoConnectionFactory db;
+    private final ConnectionScope outer;
+    private final MongoConnection connection;
+    private final long openTime = System.currentTimeMillis();
+    private final Throwable allocation;
+    private final int leakThresholdInSeconds;
+    private int depth = 1;
+    private volatile boolean reported = false;
+
+    private ConnectionScope(MongoConnectionFactory db, ConnectionScope outer, MongoConnection connection, Throwable allocation,
+            int leakThresholdInSeconds) {
+        this.db = db;
+        this.outer = outer;
+        this.connection = connection;
+        this.allocation = allocation;
+        this.leakThresholdInSeconds = leakThresholdInSeconds;
+    }
+
+    /**
+     * Open a scope, joining the scope of the same factory already open on this thread.
+     *
+     * @param db The {@link MongoConnectionFactory}
+     * @return The {@link ConnectionScope}, to close.
+     * @throws Exception When no connection can be obtained.
+     */
+    public static ConnectionScope open(MongoConnectionFactory db) throws Exception {
+        return open(db, -1);
+    }
+
+    /**
+     * Open a scope expected to stay open longer than the configured leak threshold.
+     *
+     * @param db                     The {@link MongoConnectionFactory}
+     * @param leakThresholdInSeconds How long the scope may stay open before it's reported, 0 to never report it. The
+     *                               threshold of a new scope, a joined scope keeps its own.
+     * @return The {@link ConnectionScope}, to close.
+     * @throws Exception When no connection can be obtained.
+     */
+    public static ConnectionScope open(MongoConnectionFactory db, int leakThresholdInSeconds) throws Exception {
+        ConnectionScope current = CURRENT.get();
+        if (current != null && current.db == db) {
+            current.depth++;
+            REUSES.incrementAndGet();
+            return current;
+        }
+
+        long start = System.nanoTime();
+        MongoConnection connection = db.newConnection();
+        long wait = System.nanoTime() - start;
+        long checkouts = CHECKOUTS.incrementAndGet();
+        long totalWait = WAIT_NANOS.addAndGet(wait);
+
+        Configuration config = ConfigManager.getConfiguration();
+        Throwable allocation = null;
+        if (config != null && leakThresholdInSeconds != 0 && config.getBoolean("connectionLeakDetectionEnabled", false)
+                && checkouts % Math.max(1, config.getInt("connectionLeakDetectionSampleInterval", 100)) == 0) {
+            allocation = new Throwable("Connection scope opened by " + Thread.currentThread().getName());
+            startLeakDetector();
+        }
+        ConnectionScope scope = new ConnectionScope(db, current, connection, allocation, leakThresholdInSeconds);
+        OPEN_SCOPES.put(scope, Boolean.TRUE);
+        CURRENT.set(scope);
+
+        int metricsInterval = config == null ? 1000 : config.getInt("connectionMetricsInterval", 1000);
+        if (metricsInterval > 0 && checkouts % metricsInterval == 0) {
+            CFBTLogger.logInfo(LOGGER, ConnectionScope.class.getCanonicalName(), "Connection checkouts " + checkouts
+                    + ", reused " + REUSES.get() + ", average wait " + (totalWait / checkouts / 1000) + " us, open "
+                    + OPEN_SCOPES.size() + ", leaks detected " + LEAKS.get());
+        }
+        return scope;
+    }
+
+    /**
+     * @return The connection of this scope.
+     */
+    public MongoConnection connection() {
+        return connection;
+    }
+
+    /**
+     * Leave the scope, the connection is closed when the outermost scope is closed.
+     */
+    @Override
+    public void close() {
+        if (--depth > 0) {
+            return;
+        }
+
+        OPEN_SCOPES.remove(this);
+        if (outer != null) {
+            CURRENT.set(outer);
+        } else {
+            CURRENT.remove();
+        }
+        try {
+            connection.close();
+        } catch (Exception ex) {
+            CFBTLogger.logError(LOGGER, ConnectionScope.class.getCanonicalName(), "Error closing the mongo connection", ex);
+        }
+    }
+
+    private static synchronized void startLeakDetector() {
+        if (leakDetector != null) {
+            return;
+        }
+        leakDetector = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "ConnectionScopeLeakDetector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        leakDetector.scheduleWithFixedDelay(ConnectionScope::detectLeaks, 30, 30, TimeUnit.SECONDS);
+    }
+
+    private static void detectLeaks() {
+        long defaultThreshold = TimeUnit.SECONDS.toMillis(ConfigManager.getConfiguration().getInt("connectionLeakThresholdInSeconds", 60));
+        long now = System.currentTimeMillis();
+        for (ConnectionScope scope : OPEN_SCOPES.keySet()) {
+            long threshold = scope.leakThresholdInSeconds < 0 ? defaultThreshold : TimeUnit.SECONDS.toMillis(scope.leakThresholdInSeconds);
+            if (!scope.reported && scope.allocation != null && now - scope.openTime > threshold) {
+                scope.reported = true;
+                LEAKS.incrementAndGet();
+                CFBTLogger.logError(LOGGER, ConnectionScope.class.getCanonicalName(), "Connection scope open for "
+                        + (now - scope.openTime) + " ms, not closed", scope.allocation);
+            }
+        }
+    }
+}
@@ -13,12 +13,9 @@ import org.springframework.stereotype.Repository;
 
 import com.ebayinc.platform.security.SecretProvider;
 import com.google.common.base.Strings;
-import com.mongodb.client.MongoDatabase;
-import com.mongodb.client.model.IndexOptions;
 import com.paypal.sre.cfbt.mongo.MongoConnection;
 import com.paypal.sre.cfbt.mongo.MongoConnectionFactory;
 import com.paypal.sre.cfbt.shared.CFBTLogger;
-import org.bson.Document;
 
 /**
  * This Repository class contains the configuration for database execution. To be extended in the future to allow
@@ -32,8 +29,6 @@ public class DatabaseConfig {
     protected static final String MONGO_ENDPOINT = "mongo.endpoint";
     protected static final String MONGO_DB_NAME = "mongo.dbName";
     protected String mongoTopoKey;
-    protected static final int ASCENDING = 1;
-    protected static final int DESCENDING = -1;
 
     public final static String SERVER_IPPORT_DELIMITER = "\\^";
 
@@ -79,12 +74,19 @@ public class DatabaseConfig {
             CFBTLogger.logInfo(LOG, CFBTLogger.CalEventEnum.SYSTEMCONFIG,
                     "CFBTPKGMAN INIT: Unable to connect with Mongo " + e.getMessage());
         }
-	try (MongoConnection c = mDB.newConnection()) {
-            addExecutionRequestIndex(c);
-	} catch (Exception e) {
-	    CFBTLogger.logInfo(LOG, CFBTLogger.CalEventEnum.SYSTEMCONFIG,
-		    "CFBT INIT: Unable to add indices to collections " + e.getMessage());
-	}
+        // The writes relying on a unique index must not start before it exists, the others can be built later.
+        try (MongoConnection c = mDB.newConnection()) {
+            IndexRegistry.getInstance().reconcileUnique(c);
+        } catch (Exception e) {
+            CFBTLogger.logError(CFBTLogger.CalEventEnum.SYSTEMCONFIG, "CFBT INIT: Unable to add the unique indices", e);
+        }
+        // The thread heartbeats are only read by their indexed range once their format is known.
+        try (MongoConnection c = mDB.newConnection()) {
+            ThreadStatisticsDAO.getInstance().checkFormat(c);
+        } catch (Exception e) {
+            CFBTLogger.logError(CFBTLogger.CalEventEnum.SYSTEMCONFIG, "CFBT INIT: Unable to check the thread heartbeats", e);
+        }
+        IndexRegistry.getInstance().reconcileInBackground(mDB, mConfig.getBoolean("indexDiagnosticsEnabled", false));
     }
 
     /**
@@ -113,24 +115,4 @@ public class DatabaseConfig {
         return value;
 
     }
-
-    private void addExecutionRequestIndex(MongoConnection c) {
-        MongoDatabase db = c.getDB();
-
-        {
-            Document statusIndex = new Document("status", ASCENDING);
-            IndexOptions indexOptions = new IndexOptions().background(true).name("status_1_background_");
-            db.getCollection("ExecutionRequest").createIndex(statusIndex, indexOptions);
-        }
-        {
-            Document statusIndex = new Document("queueName", ASCENDING);
-            IndexOptions indexOptions = new IndexOptions().background(true).name("queueName_1_background_");
-            db.getCollection("ExecutionRequest").createIndex(statusIndex, indexOptions);
-        }
-        {
-            Document executionRequestIndex = new Document("completionTime", DESCENDING);
-            IndexOptions indexOptions = new IndexOptions().background(true).name("completionTime_-1_background_");
-            db.getCollection("ExecutionRequest").createIndex(executionRequestIndex, indexOptions);
-        }
-    }
 }
@@ -63,7 +63,10 @@ public class ExecutionRepository {
                 otherInfo.put("emailAddress", accountManager.getNewAccount(test).getEmailAddress());
             }
             if(SpecialRequest.KEYSTORE.equals(requestType)) {
-                Test testDetails = TestDAO.getInstance(mDB).readOne(mDB.newConnection(), test.getId(), false, null);
+                Test testDetails;
+                try (ConnectionScope scope = ConnectionScope.open(mDB)) {
+                    testDetails = TestDAO.getInstance(mDB).readOne(scope.connection(), test.getId(), false, null);
+                }
                 for(Parameter testParameter: testDetails.getParameters()) {
                     if("keystore".equals(testParameter.getSpecialRequestFieldType())) {
                         String paramName = testParameter.getName();
@@ -236,7 +239,8 @@ public class ExecutionRepository {
         boolean updateComplete = false;
         TestExecutionDAO testExecutionDAO = TestExecutionDAO
                 .getInstance(ConfigManager.getDatabaseConfig().getConnectionFactory());
-        try (MongoConnection c = mDB.newConnection()) {
+        try (ConnectionScope scope = ConnectionScope.open(mDB)) {
+            MongoConnection c = scope.connection();
             List<Document> statusQuery = new ArrayList<>();
             Document idQuery = new Document("_id", new ObjectId(execution.getId()));
 
@@ -273,12 +277,7 @@ public class ExecutionRepository {
             // If the execution is aborted, there will be no steps not already saved.
             if (!Execution.Status.ABORT.equals(execution.getStatus())) {
 
-                for (Step eachStep : execution.getSteps()) {
-                    List<Attachment> attachments = addAttachments(mDB, eachStep, execution.getId());
-                    if (attachments != null && attachments.size() == eachStep.getAttachments().size()) {
-                        eachStep.setAttachments(attachments);
-                    }
-                }
+                addAttachments(mDB, c, execution.getSteps(), execution.getId());
                 update.append("$push",
                         new Document("steps", new Document("$each", MongoDataMarshaller.encode(execution.getSteps()))));
             }
@@ -303,57 +302,50 @@ public class ExecutionRepository {
     }
 
     /**
-     * This method records a list of {@link Attachment} associated with a execution.
+     * This method records the {@link Attachment}s of the steps of an execution with one bulk insert, the attachments
+     * of a step are replaced with their references when all of them are recorded.
      * @param mDB         instance of {@link MongoConnectionFactory}
-     * @param step        instance of {@link Step}
+     * @param c           instance of {@link MongoConnection}
+     * @param steps       the {@link Step}s of the execution
      * @param executionId id of test {@link Execution}
-     * @return list of {@link Attachment}
-     * @throws UnknownHostException
      */
-    private List<Attachment> addAttachments(MongoConnectionFactory mDB, Step step, String executionId)
-            throws UnknownHostException {
-        List<Attachment> attachments = new ArrayList<Attachment>();
-        for (Attachment eachAttachment : step.getAttachments()) {
-            String id = addAttachment(mDB, eachAttachment, executionId);
-            if (id != null) {
-                String type = eachAttachment.getType();
-                String name = eachAttachment.getName();
-                eachAttachment = new Attachment();
-                eachAttachment.setId(id);
-                eachAttachment.setName(name);
-                eachAttachment.setType(type);
-                attachments.add(eachAttachment);
+    private void addAttachments(MongoConnectionFactory mDB, MongoConnection c, List<Step> steps, String executionId) {
+        List<Attachment> attachmentsToAdd = new ArrayList<>();
+        for (Step eachStep : steps) {
+            for (Attachment eachAttachment : eachStep.getAttachments()) {
+                eachAttachment.setExecutionId(executionId);
+                try {
+                    eachAttachment.setSize(String.valueOf(eachAttachment.getContent().getBytes("UTF-8").length));
+                } catch (UnsupportedEncodingException ex) {
+                    CFBTLogger.logError(LOGGER, ExecutionRepository.class.toString(),
+                            "The Character Encoding - UTF-8 is not supported", ex);
+                    throw new IllegalStateException("The Character Encoding - UTF-8 is not supported", ex);
+                }
+                attachmentsToAdd.add(eachAttachment);
             }
         }
-        return attachments;
-    }
-
-    /**
-     * This method records an {@link Attachment}
-     * @param mDB             instance of {@link MongoConnectionFactory}
-     * @param attachmentToAdd instance of {@link Attachment}
-     * @param executionId     id of test {@link Execution}
-     * @return id of {@link Attachment}
-     * @throws UnknownHostException
-     */
-    private String addAttachment(MongoConnectionFactory mDB, Attachment attachmentToAdd, String executionId)
-            throws UnknownHostException {
-        String id = null;
-        AttachmentDAO attachmentDAO = AttachmentDAO.getInstance();
-        MongoConnection c = mDB.newConnection();
-        attachmentToAdd.setExecutionId(executionId);
-        String size;
-        try {
-            size = String.valueOf(attachmentToAdd.getContent().getBytes("UTF-8").length);
-            attachmentToAdd.setSize(size);
-        } catch (UnsupportedEncodingException ex) {
-            CFBTLogger.logError(LOGGER, ExecutionRepository.class.toString(),
-                    "The Character Encoding - UTF-8 is not supported", ex);
-            throw new IllegalStateException("The Character Encoding - UTF-8 is not supported", ex);
+        if (attachmentsToAdd.isEmpty()) {
+            return;
         }
-        id = attachmentDAO.insert(c, attachmentToAdd);
 
-        return id;
+        List<String> ids = AttachmentDAO.getInstance().insertAll(mDB, c, attachmentsToAdd);
+        int next = 0;
+        for (Step eachStep : steps) {
+            List<Attachment> attachments = new ArrayList<Attachment>();
+            for (Attachment eachAttachment : eachStep.getAttachments()) {
+                String id = ids.get(next++);
+                if (id != null) {
+                    Attachment reference = new Attachment();
+                    reference.setId(id);
+                    reference.setName(eachAttachment.getName());
+                    reference.setType(eachAttachment.getType());
+                    attachments.add(reference);
+                }
+            }
+            if (attachments.size() == eachStep.getAttachments().size()) {
+                eachStep.setAttachments(attachments);
+            }
+        }
     }
 
     /**
@@ -0,0 +1,166 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management.dal;
+
+import com.paypal.sre.cfbt.data.execapi.ExecutionRequest;
+import com.paypal.sre.cfbt.management.rest.impl.ConfigManager;
+import com.paypal.sre.cfbt.mongo.MongoConnectionFactory;
+import com.paypal.sre.cfbt.shared.CFBTLogger;
+import com.rits.cloning.Cloner;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import org.bson.BsonValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded read through near cache of {@link ExecutionRequest} by id.
+ *
+ * The writes of this node invalidate their request ids. The writes of the other nodes are invalidated through a
+ * {@link ChangeStreamInvalidator} on the ExecutionRequest collection, when mongo runs as a replica set, and entries
+ * older than "executionRequestCacheTtlInMillis" are reloaded in any case. Cached requests are copied on the way in
+ * and out, callers are free to change them.
+ */
+public class ExecutionRequestCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExecutionRequestCache.class);
+    private static final ExecutionRequestCache INSTANCE = new ExecutionRequestCache();
+    private static final int METRICS_WINDOW = 1000;
+
+    private final Cloner cloner = new Cloner();
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > ConfigManager.getConfiguration().getInt("executionRequestCacheMaxEntries", 1000);
+        }
+    };
+    private final ChangeStreamInvalidator changeStream = new ChangeStreamInvalidator("ExecutionRequest", (change) -> {
+        BsonValue id = change.getDocumentKey() == null ? null : change.getDocumentKey().get("_id");
+        if (id != null && id.isObjectId()) {
+            invalidate(id.asObjectId().getValue().toHexString());
+        } else {
+            invalidateAll();
+        }
+    }, this::invalidateAll);
+    private long generation = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private final long[] latencies = new long[METRICS_WINDOW];
+    private int lookups = 0;
+
+    private static class Entry {
+        private final ExecutionRequest request;
+        private final long loadTime;
+
+        Entry(ExecutionRequest request) {
+            this.request = request;
+            this.loadTime = System.currentTimeMillis();
+        }
+    }
+
+    private ExecutionRequestCache() {
+    }
+
+    public static ExecutionRequestCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return true, when the execution requests are cached.
+     */
+    public static boolean isEnabled() {
+        return ConfigManager.getConfiguration().getBoolean("executionRequestCacheEnabled", false);
+    }
+
+    /**
+     * Return the cached request, or load and cache it.
+     *
+     * @param db     The {@link MongoConnectionFactory}, to listen to the changes of the other nodes.
+     * @param id     The request id.
+     * @param loader Reads the request from mongo.
+     * @return A copy of the request, null when it's not found.
+     * @throws Exception On error loading the request.
+     */
+    public ExecutionRequest get(MongoConnectionFactory db, String id, Callable<ExecutionRequest> loader) throws Exception {
+        long start = System.nanoTime();
+        long ttl = ConfigManager.getConfiguration().getInt("executionRequestCacheTtlInMillis", 1000);
+        long loadGeneration;
+        Entry cached = null;
+
+        changeStream.start(db);
+        synchronized (this) {
+            Entry entry = entries.get(id);
+            if (entry != null && System.currentTimeMillis() - entry.loadTime < ttl) {
+                hits++;
+                cached = entry;
+            } else {
+                misses++;
+            }
+            loadGeneration = generation;
+        }
+        // The cached requests are never changed in place, they're copied outside of the lock.
+        if (cached != null) {
+            ExecutionRequest request = cloner.deepClone(cached.request);
+            synchronized (this) {
+                record(start);
+            }
+            return request;
+        }
+
+        ExecutionRequest request = loader.call();
+        Entry loaded = request == null ? null : new Entry(cloner.deepClone(request));
+        synchronized (this) {
+            // Don't cache what was read before an invalidation, it may be the value the invalidation replaced.
+            if (loaded != null && loadGeneration == generation) {
+                entries.put(id, loaded);
+            }
+            record(start);
+        }
+        return request;
+    }
+
+    /**
+     * Drop the cached requests.
+     *
+     * @param ids The request ids.
+     */
+    public synchronized void invalidate(Collection<String> ids) {
+        generation++;
+        for (String id : ids) {
+            entries.remove(id);
+        }
+    }
+
+    /**
+     * Drop the cached request.
+     *
+     * @param id The request id.
+     */
+    public void invalidate(String id) {
+        invalidate(Arrays.asList(id));
+    }
+
+    /**
+     * Drop every cached request, for the updates which don't know the ids they change.
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    private void record(long start) {
+        latencies[lookups++] = System.nanoTime() - start;
+        if (lookups == METRICS_WINDOW) {
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            long p99 = sorted[(int) Math.ceil(0.99 * METRICS_WINDOW) - 1];
+            CFBTLogger.logInfo(LOGGER, ExecutionRequestCache.class.getCanonicalName(), "Execution request cache hit rate "
+                    + (100 * hits / (hits + misses)) + "% over " + (hits + misses) + " lookups, p99 lookup "
+                    + (p99 / 1000) + " us over the last " + METRICS_WINDOW);
+            lookups = 0;
+        }
+    }
+}
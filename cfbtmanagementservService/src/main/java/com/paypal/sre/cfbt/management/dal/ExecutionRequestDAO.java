@@ -1,5 +1,6 @@
 package com.paypal.sre.cfbt.management.dal;
 
+import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.UpdateResult;
@@ -16,9 +17,11 @@ import com.paypal.sre.cfbt.shared.DateUtil;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import org.joda.time.DateTime;
 import org.joda.time.Period;
@@ -29,6 +32,17 @@ import org.slf4j.LoggerFactory;
  * (C) 2019 PayPal, Internal software, do not distribute.
  */
 public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
+    /**
+     * Running total of the completed tests, the sum of the {@link #COMPLETED_TEST_FIELDS}.
+     */
+    public static final String COMPLETED_TESTS = "completedTests";
+    /**
+     * Projection of the request summaries, leaves out the embedded tests which can hold thousands of entries.
+     */
+    public static final Bson SUMMARY_PROJECTION = Projections.exclude("tests");
+    static final List<String> COMPLETED_TEST_FIELDS = Arrays.asList("passedTests", "failedTests", "testsInError",
+            "skippedTests", "abortedTests", "nonReleaseVettingTests", "testsFalsePositive", "testsFalseNegative");
+
     private static ExecutionRequestDAO INSTANCE = null;
     private final MongoConnectionFactory db;
     private final Logger mLogger = LoggerFactory.getLogger(DBOpLog.class);
@@ -88,6 +102,18 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
      * @throws Exception
      */
     public List<ExecutionRequest> getByStatus(List<String> statusList) throws Exception {
+        return getByStatus(statusList, null);
+    }
+
+    /**
+     * Get by status regardless of queue.
+     *
+     * @param statusList list of statuses to pull.
+     * @param projection The fields to read, e.g. {@link #SUMMARY_PROJECTION}, null for the whole request.
+     * @return {@link List<ExecutionRequest>}
+     * @throws Exception
+     */
+    public List<ExecutionRequest> getByStatus(List<String> statusList, Bson projection) throws Exception {
         List<ExecutionRequest> executionrequestlist = null;
         List<Document> statuses = new ArrayList<>();
 
@@ -96,7 +122,7 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
         }
 
         try (MongoConnection c = db.newConnection()) {
-            executionrequestlist = super.read(c, new Document("$or", statuses));
+            executionrequestlist = super.read(c, new Document("$or", statuses), projection, null, null);
             for (ExecutionRequest request : executionrequestlist) {
                 setPercentComplete(request);
                 setTimeToExecute(request);
@@ -151,6 +177,17 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
      * @return list of execution requests
      */
     public List<ExecutionRequest> getSystemStatus(DateTime dateTimeFrom, int pendingLimit, int completedLimit, Boolean isSynthetic, Boolean shouldShowSyntheticsOnCFBT) throws Exception {
+        return getSystemStatus(dateTimeFrom, pendingLimit, completedLimit, isSynthetic, shouldShowSyntheticsOnCFBT, null);
+    }
+
+    /**
+     * Get execution requests that are pending, in-progress, or recently completed.
+     *
+     * @param dateTimeFrom earliest date and time considered recent
+     * @param projection The fields to read, e.g. {@link #SUMMARY_PROJECTION}, null for the whole request.
+     * @return list of execution requests
+     */
+    public List<ExecutionRequest> getSystemStatus(DateTime dateTimeFrom, int pendingLimit, int completedLimit, Boolean isSynthetic, Boolean shouldShowSyntheticsOnCFBT, Bson projection) throws Exception {
 
         List<ExecutionRequest> executionRequestList = new ArrayList<>();
 
@@ -200,9 +237,9 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
         appendSyntheticFilters(isSynthetic, shouldShowSyntheticsOnCFBT, pendingFilter, inProgressFilter, completedFilter);
 
         try (MongoConnection c = db.newConnection()) {
-            executionRequestList.addAll(super.read(c, pendingFilter, null, pendingSort, pendingLimit));
-            executionRequestList.addAll(super.read(c, inProgressFilter));
-            executionRequestList.addAll(super.read(c, completedFilter, null, completedSort, completedLimit));
+            executionRequestList.addAll(super.read(c, pendingFilter, projection, pendingSort, pendingLimit));
+            executionRequestList.addAll(super.read(c, inProgressFilter, projection, null, null));
+            executionRequestList.addAll(super.read(c, completedFilter, projection, completedSort, completedLimit));
             // percentComplete and timeToExecute values are not saved to
             // the database and must be calculated and set on the fly.
             for (ExecutionRequest request : executionRequestList) {
@@ -272,12 +309,14 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
         try (MongoConnection c = db.newConnection()) {
             final String id = super.insert(c, request);
             request.setId(id);
+            Document setFields = new Document(COMPLETED_TESTS, getCompletedTests(request));
 
             // The releaseTest id = executionRequest id.
             if (request.getReleaseTest() != null) {
                 request.getReleaseTest().setId(id);
-                super.update(c, request, new Document("$set", new Document("releaseTest._id", new ObjectId(request.getId()))));
+                setFields.append("releaseTest._id", new ObjectId(request.getId()));
             }
+            super.update(c, request, new Document("$set", setFields));
         }
     }
 
@@ -299,12 +338,14 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
         try (MongoConnection c = db.newConnection()) {
             final String id = super.insert(c, request);
             request.setId(id);
+            Document setFields = new Document(COMPLETED_TESTS, getCompletedTests(request));
 
             // The releaseTest id = executionRequest id.
             if (request.getReleaseTest() != null) {
                 request.getReleaseTest().setId(id);
-                super.update(c, request, new Document("$set", new Document("releaseTest._id", new ObjectId(request.getId()))));
+                setFields.append("releaseTest._id", new ObjectId(request.getId()));
             }
+            super.update(c, request, new Document("$set", setFields));
         }
     }
     /**
@@ -314,18 +355,8 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
     private void setPercentComplete(ExecutionRequest request) {
         if (request == null) return;
 
-        int numFailedTests = request.getFailedTests();
         int numTests = request.getNumberTests();
-        int numPassedTests = request.getPassedTests();
-        int numErroredTests = request.getTestsInError();
-        int numSkippedTests = request.getSkippedTests();
-        int numAbortedTests = request.getAbortedTests();
-        int numFalseNegatives = request.getTestsFalseNegative();
-        int numFalsePositives = request.getTestsFalsePositive();
-        int numNonReleaseVettingTests = request.getNonReleaseVettingTests();
-
-        int totalCompletedTests = numFailedTests + numPassedTests + numErroredTests + numSkippedTests + numAbortedTests
-                                   + numFalseNegatives + numFalsePositives + numNonReleaseVettingTests;
+        int totalCompletedTests = getCompletedTests(request);
 
         double percentComplete = 0;
 
@@ -336,6 +367,30 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
         request.setPercentComplete(percentComplete);
     }
 
+    /**
+     * Sum the result counters of the request.
+     * @param request {@link ExecutionRequest}
+     * @return The number of completed tests.
+     */
+    private static int getCompletedTests(ExecutionRequest request) {
+        return request.getFailedTests() + request.getPassedTests() + request.getTestsInError() + request.getSkippedTests()
+                + request.getAbortedTests() + request.getTestsFalseNegative() + request.getTestsFalsePositive()
+                + request.getNonReleaseVettingTests();
+    }
+
+    /**
+     * Create the {@code $expr} filter matching the requests whose tests have all completed. Requests created before
+     * the {@link #COMPLETED_TESTS} counter existed fall back on the sum of the result counters.
+     * @return The filter {@link Document}
+     */
+    public static Document testsCompletedFilter() {
+        List<Document> resultCounters = new ArrayList<>();
+        COMPLETED_TEST_FIELDS.forEach((field) -> resultCounters.add(new Document("$ifNull", Arrays.asList("$" + field, 0))));
+
+        Document completedTests = new Document("$ifNull", Arrays.asList("$" + COMPLETED_TESTS, new Document("$add", resultCounters)));
+        return new Document("$expr", new Document("$gte", Arrays.asList(completedTests, "$numberTests")));
+    }
+
     private void setTimeToExecute(ExecutionRequest request) {
         if (request == null) return;
 
@@ -371,20 +426,21 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
             updateValues = updateValues.append("releaseTest.deploymentComplete", DateUtil.currentDateTimeISOFormat());
         }
         Document inProgressUpdate = new Document("$set", updateValues);
-        List<Document> objectIds = new ArrayList<>();
+        List<String> requestIds = new ArrayList<>();
         requests.forEach((exRequest) -> {
-            objectIds.add(new Document("_id", new ObjectId(exRequest.getId())));
+            requestIds.add(exRequest.getId());
         });
-        Document queryFilter = new Document("$or", objectIds);
 
         try (MongoConnection c = db.newConnection()) {
-            UpdateResult result =  super.update(c, queryFilter, inProgressUpdate, false);
+            UpdateResult result =  super.update(c, BatchedIdLookup.idFilter(requestIds), inProgressUpdate, false);
 
             if (result.getMatchedCount() > 0) {
-                return super.read(c, queryFilter);
+                return readByIds(c, requestIds, null);
             } else {
                 throw new IllegalArgumentException("Execution Request Ids not found");
             }
+        } finally {
+            ExecutionRequestCache.getInstance().invalidate(requestIds);
         }
     }
 
@@ -395,6 +451,8 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
 
         try (MongoConnection c = db.newConnection()) {
             return super.findAndUpdate(c, request.getId(), inProgressUpdate);
+        } finally {
+            ExecutionRequestCache.getInstance().invalidate(request.getId());
         }
     }
 
@@ -409,6 +467,8 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
             }
             Document testUpdate = new Document("$set", new Document("tests", documentList).append("numberTests", tests.size()));
             return super.findAndUpdate(c, request.getId(), testUpdate);
+        } finally {
+            ExecutionRequestCache.getInstance().invalidate(request.getId());
         }
     }
 
@@ -421,12 +481,34 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
      * @throws java.lang.Exception Exceptions thrown by Mongo.
      */
     public ExecutionRequest getById(String id) throws UnknownHostException, Exception  {
-        ExecutionRequest request = null;
+        return getById(id, false);
+    }
 
+    /**
+     * Returns (type {@link ExecutionRequest}) of from the ExecutionRequest collection.
+     *
+     * The request is served from the {@link ExecutionRequestCache} when it's enabled, callers which act on the current
+     * state of the request bypass it.
+     *
+     * @param id an id for ExecutionRequest record
+     * @param bypassCache true, to always read the request from mongo.
+     * @return ExecutionRequest  the found execution request record
+     * @throws java.lang.Exception Exceptions thrown by Mongo.
+     */
+    public ExecutionRequest getById(String id, boolean bypassCache) throws Exception  {
         if (id == null) {
             throw new IllegalArgumentException("The execution request ID cannot be null.");
         }
 
+        if (!bypassCache && ExecutionRequestCache.isEnabled()) {
+            return ExecutionRequestCache.getInstance().get(db, id, () -> readById(id));
+        }
+        return readById(id);
+    }
+
+    private ExecutionRequest readById(String id) throws Exception {
+        ExecutionRequest request = null;
+
         try (MongoConnection c = db.newConnection()) {
             request = super.readOne(c, id);
             setPercentComplete(request);
@@ -453,18 +535,8 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
             return executionrequestlist;
         }
 
-        List<Document> objectIds = new ArrayList<>();
-        executionRequestsIds.forEach((id) -> {
-            objectIds.add(new Document("_id", new ObjectId(id)));
-        });
-        Document queryFilter = new Document("$or", objectIds);
-
         try (MongoConnection c = db.newConnection()) {
-            executionrequestlist = super.read(c, queryFilter);
-
-            if (executionrequestlist == null) {
-                return null;
-            }
+            executionrequestlist = readByIds(c, executionRequestsIds, null);
 
             for (ExecutionRequest request : executionrequestlist) {
                 setPercentComplete(request);
@@ -474,6 +546,20 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
         return executionrequestlist;
     }
 
+    /**
+     * Read the execution requests with the given ids using batched {@code $in} queries, see {@link BatchedIdLookup}.
+     *
+     * @param c a valid MongoConnection object.
+     * @param ids The execution request ids.
+     * @param projection The fields to read, null for the whole request.
+     * @return The requests found, in the order of {@code ids}.
+     * @throws java.lang.Exception Exceptions thrown by Mongo.
+     */
+    public List<ExecutionRequest> readByIds(MongoConnection c, Collection<String> ids, Bson projection) throws Exception {
+        return BatchedIdLookup.read(ids, null, projection,
+                (query, fields) -> super.read(c, query, fields, null, null), ExecutionRequest::getId);
+    }
+
     /**
      * Create a Mongo Document filter to that retrieves the ID but only if it's in the IN_PROGRESS state.
      * @param id The Request ID to filter.
@@ -556,6 +642,8 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
                     }
                 }
             }
+        } finally {
+            ExecutionRequestCache.getInstance().invalidate(request.getId());
         }
 
         return request;
@@ -574,6 +662,8 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
 
         try (MongoConnection c = db.newConnection()) {
             return super.update(c, request, new Document("$set", deploymentStatus));
+        } finally {
+            ExecutionRequestCache.getInstance().invalidate(request.getId());
         }
     }
 
@@ -588,6 +678,8 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
         try (MongoConnection c = db.newConnection()) {
 
             return super.update(c, request, new Document("$set", new Document("status", status.toString())));
+        } finally {
+            ExecutionRequestCache.getInstance().invalidate(request.getId());
         }
     }
 
@@ -610,6 +702,8 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
             if (result.getMatchedCount() > 0) {
                 request.setPosition(request.getPosition() + 1);
             }
+        } finally {
+            ExecutionRequestCache.getInstance().invalidate(request.getId());
         }
     }
 
@@ -634,6 +728,8 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
             if (result.getMatchedCount() > 0) {
                 request.setPosition(request.getPosition() - 1);
             }
+        } finally {
+            ExecutionRequestCache.getInstance().invalidate(request.getId());
         }
     }
 
@@ -648,6 +744,8 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
             update.append("estimatedStartTime", request.getEstimatedStartTime());
 
             update(c, new Document("_id", new ObjectId(request.getId())), new Document("$set", update), false);
+        } finally {
+            ExecutionRequestCache.getInstance().invalidate(request.getId());
         }
     }
 
@@ -669,6 +767,8 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
             if (storedRequest == null) {
                 super.insert(c, newRequest);
             }
+        } finally {
+            ExecutionRequestCache.getInstance().invalidate(newRequest.getId());
         }
     }
 
@@ -732,6 +832,8 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
             });
 
             super.bulkUpdate(c, bulkData);
+        } finally {
+            orderedRequests.forEach((request) -> ExecutionRequestCache.getInstance().invalidate(request.getId()));
         }
     }
 
@@ -769,6 +871,8 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
                 request.setStatus(Status.COMPLETED);
                 request.setCompletionTime(completionTime);
             }
+        } finally {
+            ExecutionRequestCache.getInstance().invalidate(request.getId());
         }
     }
 
@@ -780,6 +884,7 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
         private MongoConnectionFactory db;
         String id;
         private boolean clearInProgress = false;
+        private long completedTests = 0;
 
         public Statistics(MongoConnectionFactory db, String id) {
             this.db = db;
@@ -787,6 +892,9 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
         }
 
         private void appendToEnd(String key, long number) {
+            if (COMPLETED_TEST_FIELDS.contains(key)) {
+                completedTests += number;
+            }
             if (incDocument == null) {
                 incDocument = new Document(key, number);
             }
@@ -853,10 +961,11 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
         public void update(ExecutionRequest request) throws Exception {
             // Update the statistics first, then update the passed in request.
             update();
+            StatisticsBuffer.getInstance().flush(id);
 
             ExecutionRequestDAO dao = ExecutionRequestDAO.getInstance(db);
 
-            ExecutionRequest updatedRequest = dao.getById(id);
+            ExecutionRequest updatedRequest = dao.getById(id, true);
 
             request.setAbortedTests(updatedRequest.getAbortedTests());
             request.setFailedTests(updatedRequest.getFailedTests());
@@ -872,19 +981,53 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
          * @throws Exception Mongo errors.
          */
         public void update() throws Exception {
-             ExecutionRequestDAO dao = ExecutionRequestDAO.getInstance(db);
+            if (incDocument == null) {
+                return;
+            }
 
-            try (MongoConnection c = db.newConnection()) {
-                if (incDocument != null) {
-                    if (clearInProgress) {
-                        dao.update(c, id, new Document("$set", new Document("testsInProgress", 0)));
-                    }
-                    dao.update(c, id, new Document("$inc", incDocument));
+            if (clearInProgress) {
+                // Pending increments must not be applied on top of the cleared count.
+                StatisticsBuffer.getInstance().flush(id);
+                ExecutionRequestDAO dao = ExecutionRequestDAO.getInstance(db);
+                try (MongoConnection c = db.newConnection()) {
+                    dao.update(c, id, new Document("$set", new Document("testsInProgress", 0)));
+                } finally {
+                    ExecutionRequestCache.getInstance().invalidate(id);
                 }
+            } else if (StatisticsBuffer.isEnabled()) {
+                StatisticsBuffer.getInstance().add(db, id, incDocument, completedTests);
+                return;
             }
+            write(db, id, incDocument, completedTests);
         }
 
+        /**
+         * Apply counter increments to the request.
+         * @param db The {@link MongoConnectionFactory}
+         * @param id The request id.
+         * @param incDocument The counter increments.
+         * @param completedTests The number of completed tests in the increments.
+         * @throws Exception Mongo errors.
+         */
+        static void write(MongoConnectionFactory db, String id, Document incDocument, long completedTests) throws Exception {
+            ExecutionRequestDAO dao = ExecutionRequestDAO.getInstance(db);
 
+            try (MongoConnection c = db.newConnection()) {
+                if (completedTests != 0) {
+                    // Count the completed tests in the same atomic update as the result counters.
+                    Document counterFilter = new Document("_id", new ObjectId(id))
+                            .append(COMPLETED_TESTS, new Document("$exists", true));
+                    Document incCompleted = new Document(incDocument).append(COMPLETED_TESTS, completedTests);
+                    if (dao.update(c, counterFilter, new Document("$inc", incCompleted), false).getMatchedCount() > 0) {
+                        return;
+                    }
+                    // Requests created before the counter existed are left without it, see testsCompletedFilter.
+                }
+                dao.update(c, id, new Document("$inc", incDocument));
+            } finally {
+                ExecutionRequestCache.getInstance().invalidate(id);
+            }
+        }
     }
 
     /**
@@ -902,6 +1045,8 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
         }
         try (MongoConnection c = db.newConnection()) {
             dao.update(c, id, new Document("$set", updateStatus));
+        } finally {
+            ExecutionRequestCache.getInstance().invalidate(id);
         }
     }
 
@@ -917,6 +1062,8 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
 
         try (MongoConnection c = db.newConnection()) {
             dao.update(c, id, new Document("$set", updateStatus));
+        } finally {
+            ExecutionRequestCache.getInstance().invalidate(id);
         }
     }
 
@@ -970,4 +1117,69 @@ public class ExecutionRequestDAO extends AbstractDAO<ExecutionRequest> {
         }
         return executionRequestList;
     }
+
+    /**
+     * Group the completed requests received between {@code dateTimeStart} and {@code dateTimeEnd} by release vehicle.
+     *
+     * The durations are computed by mongo, only the groups are returned. Each group has:
+     * _id, the release vehicle, null for the requests which aren't a release;
+     * executionDurations and deployDurations, the durations in seconds, deploy durations of 0 are left out;
+     * releases, the number of requests;
+     * rollbacks, the number of releases completed with a rollback.
+     *
+     * @param dateTimeStart start of the request time range.
+     * @param dateTimeEnd end of the request time range.
+     * @param resultStatuses the result statuses of the requests to include.
+     * @return The groups as {@link Document}
+     * @throws Exception On error running the aggregation.
+     */
+    public List<Document> getDurationsByReleaseVehicle(DateTime dateTimeStart, DateTime dateTimeEnd,
+            List<String> resultStatuses) throws Exception {
+        Document match = new Document("requestTime", new Document("$gte", dateTimeStart.toString().replaceAll(".000Z", ""))
+                .append("$lte", dateTimeEnd.toString().replaceAll(".000Z", "")))
+                .append("resultStatus", new Document("$in", resultStatuses));
+
+        Document isRelease = new Document("$and", Arrays.asList(
+                new Document("$eq", Arrays.asList("$type", ExecutionRequest.Type.RELEASE.toString())),
+                new Document("$gt", Arrays.asList("$releaseTest.releaseVehicle", null))));
+        Document project = new Document("_id", 0)
+                .append("vehicle", new Document("$cond", Arrays.asList(isRelease, "$releaseTest.releaseVehicle", null)))
+                .append("executionDuration", durationInSeconds("$executionStart", "$executionComplete", dateTimeEnd))
+                .append("deployDuration", new Document("$cond", Arrays.asList(
+                        new Document("$and", Arrays.asList(isRelease,
+                                new Document("$gt", Arrays.asList("$releaseTest.deploymentComplete", null)))),
+                        durationInSeconds("$releaseTest.deploymentStart", "$releaseTest.deploymentComplete", dateTimeEnd),
+                        0)))
+                .append("rollback", new Document("$cond", Arrays.asList(
+                        new Document("$eq", Arrays.asList("$releaseTest.completionAction", "ROLLBACK")), 1, 0)));
+        Document group = new Document("_id", "$vehicle")
+                .append("executionDurations", new Document("$push", "$executionDuration"))
+                .append("deployDurations", new Document("$push", new Document("$cond", Arrays.asList(
+                        new Document("$gt", Arrays.asList("$deployDuration", 0)), "$deployDuration", "$$REMOVE"))))
+                .append("releases", new Document("$sum", 1))
+                .append("rollbacks", new Document("$sum", "$rollback"));
+
+        List<Document> groups = new ArrayList<>();
+        try (MongoConnection c = db.newConnection()) {
+            for (Document vehicleGroup : aggregate(c, Arrays.asList(new Document("$match", match),
+                    new Document("$project", project), new Document("$group", group))).allowDiskUse(true)) {
+                groups.add(vehicleGroup);
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * The whole seconds between two ISO date strings, 0 without a start, the end defaults to {@code now}.
+     */
+    private static Document durationInSeconds(String start, String end, DateTime now) {
+        Document startDate = new Document("$dateFromString", new Document("dateString", start));
+        Document endDate = new Document("$ifNull", Arrays.asList(
+                new Document("$dateFromString", new Document("dateString", end)), now.toDate()));
+        return new Document("$cond", Arrays.asList(
+                new Document("$gt", Arrays.asList(start, null)),
+                new Document("$trunc", new Document("$divide", Arrays.asList(
+                        new Document("$subtract", Arrays.asList(endDate, startDate)), 1000))),
+                0));
+    }
 }
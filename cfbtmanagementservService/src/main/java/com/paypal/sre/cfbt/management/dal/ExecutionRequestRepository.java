@@ -3,9 +3,9 @@ package com.paypal.sre.cfbt.management.dal;
 import java.util.ArrayList;
 import java.util.List;
 
-import com.mongodb.client.result.UpdateResult;
 import org.bson.Document;
-import org.bson.types.ObjectId;
+
+import com.mongodb.client.result.UpdateResult;
 
 import com.paypal.sre.cfbt.data.execapi.Execution;
 import com.paypal.sre.cfbt.data.execapi.Execution.Status;
@@ -96,51 +96,55 @@ public class ExecutionRequestRepository {
                 }
             }
 
-            if (completedExecution) {
-                List<Document> objectIds = new ArrayList<>();
-                execution.getExecutionRequestIds().forEach((id) -> {
-                    objectIds.add(new Document("_id", new ObjectId(id)));
-                });
-                Document requestFilter = new Document("$or", objectIds);
-
-                Document finishedFilter = new Document("$where","function() {"
-                        + "var sum = 0;"
-                        + "if (typeof this.skippedTests !== 'undefined') sum += this.skippedTests;"
-                        + "if (typeof this.failedTests !== 'undefined') sum += this.failedTests;"
-                        + "if (typeof this.passedTests !== 'undefined') sum += this.passedTests;"
-                        + "if (typeof this.abortedTests !== 'undefined') sum += this.abortedTests;"
-                        + "if (typeof this.testsInError !== 'undefined') sum += this.testsInError;"
-                        + "if (typeof this.nonReleaseVettingTests !== 'undefined') sum += this.nonReleaseVettingTests;"
-                        + "if (typeof this.testsFalsePositive !== 'undefined') sum += this.testsFalsePositive;"
-                        + "if (typeof this.testsFalseNegative !== 'undefined') sum += this.testsFalseNegative;"
-                        + "return sum >= this.numberTests;"
-                        + "}"
-                );
-
-                Document statusInProgressFilter = new Document("status", ExecutionRequest.Status.IN_PROGRESS.toString());
-                Document statusPendingFilter    = new Document("status", ExecutionRequest.Status.PENDING.toString());
-                Document statusHaltInProgressFilter = new Document("status", ExecutionRequest.Status.HALT_IN_PROGRESS.toString());
-
-                List<Document> orQuery = new ArrayList<>();
-                orQuery.add(statusInProgressFilter);
-                orQuery.add(statusPendingFilter);
-                orQuery.add(statusHaltInProgressFilter);
-                Document orFilter = new Document("$or", orQuery);
-
-                List<Document> inProgressFilter = new ArrayList<>();
-                inProgressFilter.add(requestFilter);
-                inProgressFilter.add(finishedFilter);
-                inProgressFilter.add(orFilter);
-                Document andProgressFilter = new Document("$and", inProgressFilter);
-                
-                Document testingCompleteStatus =  new Document("status", ExecutionRequest.Status.TESTING_COMPLETE.toString());
-                
-                // Assume the Status was in progress and we're transitioning to completed.
-                UpdateResult result = ExecutionRequestDAO.getInstance(mDB).update(c, andProgressFilter,
-                        new Document("$set", testingCompleteStatus.append("executionComplete", DateUtil.currentDateTimeISOFormat())), false);
+            // Buffered completions make the transition when they're flushed.
+            if (completedExecution && !StatisticsBuffer.isEnabled()) {
+                markTestingComplete(mDB, c, execution.getExecutionRequestIds());
             }
         }
     }
+
+    /**
+     * Transition the requests whose tests have all completed to TESTING_COMPLETE.
+     *
+     * @param mDB        the {@link MongoConnectionFactory} object
+     * @param requestIds the ids of the {@link ExecutionRequest} to check
+     * @return true, when a request transitioned to TESTING_COMPLETE.
+     * @throws Exception usually thrown when trying to connect to Mongo.
+     */
+    public boolean markTestingComplete(MongoConnectionFactory mDB, List<String> requestIds) throws Exception {
+        try (MongoConnection c = mDB.newConnection()) {
+            return markTestingComplete(mDB, c, requestIds);
+        }
+    }
+
+    private boolean markTestingComplete(MongoConnectionFactory mDB, MongoConnection c, List<String> requestIds) throws Exception {
+        Document requestFilter = BatchedIdLookup.idFilter(requestIds);
+        Document finishedFilter = ExecutionRequestDAO.testsCompletedFilter();
+
+        Document statusInProgressFilter = new Document("status", ExecutionRequest.Status.IN_PROGRESS.toString());
+        Document statusPendingFilter    = new Document("status", ExecutionRequest.Status.PENDING.toString());
+        Document statusHaltInProgressFilter = new Document("status", ExecutionRequest.Status.HALT_IN_PROGRESS.toString());
+
+        List<Document> orQuery = new ArrayList<>();
+        orQuery.add(statusInProgressFilter);
+        orQuery.add(statusPendingFilter);
+        orQuery.add(statusHaltInProgressFilter);
+        Document orFilter = new Document("$or", orQuery);
+
+        List<Document> inProgressFilter = new ArrayList<>();
+        inProgressFilter.add(requestFilter);
+        inProgressFilter.add(finishedFilter);
+        inProgressFilter.add(orFilter);
+        Document andProgressFilter = new Document("$and", inProgressFilter);
+
+        Document testingCompleteStatus =  new Document("status", ExecutionRequest.Status.TESTING_COMPLETE.toString());
+
+        // Assume the Status was in progress and we're transitioning to completed.
+        UpdateResult result = ExecutionRequestDAO.getInstance(mDB).update(c, andProgressFilter,
+                new Document("$set", testingCompleteStatus.append("executionComplete", DateUtil.currentDateTimeISOFormat())), false);
+        ExecutionRequestCache.getInstance().invalidate(requestIds);
+        return result.getModifiedCount() > 0;
+    }
     
     /**
      * This method is responsible for finding the execution request with 
@@ -0,0 +1,350 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management.dal;
+
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexOptions;
+import com.paypal.sre.cfbt.data.execapi.Execution;
+import com.paypal.sre.cfbt.data.execapi.ExecutionRequest;
+import com.paypal.sre.cfbt.data.execapi.ReleaseTest;
+import com.paypal.sre.cfbt.mongo.MongoConnection;
+import com.paypal.sre.cfbt.mongo.MongoConnectionFactory;
+import com.paypal.sre.cfbt.shared.CFBTLogger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Declares the indexes of every DAO collection and the query shapes they are meant to serve.
+ *
+ * {@link #reconcile(MongoConnection)} creates the registered indexes missing from the database, existing indexes are
+ * never dropped. The unique indexes guard against duplicate writes, {@link #reconcileUnique(MongoConnection)} creates
+ * them before the service starts writing. {@link #explain(MongoConnection)} runs {@code explain} on each registered query shape and reports the
+ * shapes whose winning plan is a collection scan.
+ */
+public class IndexRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexRegistry.class);
+    private static final IndexRegistry INSTANCE = new IndexRegistry();
+    private static final int ASCENDING = 1;
+    private static final int DESCENDING = -1;
+
+    private final List<IndexSpec> indexes = new ArrayList<>();
+    private final List<QueryShape> queryShapes = new ArrayList<>();
+
+    /**
+     * An index of a collection.
+     */
+    public static class IndexSpec {
+        private final String collection;
+        private final Document keys;
+        private final String name;
+        private final boolean unique;
+        private final Long expireAfterSeconds;
+
+        IndexSpec(String collection, Document keys, String name, boolean unique, Long expireAfterSeconds) {
+            this.collection = collection;
+            this.keys = keys;
+            this.name = name;
+            this.unique = unique;
+            this.expireAfterSeconds = expireAfterSeconds;
+        }
+
+        public String getCollection() {
+            return collection;
+        }
+
+        public Document getKeys() {
+            return keys;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isUnique() {
+            return unique;
+        }
+
+        /**
+         * @return The seconds after which Mongo deletes a document past the date of the indexed field, null when the
+         * documents don't expire.
+         */
+        public Long getExpireAfterSeconds() {
+            return expireAfterSeconds;
+        }
+    }
+
+    /**
+     * A representative query of a DAO, with sample values.
+     */
+    public static class QueryShape {
+        private final String collection;
+        private final String name;
+        private final Document filter;
+        private final Document sort;
+
+        QueryShape(String collection, String name, Document filter, Document sort) {
+            this.collection = collection;
+            this.name = name;
+            this.filter = filter;
+            this.sort = sort;
+        }
+
+        public String getCollection() {
+            return collection;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private IndexRegistry() {
+        // ExecutionRequest, the single field index names predate the registry and are kept as is.
+        index("ExecutionRequest", new Document("status", ASCENDING), "status_1_background_", false);
+        index("ExecutionRequest", new Document("queueName", ASCENDING), "queueName_1_background_", false);
+        index("ExecutionRequest", new Document("completionTime", DESCENDING), "completionTime_-1_background_", false);
+        index("ExecutionRequest", new Document("queueName", ASCENDING).append("status", ASCENDING).append("position", ASCENDING),
+                "queueName_1_status_1_position_1", false);
+        index("ExecutionRequest", new Document("status", ASCENDING).append("position", ASCENDING).append("requestTime", ASCENDING),
+                "status_1_position_1_requestTime_1", false);
+        index("ExecutionRequest", new Document("releaseTest.testingCompleteCallbackStatus", ASCENDING),
+                "releaseTest.testingCompleteCallbackStatus_1", false);
+
+        // TestExecution
+        index("TestExecution", new Document("executionRequestIds", ASCENDING).append("status", ASCENDING),
+                "executionRequestIds_1_status_1", false);
+        index("TestExecution", new Document("testId", ASCENDING).append("executionTime", ASCENDING).append("status", ASCENDING),
+                "testId_1_executionTime_1_status_1", false);
+        index("TestExecution", new Document("testId", ASCENDING).append("correctStatus", ASCENDING).append("executionTime", ASCENDING),
+                "testId_1_correctStatus_1_executionTime_1", false);
+
+        // Other collections
+        index("TestStatisticsBucket", new Document("testId", ASCENDING).append("day", ASCENDING), "testId_1_day_1_background_", true);
+        expiring(TestStatisticsBucketDAO.MARKERS, "recorded", TestStatisticsBucketDAO.MARKER_EXPIRY_SECONDS);
+        index("LockData", new Document("lockName", ASCENDING), "lockName_1", false);
+        index("NodeRegistrationData", new Document("ip", ASCENDING), "ip_1", false);
+        index("ThreadStatistics", new Document("heartBeatDate", ASCENDING), "heartBeatDate_1", false);
+        index("ExecutionRequestStatistics", new Document("releaseVehicle", ASCENDING).append("dateTime", DESCENDING),
+                "releaseVehicle_1_dateTime_-1", false);
+        index("OverrideDetails", new Document("releaseId", ASCENDING), "releaseId_1", false);
+        index("OverrideDetails", new Document("componentVersions.currentVersion", ASCENDING), "componentVersions.currentVersion_1", false);
+        index("DatacenterConfig", new Document("name", ASCENDING), "name_1", false);
+
+        // Query shapes, the values only need the right types.
+        shape("ExecutionRequest", "ExecutionRequestDAO.getPositionedPendedRequests",
+                new Document("$and", Arrays.asList(
+                        new Document("status", ExecutionRequest.Status.PENDING.toString()),
+                        new Document("position", new Document("$lt", ExecutionRequest.POSITIONLESS)),
+                        new Document("position", new Document("$gt", ExecutionRequest.DEQUEUED_POSITION)),
+                        new Document("queueName", "queue"))),
+                new Document("position", ASCENDING));
+        shape("ExecutionRequest", "ExecutionRequestDAO.getByStatus",
+                new Document("status", new Document("$in", Arrays.asList(ExecutionRequest.Status.PENDING.toString()))), null);
+        shape("ExecutionRequest", "ReleaseTestDAO.readListing",
+                new Document("$and", Arrays.asList(
+                        new Document("type", ExecutionRequest.Type.RELEASE.toString()),
+                        new Document("status", new Document("$in", Arrays.asList(ExecutionRequest.Status.PENDING.toString()))))),
+                new Document("position", ASCENDING).append("requestTime", ASCENDING).append("_id", ASCENDING));
+        shape("ExecutionRequest", "ReleaseTestDAO.readByTestingCompleteCallbackStatus",
+                new Document("releaseTest.testingCompleteCallbackStatus", ReleaseTest.CallStatus.NOT_COMPLETE.toString()), null);
+        shape("TestExecution", "TestExecutionDAO.getRunningExecutions",
+                new Document("$and", Arrays.asList(
+                        new Document("executionRequestIds", new Document("$elemMatch", new Document("$in", Arrays.asList("id")))),
+                        new Document("status", Execution.Status.IN_PROGRESS.name()))), null);
+        shape("TestExecution", "TestRepository.getStatisticsForTest",
+                new Document("testId", "id")
+                        .append("executionTime", new Document("$gte", "2020-01-01T00:00:00Z"))
+                        .append("status", new Document("$in", Arrays.asList("PASS", "FAIL", "ERROR", "IN_PROGRESS"))), null);
+        shape("TestExecution", "TestRepository.correctStatistics",
+                new Document("testId", "id").append("correctStatus", false)
+                        .append("executionTime", new Document("$gte", "2020-01-01"))
+                        .append("status", new Document("$in", Arrays.asList("PASS", "FAIL"))), null);
+        shape("TestStatisticsBucket", "TestStatisticsBucketDAO.rollup",
+                new Document("testId", "id").append("day", new Document("$gte", "2020-01-01")), null);
+        shape("LockData", "LockDAO.lock", new Document("lockName", "lock"), null);
+        shape("NodeRegistrationData", "NodeDetailsDAO.getNodeDetails", new Document("ip", "127.0.0.1"), null);
+        shape("ThreadStatistics", "ThreadStatisticsDAO.readSince",
+                new Document("heartBeatDate", new Document("$gt", "2020-01-01T00:00:00.000Z")), null);
+        shape("ExecutionRequestStatistics", "ExecutionRequestStatisticsDAO.getCurrentStatistics",
+                new Document("releaseVehicle", "ALL"), new Document("dateTime", DESCENDING));
+        shape("OverrideDetails", "OverrideDetailsDAO.read", new Document("releaseId", "id"), new Document("_id", DESCENDING));
+    }
+
+    public static IndexRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    public List<IndexSpec> getIndexes() {
+        return Collections.unmodifiableList(indexes);
+    }
+
+    public List<QueryShape> getQueryShapes() {
+        return Collections.unmodifiableList(queryShapes);
+    }
+
+    /**
+     * Reconcile the indexes on a background thread, so the service doesn't wait for the index builds to be ready.
+     *
+     * @param db       The {@link MongoConnectionFactory}
+     * @param diagnose true, to log the query shapes served by a collection scan once the indexes are reconciled.
+     */
+    public void reconcileInBackground(MongoConnectionFactory db, boolean diagnose) {
+        Thread reconcile = new Thread(() -> {
+            try (MongoConnection c = db.newConnection()) {
+                reconcile(c);
+                if (diagnose) {
+                    explain(c);
+                }
+            } catch (Exception e) {
+                CFBTLogger.logInfo(LOGGER, CFBTLogger.CalEventEnum.SYSTEMCONFIG,
+                        "CFBT INIT: Unable to add indices to collections " + e.getMessage());
+            }
+        }, "IndexRegistry");
+        reconcile.setDaemon(true);
+        reconcile.start();
+    }
+
+    /**
+     * Create the registered indexes missing from the database.
+     *
+     * An existing index with the same name and different keys is reported and left alone.
+     *
+     * @param c The {@link MongoConnection}
+     * @return The names of the created indexes.
+     */
+    public List<String> reconcile(MongoConnection c) {
+        return reconcile(c, indexes);
+    }
+
+    /**
+     * Create the registered unique indexes missing from the database, waiting for their builds.
+     *
+     * @param c The {@link MongoConnection}
+     * @return The names of the created indexes.
+     */
+    public List<String> reconcileUnique(MongoConnection c) {
+        List<IndexSpec> unique = new ArrayList<>();
+        for (IndexSpec spec : indexes) {
+            if (spec.unique) {
+                unique.add(spec);
+            }
+        }
+        return reconcile(c, unique);
+    }
+
+    private List<String> reconcile(MongoConnection c, List<IndexSpec> indexes) {
+        MongoDatabase db = c.getDB();
+        Map<String, Map<String, Document>> existingByCollection = new HashMap<>();
+        List<String> created = new ArrayList<>();
+
+        for (IndexSpec spec : indexes) {
+            Map<String, Document> existing = existingByCollection.computeIfAbsent(spec.collection, (collection) -> {
+                Map<String, Document> keysByName = new HashMap<>();
+                for (Document index : db.getCollection(collection).listIndexes()) {
+                    keysByName.put(index.getString("name"), index.get("key", Document.class));
+                }
+                return keysByName;
+            });
+
+            Document existingKeys = existing.get(spec.name);
+            if (existingKeys != null) {
+                if (!existingKeys.equals(spec.keys)) {
+                    CFBTLogger.logWarn(LOGGER, IndexRegistry.class.getCanonicalName(), "Index " + spec.collection + "."
+                            + spec.name + " has keys " + existingKeys.toJson() + ", expected " + spec.keys.toJson());
+                }
+                continue;
+            }
+            if (existing.containsValue(spec.keys)) {
+                continue;
+            }
+
+            IndexOptions indexOptions = new IndexOptions().background(true).unique(spec.unique).name(spec.name);
+            if (spec.expireAfterSeconds != null) {
+                indexOptions.expireAfter(spec.expireAfterSeconds, TimeUnit.SECONDS);
+            }
+            db.getCollection(spec.collection).createIndex(spec.keys, indexOptions);
+            existing.put(spec.name, spec.keys);
+            created.add(spec.collection + "." + spec.name);
+        }
+
+        CFBTLogger.logInfo(LOGGER, IndexRegistry.class.getCanonicalName(),
+                "Reconciled " + indexes.size() + " indexes, created " + created);
+        return created;
+    }
+
+    /**
+     * Explain each registered query shape.
+     *
+     * @param c The {@link MongoConnection}
+     * @return The names of the query shapes whose winning plan scans the whole collection.
+     */
+    public List<String> explain(MongoConnection c) {
+        MongoDatabase db = c.getDB();
+        List<String> collectionScans = new ArrayList<>();
+
+        for (QueryShape shape : queryShapes) {
+            Document find = new Document("find", shape.collection).append("filter", shape.filter);
+            if (shape.sort != null) {
+                find.append("sort", shape.sort);
+            }
+            try {
+                Document explain = db.runCommand(new Document("explain", find).append("verbosity", "queryPlanner"));
+                Document queryPlanner = explain.get("queryPlanner", Document.class);
+                Document winningPlan = queryPlanner == null ? null : queryPlanner.get("winningPlan", Document.class);
+                if (hasStage(winningPlan, "COLLSCAN")) {
+                    collectionScans.add(shape.name);
+                    CFBTLogger.logWarn(LOGGER, IndexRegistry.class.getCanonicalName(), "Query " + shape.name
+                            + " scans the " + shape.collection + " collection: " + winningPlan.toJson());
+                }
+            } catch (Exception e) {
+                CFBTLogger.logError(LOGGER, IndexRegistry.class.getCanonicalName(), "Unable to explain " + shape.name, e);
+            }
+        }
+
+        CFBTLogger.logInfo(LOGGER, IndexRegistry.class.getCanonicalName(), "Explained " + queryShapes.size()
+                + " query shapes, collection scans " + collectionScans);
+        return collectionScans;
+    }
+
+    private static boolean hasStage(Document plan, String stage) {
+        if (plan == null) {
+            return false;
+        }
+        if (stage.equals(plan.getString("stage"))) {
+            return true;
+        }
+        if (hasStage(plan.get("inputStage", Document.class), stage)) {
+            return true;
+        }
+        Object inputStages = plan.get("inputStages");
+        if (inputStages instanceof List) {
+            for (Object input : (List<?>) inputStages) {
+                if (input instanceof Document && hasStage((Document) input, stage)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void index(String collection, Document keys, String name, boolean unique) {
+        indexes.add(new IndexSpec(collection, keys, name, unique, null));
+    }
+
+    private void expiring(String collection, String field, long expireAfterSeconds) {
+        indexes.add(new IndexSpec(collection, new Document(field, ASCENDING), field + "_1", false, expireAfterSeconds));
+    }
+
+    private void shape(String collection, String name, Document filter, Document sort) {
+        queryShapes.add(new QueryShape(collection, name, filter, sort));
+    }
+}
@@ -13,6 +13,7 @@ import java.util.Map;
 import org.bson.Document;
 
 import com.paypal.sre.cfbt.dataaccess.AbstractDAO;
+import com.paypal.sre.cfbt.management.cluster.ClusterView;
 import com.paypal.sre.cfbt.management.cluster.NodeRegistrationData;
 import com.paypal.sre.cfbt.mongo.MongoConnection;
 import com.paypal.sre.cfbt.mongo.MongoConnectionFactory;
@@ -109,6 +110,8 @@ public class NodeDetailsDAO extends AbstractDAO<NodeRegistrationData> {
 
             Document findQuery = new Document("ip", ipAddress);
             super.findAndModify(mongoConnection, findQuery, update);
+        } finally {
+            ClusterView.getInstance().invalidate();
         }
     }
 }
@@ -3,16 +3,21 @@
  */
 package com.paypal.sre.cfbt.management.dal;
 
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
 
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mongodb.client.model.Projections;
 import com.mongodb.client.result.UpdateResult;
 import com.paypal.sre.cfbt.data.execapi.CompleteRequest;
 import com.paypal.sre.cfbt.data.execapi.ExecutionRequest;
@@ -73,6 +78,7 @@ public class ReleaseTestDAO extends AbstractDAO<ExecutionRequest> {
         Document filter = new Document("_id", new ObjectId(newReleaseTest.getId()));  
         
         super.update(c, filter, new Document("$set", update), false);
+        ExecutionRequestCache.getInstance().invalidate(newReleaseTest.getId());
         
         ExecutionRequest request = super.readOne(c, filter);
         
@@ -114,6 +120,23 @@ public class ReleaseTestDAO extends AbstractDAO<ExecutionRequest> {
     public List<ReleaseTest> readByTestingCompleteCallbackStatus(MongoConnection c,
             ReleaseTest.CallStatus callbackStatus) throws Exception {
 
+        List<ExecutionRequest> list = super.read(c, callbackStatusFilter(callbackStatus));
+
+        if (list.size() > 0) {
+            List<ReleaseTest> releaseTests = new ArrayList<>();
+            for (ExecutionRequest eachRequest : list) {
+                releaseTests.add(constructReleaseTest(eachRequest));
+            }
+            return releaseTests;
+        }
+
+        return null;
+    }
+
+    /**
+     * Filter of the release tests in the given callback status which started or completed in the last 30 minutes.
+     */
+    private static Document callbackStatusFilter(ReleaseTest.CallStatus callbackStatus) {
         List<Document> filters = new ArrayList<>();
         filters.add(new Document("releaseTest.testingCompleteCallbackStatus", callbackStatus.toString()));
 
@@ -132,17 +155,208 @@ public class ReleaseTestDAO extends AbstractDAO<ExecutionRequest> {
 
         filters.add(new Document("releaseTest.testingCompleteCallbackURL", new Document("$ne", null)));
 
-        List<ExecutionRequest> list = super.read(c, new Document("$and", filters));
+        return new Document("$and", filters);
+    }
 
-        if (list.size() > 0) {
-            List<ReleaseTest> releaseTests = new ArrayList<>();
-            for (ExecutionRequest eachRequest : list) {
-                releaseTests.add(constructReleaseTest(eachRequest));
+    /**
+     * Read one page of the release test listing, sorted by position then request time.
+     *
+     * The listing holds the release requests in one of the statuses and, optionally, the release tests still
+     * waiting to make their testing complete callback. The page is either the {@code pageNum} page, skipped to by
+     * mongo, or the page following the {@code cursor} returned with a previous page, whichever it is only its rows
+     * are read. Pages are cut from the requests, a request which can't be made into a release test leaves its page
+     * short rather than shifting the following pages. Deep pages still cost mongo the skip, clients walking the whole
+     * listing should follow the cursor.
+     *
+     * @param c a {@link MongoConnection}
+     * @param statusList The statuses of the listed requests.
+     * @param includePendingTestCompleteCallback true, to include the release tests pending their callback.
+     * @param projection The fields to read, null for the whole request.
+     * @param pageNum The page number, starting at 1, ignored when there's a cursor.
+     * @param size The page size.
+     * @param cursor The cursor of the previous page, null for none, see {@link #isValidCursor(String)}.
+     * @return The {@link ListingPage}
+     * @throws Exception
+     */
+    public ListingPage readListing(MongoConnection c, List<String> statusList, boolean includePendingTestCompleteCallback,
+            Bson projection, int pageNum, int size, String cursor) throws Exception {
+        Document listingFilter = new Document("$and", Arrays.asList(
+                new Document("type", ExecutionRequest.Type.RELEASE.toString()),
+                new Document("status", new Document("$in", statusList))));
+        if (includePendingTestCompleteCallback) {
+            listingFilter = new Document("$or", Arrays.asList(listingFilter, callbackStatusFilter(ReleaseTest.CallStatus.NOT_COMPLETE)));
+        }
+
+        int total = 0;
+        Document count = super.aggregate(c, Arrays.asList(new Document("$match", listingFilter), new Document("$count", "total"))).first();
+        if (count != null) {
+            total = ((Number) count.get("total")).intValue();
+        }
+
+        Document sort = new Document("position", 1).append("requestTime", 1).append("_id", 1);
+        List<ExecutionRequest> requests;
+        int skip = 0;
+        if (cursor != null) {
+            Document afterCursor = ListingCursor.decode(cursor).afterFilter();
+            requests = super.read(c, new Document("$and", Arrays.asList(listingFilter, afterCursor)), projection, sort, size);
+        } else {
+            // Mongo skips the rows before the page on the ids alone, only the page is read and built.
+            skip = (pageNum - 1) * size;
+            List<Object> pageIds = new ArrayList<>();
+            for (Document row : c.getDB().getCollection("ExecutionRequest").find(listingFilter).sort(sort)
+                    .skip(skip).limit(size).projection(Projections.include("_id"))) {
+                pageIds.add(row.get("_id"));
+            }
+            requests = pageIds.isEmpty() ? new ArrayList<>()
+                    : super.read(c, new Document("_id", new Document("$in", pageIds)), projection, sort, size);
+        }
+
+        String nextCursor = null;
+        if (requests.size() == size) {
+            nextCursor = ListingCursor.of(requests.get(requests.size() - 1)).encode();
+        }
+
+        List<ReleaseTest> releaseTests = new ArrayList<>();
+        for (ExecutionRequest request : requests) {
+            ReleaseTest releaseTest = constructReleaseTest(request);
+            if (releaseTest != null) {
+                releaseTests.add(releaseTest);
             }
+        }
+        if (requests.size() < size) {
+            total = skip + releaseTests.size();
+        }
+        return new ListingPage(releaseTests, skip, total, nextCursor);
+    }
+
+    /**
+     * @param cursor A cursor returned with a page of the listing.
+     * @return true, when the cursor can be read.
+     */
+    public static boolean isValidCursor(String cursor) {
+        try {
+            ListingCursor.decode(cursor);
+            return true;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * One page of the release test listing.
+     */
+    public static class ListingPage {
+        private final List<ReleaseTest> releaseTests;
+        private final int pageStart;
+        private final int total;
+        private final String nextCursor;
+
+        ListingPage(List<ReleaseTest> releaseTests, int pageStart, int total, String nextCursor) {
+            this.releaseTests = releaseTests;
+            this.pageStart = pageStart;
+            this.total = total;
+            this.nextCursor = nextCursor;
+        }
+
+        /**
+         * @return The listing up to the end of the page, from its start or from the cursor, for a {@code Page} to cut
+         * the page out of. The rows before the page aren't read, they're null.
+         */
+        public List<ReleaseTest> getListing() {
+            return new AbstractList<ReleaseTest>() {
+                @Override
+                public ReleaseTest get(int index) {
+                    return index < pageStart ? null : releaseTests.get(index - pageStart);
+                }
+
+                @Override
+                public int size() {
+                    return pageStart + releaseTests.size();
+                }
+            };
+        }
+
+        /**
+         * @return The release tests of the page.
+         */
+        public List<ReleaseTest> getReleaseTests() {
             return releaseTests;
         }
 
-        return null;
+        public int getTotal() {
+            return total;
+        }
+
+        /**
+         * @return The cursor of the next page, null on the last page.
+         */
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+
+    /**
+     * Opaque position of the last row of a page, in the (position, requestTime, _id) listing order.
+     */
+    static class ListingCursor {
+        private final int position;
+        private final String requestTime;
+        private final String id;
+
+        ListingCursor(int position, String requestTime, String id) {
+            this.position = position;
+            this.requestTime = requestTime;
+            this.id = id;
+        }
+
+        static ListingCursor of(ExecutionRequest request) {
+            return new ListingCursor(request.getPosition(), request.getRequestTime(), request.getId());
+        }
+
+        static ListingCursor decode(String cursor) {
+            try {
+                // position|id, with |requestTime when the request has one.
+                String[] fields = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 3);
+                if (fields.length < 2 || !ObjectId.isValid(fields[1])) {
+                    throw new IllegalArgumentException("Invalid cursor: " + cursor);
+                }
+                return new ListingCursor(Integer.parseInt(fields[0]), fields.length == 3 ? fields[2] : null, fields[1]);
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor, ex);
+            }
+        }
+
+        String encode() {
+            String value = position + "|" + id + (requestTime == null ? "" : "|" + requestTime);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        int getPosition() {
+            return position;
+        }
+
+        String getRequestTime() {
+            return requestTime;
+        }
+
+        String getId() {
+            return id;
+        }
+
+        /**
+         * Requests without a request time sort before those with one.
+         *
+         * @return The filter of the rows sorted after this cursor.
+         */
+        Document afterFilter() {
+            Document afterId = new Document("position", position).append("requestTime", requestTime)
+                    .append("_id", new Document("$gt", new ObjectId(id)));
+            Document afterRequestTime = requestTime == null
+                    ? new Document("position", position).append("requestTime", new Document("$ne", null))
+                    : new Document("position", position).append("requestTime", new Document("$gt", requestTime));
+            return new Document("$or", Arrays.asList(
+                    new Document("position", new Document("$gt", position)), afterRequestTime, afterId));
+        }
     }
     
     /**
@@ -189,6 +403,7 @@ public class ReleaseTestDAO extends AbstractDAO<ExecutionRequest> {
         UpdateResult result = super.update(c, filter,
                 new Document("$set", new Document("releaseTest.override", MongoDataMarshaller.encode(overrideDetails))),
                 false);
+        ExecutionRequestCache.getInstance().invalidate(id);
 
         CFBTLogger.logInfo(mLogger, ReleaseTestDAO.class.getCanonicalName(),
                 "Override details update for " + result.getMatchedCount() + " records.");
@@ -219,6 +434,7 @@ public class ReleaseTestDAO extends AbstractDAO<ExecutionRequest> {
         update.append("completionTime", completionTime);
         
         UpdateResult result = super.update(c, filter, new Document("$set", update), false);
+        ExecutionRequestCache.getInstance().invalidate(requestId);
  
         CFBTLogger.logInfo(mLogger, ReleaseTestDAO.class.getCanonicalName(), "Complete update for " + result.getMatchedCount() + " records.");
         return constructReleaseTest(super.readOne(c, filter));
@@ -256,10 +472,13 @@ public class ReleaseTestDAO extends AbstractDAO<ExecutionRequest> {
         }
         update.append("completionTime", completionTime);
 
-        UpdateResult result = super.update(db.newConnection(), filter, new Document("$set", update), false);
+        try (ConnectionScope scope = ConnectionScope.open(db)) {
+            UpdateResult result = super.update(scope.connection(), filter, new Document("$set", update), false);
+            ExecutionRequestCache.getInstance().invalidate(releaseTest.getId());
 
-        CFBTLogger.logInfo(mLogger, ReleaseTestDAO.class.getCanonicalName(), "Complete update for " + result.getMatchedCount() + " records.");
-        return constructReleaseTest(super.readOne(db.newConnection(), filter));
+            CFBTLogger.logInfo(mLogger, ReleaseTestDAO.class.getCanonicalName(), "Complete update for " + result.getMatchedCount() + " records.");
+            return constructReleaseTest(super.readOne(scope.connection(), filter));
+        }
     }
 
     /**
@@ -271,6 +490,7 @@ public class ReleaseTestDAO extends AbstractDAO<ExecutionRequest> {
     public ReleaseTest markDeploymentStart(MongoConnection c, ReleaseTest releaseTest) {
         super.update(c, releaseTest.getId(), 
                 new Document("$set", new Document("releaseTest.deploymentStart", releaseTest.getDeploymentStart())));
+        ExecutionRequestCache.getInstance().invalidate(releaseTest.getId());
 
         return constructReleaseTest(super.readOne(c, releaseTest.getId()));
     }
@@ -286,6 +506,7 @@ public class ReleaseTestDAO extends AbstractDAO<ExecutionRequest> {
             Document updateReleaseTest = new Document("releaseTest.rollbackStart", releaseTest.getRollbackStart());
             updateReleaseTest.append("releaseTest.deploymentEstimatedDuration", releaseTest.getDeploymentEstimatedDuration());
             super.update(c, releaseTest.getId(), new Document("$set", updateReleaseTest));
+            ExecutionRequestCache.getInstance().invalidate(releaseTest.getId());
             return constructReleaseTest(super.readOne(c, releaseTest.getId()));
         }
     }
@@ -305,6 +526,7 @@ public class ReleaseTestDAO extends AbstractDAO<ExecutionRequest> {
 
         try (MongoConnection c = db.newConnection()) {
             super.update(c, id, new Document("$set", deploymentStatus));
+            ExecutionRequestCache.getInstance().invalidate(id);
         }
     }
 }
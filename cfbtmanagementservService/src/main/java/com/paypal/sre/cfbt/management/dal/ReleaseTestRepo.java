@@ -64,9 +64,12 @@ public class ReleaseTestRepo {
 
         if (releaseTest != null) {
             int updatedDeploymentEstimatedDuration = releaseTest.getDeploymentEstimatedDuration() + extendTimeInSeconds;
-            releaseTestDAO.update(dB.newConnection(), new Document("_id", new ObjectId(id)), new Document("$set",
-                    new Document("releaseTest.deploymentEstimatedDuration", updatedDeploymentEstimatedDuration)),
-                    false);
+            try (ConnectionScope scope = ConnectionScope.open(dB)) {
+                releaseTestDAO.update(scope.connection(), new Document("_id", new ObjectId(id)), new Document("$set",
+                        new Document("releaseTest.deploymentEstimatedDuration", updatedDeploymentEstimatedDuration)),
+                        false);
+            }
+            ExecutionRequestCache.getInstance().invalidate(id);
             releaseTest.setDeploymentEstimatedDuration(updatedDeploymentEstimatedDuration);
         }
 
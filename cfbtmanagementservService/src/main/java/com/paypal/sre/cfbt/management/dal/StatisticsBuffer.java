@@ -0,0 +1,207 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management.dal;
+
+import com.paypal.sre.cfbt.data.execapi.ExecutionRequest;
+import com.paypal.sre.cfbt.execution.request.statemachine.Transitions;
+import com.paypal.sre.cfbt.management.rest.impl.ConfigManager;
+import com.paypal.sre.cfbt.management.rest.impl.RequestThreadHandler;
+import com.paypal.sre.cfbt.mongo.MongoConnectionFactory;
+import com.paypal.sre.cfbt.shared.CFBTLogger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write combining buffer for the {@link ExecutionRequestDAO.Statistics} counter increments.
+ *
+ * The deltas are merged per request, the result counters and completedTests included, and written as a single
+ * {@code $inc} once "statisticsFlushMaxDeltas" deltas are pending for the request, or at the latest after
+ * "statisticsFlushWindowInMillis". A flush which writes completed tests then makes the TESTING_COMPLETE transition and
+ * fires COMPLETE_TESTS, the callers of {@link #add} don't see their completions until then. Pending deltas are flushed
+ * on shutdown, those of a process which dies are lost.
+ *
+ * Deltas whose write failed are kept for the next flush.
+ */
+public class StatisticsBuffer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatisticsBuffer.class);
+    private static final StatisticsBuffer INSTANCE = new StatisticsBuffer();
+
+    private final Map<String, Pending> pending = new HashMap<>();
+    private ScheduledExecutorService flusher = null;
+    private long flushes = 0;
+    private long deltas = 0;
+
+    private static class Pending {
+        private final MongoConnectionFactory db;
+        private final Document incDocument = new Document();
+        private long completedTests = 0;
+        private int deltas = 0;
+
+        Pending(MongoConnectionFactory db) {
+            this.db = db;
+        }
+
+        void merge(Document increments, long completed, int count) {
+            for (Map.Entry<String, Object> increment : increments.entrySet()) {
+                long current = incDocument.containsKey(increment.getKey()) ? ((Number) incDocument.get(increment.getKey())).longValue() : 0;
+                incDocument.put(increment.getKey(), current + ((Number) increment.getValue()).longValue());
+            }
+            completedTests += completed;
+            deltas += count;
+        }
+    }
+
+    private StatisticsBuffer() {
+    }
+
+    public static StatisticsBuffer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return true, when the statistics updates are buffered.
+     */
+    public static boolean isEnabled() {
+        return ConfigManager.getConfiguration().getBoolean("statisticsBufferEnabled", false);
+    }
+
+    /**
+     * Buffer counter increments for a request.
+     *
+     * @param db             The {@link MongoConnectionFactory}
+     * @param id             The request id.
+     * @param incDocument    The counter increments.
+     * @param completedTests The number of completed tests in the increments.
+     * @throws Exception When the request is flushed right away and the update fails.
+     */
+    public void add(MongoConnectionFactory db, String id, Document incDocument, long completedTests) throws Exception {
+        Pending ready = null;
+
+        synchronized (this) {
+            Pending requestPending = pending.computeIfAbsent(id, (key) -> new Pending(db));
+            requestPending.merge(incDocument, completedTests, 1);
+            deltas++;
+
+            if (requestPending.deltas >= ConfigManager.getConfiguration().getInt("statisticsFlushMaxDeltas", 50)) {
+                ready = pending.remove(id);
+            } else {
+                startFlusher();
+            }
+        }
+
+        if (ready != null) {
+            flush(id, ready);
+        }
+    }
+
+    /**
+     * @return The number of deltas buffered since the start.
+     */
+    public synchronized long getDeltas() {
+        return deltas;
+    }
+
+    /**
+     * @return The number of writes the buffered deltas were combined into since the start.
+     */
+    public synchronized long getWrites() {
+        return flushes;
+    }
+
+    /**
+     * Write the pending increments of a request.
+     *
+     * @param id The request id.
+     * @throws Exception On error updating the request.
+     */
+    public void flush(String id) throws Exception {
+        Pending requestPending;
+        synchronized (this) {
+            requestPending = pending.remove(id);
+        }
+        if (requestPending != null) {
+            flush(id, requestPending);
+        }
+    }
+
+    /**
+     * Write the pending increments of every request.
+     */
+    public void flushAll() {
+        Map<String, Pending> all;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            all = new HashMap<>(pending);
+            pending.clear();
+        }
+
+        for (Map.Entry<String, Pending> requestPending : all.entrySet()) {
+            try {
+                flush(requestPending.getKey(), requestPending.getValue());
+            } catch (Exception ex) {
+                CFBTLogger.logError(LOGGER, StatisticsBuffer.class.getCanonicalName(),
+                        "Error flushing the statistics of request " + requestPending.getKey(), ex);
+            }
+        }
+    }
+
+    private void flush(String id, Pending requestPending) throws Exception {
+        try {
+            ExecutionRequestDAO.Statistics.write(requestPending.db, id, requestPending.incDocument, requestPending.completedTests);
+        } catch (Exception ex) {
+            // Keep the increments for the next flush, dropping them would leave the request incomplete forever.
+            synchronized (this) {
+                pending.computeIfAbsent(id, (key) -> new Pending(requestPending.db))
+                        .merge(requestPending.incDocument, requestPending.completedTests, requestPending.deltas);
+                startFlusher();
+            }
+            throw ex;
+        }
+
+        long flushCount;
+        long deltaCount;
+        synchronized (this) {
+            flushCount = ++flushes;
+            deltaCount = deltas;
+        }
+        if (flushCount % 1000 == 0) {
+            CFBTLogger.logInfo(LOGGER, StatisticsBuffer.class.getCanonicalName(),
+                    "Combined " + deltaCount + " statistics updates into " + flushCount + " writes");
+        }
+
+        if (requestPending.completedTests > 0) {
+            completeTesting(requestPending.db, id);
+        }
+    }
+
+    private void completeTesting(MongoConnectionFactory db, String id) throws Exception {
+        if (!new ExecutionRequestRepository().markTestingComplete(db, Arrays.asList(id))) {
+            return;
+        }
+        ExecutionRequest request = ExecutionRequestDAO.getInstance(db).getById(id, true);
+        if (request != null && ExecutionRequest.Status.TESTING_COMPLETE.equals(request.getStatus())) {
+            // Update the release recommendation and final status.
+            new RequestThreadHandler(ConfigManager.getDatabaseConfig(), request.getQueueName())
+                    .triggerEvent(request, Transitions.Message.COMPLETE_TESTS);
+        }
+    }
+
+    private void startFlusher() {
+        if (flusher == null) {
+            int window = ConfigManager.getConfiguration().getInt("statisticsFlushWindowInMillis", 100);
+            flusher = Executors.newSingleThreadScheduledExecutor();
+            flusher.scheduleWithFixedDelay(this::flushAll, window, window, TimeUnit.MILLISECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(this::flushAll));
+        }
+    }
+}
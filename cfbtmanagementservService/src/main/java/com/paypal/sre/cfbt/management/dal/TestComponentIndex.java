@@ -0,0 +1,203 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management.dal;
+
+import com.paypal.sre.cfbt.data.execapi.Test;
+import com.paypal.sre.cfbt.data.test.Component;
+import com.paypal.sre.cfbt.management.rest.impl.ConfigManager;
+import com.paypal.sre.cfbt.mongo.MongoConnectionFactory;
+import com.paypal.sre.cfbt.shared.CFBTLogger;
+import com.rits.cloning.Cloner;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In memory inverted index of the installed and configured tests by component name.
+ *
+ * The index is an immutable snapshot of {@link TestRepository#getTests(MongoConnectionFactory)}, rebuilt when it is older than the
+ * "componentIndexRefreshInSeconds" configuration or after {@link #invalidate()}. The tests written by this service
+ * are invalidated as they are written, with {@link #invalidate(String)} for a single test, and reloaded on the next
+ * lookup. Tests are also installed and updated by other services, the refresh interval bounds how stale the index is
+ * for those.
+ */
+public class TestComponentIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TestComponentIndex.class);
+    private static final TestComponentIndex INSTANCE = new TestComponentIndex();
+    private static final String ALL_DATACENTERS = "";
+
+    private volatile Snapshot snapshot = null;
+    private final Set<String> staleTestIds = ConcurrentHashMap.newKeySet();
+
+    private static class Snapshot {
+        private final long buildTime;
+        private final Map<String, Test> testsById;
+        private final Map<String, Set<String>> testIdsByComponent;
+        private final Map<String, List<Component>> coveredComponentsByDatacenter = new ConcurrentHashMap<>();
+
+        Snapshot(List<Test> tests) {
+            this(System.currentTimeMillis(), tests);
+        }
+
+        Snapshot(long buildTime, Collection<Test> tests) {
+            this.buildTime = buildTime;
+            testsById = new LinkedHashMap<>();
+            testIdsByComponent = new HashMap<>();
+            for (Test test : tests) {
+                testsById.put(test.getId(), test);
+                if (test.getComponents() == null) {
+                    continue;
+                }
+                for (Component component : test.getComponents()) {
+                    testIdsByComponent.computeIfAbsent(component.getName(), (name) -> new HashSet<>()).add(test.getId());
+                }
+            }
+        }
+    }
+
+    private TestComponentIndex() {
+    }
+
+    public static TestComponentIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Drop the current snapshot, the next lookup rebuilds it.
+     */
+    public void invalidate() {
+        snapshot = null;
+    }
+
+    /**
+     * Reload a test on the next lookup, after it is written.
+     *
+     * @param testId The id of the test.
+     */
+    public void invalidate(String testId) {
+        staleTestIds.add(testId);
+    }
+
+    /**
+     * Return the enabled tests of the datacenter covering any of the components.
+     *
+     * @param db         The {@link MongoConnectionFactory}
+     * @param components The lower case component names.
+     * @param datacenter The datacenter name.
+     * @return Copies of the matching {@link Test}, in the order of the collection.
+     * @throws Exception On error loading the tests.
+     */
+    public List<Test> searchTests(MongoConnectionFactory db, Collection<String> components, String datacenter) throws Exception {
+        Snapshot current = getSnapshot(db);
+        Set<String> testIds = new HashSet<>();
+        for (String component : components) {
+            testIds.addAll(current.testIdsByComponent.getOrDefault(component, Collections.emptySet()));
+        }
+
+        Cloner cloner = new Cloner();
+        List<Test> tests = new ArrayList<>();
+        for (Test test : current.testsById.values()) {
+            if (testIds.contains(test.getId()) && test.getEnabled() && !test.getNeedToBeConfigured()
+                    && test.isEnabledForDatacenter(datacenter)) {
+                tests.add(cloner.deepClone(test));
+            }
+        }
+        return tests;
+    }
+
+    /**
+     * Return the distinct components covered by the enabled, release vetting tests of the datacenter.
+     *
+     * @param db         The {@link MongoConnectionFactory}
+     * @param datacenter The datacenter name, blank for every datacenter.
+     * @return The covered {@link Component} sorted by name.
+     * @throws Exception On error loading the tests.
+     */
+    public List<Component> getCoveredComponents(MongoConnectionFactory db, String datacenter) throws Exception {
+        Snapshot current = getSnapshot(db);
+        String key = StringUtils.isBlank(datacenter) ? ALL_DATACENTERS : datacenter;
+
+        return current.coveredComponentsByDatacenter.computeIfAbsent(key, (dc) -> {
+            Comparator<Component> comp = (Component o1, Component o2) -> o1.getName().compareTo(o2.getName());
+            TreeSet<Component> componentDistinct = new TreeSet<>(comp);
+            for (Test test : current.testsById.values()) {
+                boolean covered = test.getEnabled() && test.getUseForReleaseVetting() && !test.getNeedToBeConfigured();
+                if (covered && !ALL_DATACENTERS.equals(dc)) {
+                    covered = test.isEnabledForDatacenter(dc) && test.isReleaseVettingForDatacenter(dc);
+                }
+                if (covered && test.getComponents() != null) {
+                    componentDistinct.addAll(test.getComponents());
+                }
+            }
+            return Collections.unmodifiableList(new ArrayList<>(componentDistinct));
+        });
+    }
+
+    private Snapshot getSnapshot(MongoConnectionFactory db) throws Exception {
+        Snapshot current = snapshot;
+        long maxAge = TimeUnit.SECONDS.toMillis(ConfigManager.getConfiguration().getInt("componentIndexRefreshInSeconds", 60));
+        if (current != null && System.currentTimeMillis() - current.buildTime < maxAge && staleTestIds.isEmpty()) {
+            return current;
+        }
+
+        synchronized (this) {
+            current = snapshot;
+            if (current != null && System.currentTimeMillis() - current.buildTime < maxAge) {
+                return staleTestIds.isEmpty() ? current : reload(db, current);
+            }
+            long start = System.currentTimeMillis();
+            staleTestIds.clear();
+            List<Test> tests = new TestRepository().getTests(db);
+            current = new Snapshot(tests);
+            snapshot = current;
+            CFBTLogger.logInfo(LOGGER, TestComponentIndex.class.getCanonicalName(), "Indexed " + tests.size()
+                    + " tests over " + current.testIdsByComponent.size() + " components in "
+                    + (System.currentTimeMillis() - start) + " ms");
+            return current;
+        }
+    }
+
+    /**
+     * Replace the stale tests of the snapshot, tests no longer installed or configured are dropped. The snapshot
+     * keeps its build time, the tests written by the other services are still reloaded at the refresh interval.
+     */
+    private Snapshot reload(MongoConnectionFactory db, Snapshot current) throws Exception {
+        Set<String> testIds = new HashSet<>(staleTestIds);
+        staleTestIds.removeAll(testIds);
+        Map<String, Test> reloaded = new HashMap<>();
+        try {
+            for (Test test : new TestRepository().getTests(db, testIds)) {
+                reloaded.put(test.getId(), test);
+            }
+        } catch (Exception ex) {
+            staleTestIds.addAll(testIds);
+            throw ex;
+        }
+
+        Map<String, Test> tests = new LinkedHashMap<>(current.testsById);
+        for (String testId : testIds) {
+            if (reloaded.containsKey(testId)) {
+                tests.put(testId, reloaded.get(testId));
+            } else {
+                tests.remove(testId);
+            }
+        }
+        Snapshot updated = new Snapshot(current.buildTime, tests.values());
+        snapshot = updated;
+        return updated;
+    }
+}
@@ -6,7 +6,11 @@ package com.paypal.sre.cfbt.management.dal;
 import com.mongodb.client.model.Projections;
 import com.paypal.sre.cfbt.data.execapi.ExecutionRequest;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.bson.Document;
 import com.paypal.sre.cfbt.data.execapi.Test;
 import com.paypal.sre.cfbt.data.test.Component;
@@ -20,7 +24,6 @@ import java.util.Comparator;
 import java.util.TreeSet;
 import org.bson.conversions.Bson;
 
-import org.bson.types.ObjectId;
 import org.codehaus.plexus.util.StringUtils;
 
 /**
@@ -58,24 +61,56 @@ public class TestDAO extends AbstractDAO<Test> {
      * @throws Exception 
      */
     public List<Test> loadEnabledConfiguredTests(List<String> testIds, String datacenter) throws Exception {
-        List<Document> orFilter = new ArrayList<>();
-        List<Document> enabledAndConfiguredFilter = new ArrayList<>();
+        try (MongoConnection c = db.newConnection()) {
+            return readByIds(c, testIds, enabledAndConfiguredFilter(datacenter), null);
+        }
+    }
 
-        testIds.forEach((id) -> {
-            orFilter.add(new Document("_id", new ObjectId(id)));
-        });
+    /**
+     * Load the enabled and configured tests of several datacenters, with one batched query per datacenter.
+     *
+     * @param testIdsByDatacenter The test ids to load, grouped by datacenter.
+     * @return The {@link Test} loaded for each datacenter, keyed by test id in the order of the supplied ids.
+     * @throws Exception
+     */
+    public Map<String, Map<String, Test>> loadEnabledConfiguredTests(Map<String, ? extends Collection<String>> testIdsByDatacenter) throws Exception {
+        Map<String, Map<String, Test>> testsByDatacenter = new HashMap<>();
+
+        try (MongoConnection c = db.newConnection()) {
+            for (Map.Entry<String, ? extends Collection<String>> group : testIdsByDatacenter.entrySet()) {
+                Map<String, Test> tests = new LinkedHashMap<>();
+                for (Test test : readByIds(c, group.getValue(), enabledAndConfiguredFilter(group.getKey()), null)) {
+                    tests.put(test.getId(), test);
+                }
+                testsByDatacenter.put(group.getKey(), tests);
+            }
+        }
+        return testsByDatacenter;
+    }
+
+    private static Document enabledAndConfiguredFilter(String datacenter) {
+        List<Document> enabledAndConfiguredFilter = new ArrayList<>();
 
         enabledAndConfiguredFilter.add(new Document("enabled", true));
         enabledAndConfiguredFilter.add(new Document("needToBeConfigured", false));
         enabledAndConfiguredFilter.add(new Document("testConfigurations." + datacenter + ".enabled", true));
-        enabledAndConfiguredFilter.add(new Document("$or", orFilter));
 
-        List<Test> tests = new ArrayList<>();    
-        try (MongoConnection c = db.newConnection()) {
-            tests.addAll(super.read(c, new Document("$and", enabledAndConfiguredFilter)));
-        }
-        
-        return tests;
+        return new Document("$and", enabledAndConfiguredFilter);
+    }
+
+    /**
+     * Read the tests with the given ids using batched {@code $in} queries, see {@link BatchedIdLookup}.
+     *
+     * @param c a valid MongoConnection object.
+     * @param testIds The test ids.
+     * @param filter Additional conditions, null for none.
+     * @param projection The fields to read, null for the whole test.
+     * @return The tests found, in the order of {@code testIds}.
+     * @throws Exception Exceptions thrown by Mongo.
+     */
+    public List<Test> readByIds(MongoConnection c, Collection<String> testIds, Document filter, Bson projection) throws Exception {
+        return BatchedIdLookup.read(testIds, filter, projection,
+                (query, fields) -> super.read(c, query, fields, null, null), Test::getId);
     }
 
     public void insert(Test test) throws Exception {
@@ -83,6 +118,7 @@ public class TestDAO extends AbstractDAO<Test> {
             String id = super.insert(c, test);
             test.setId(id);
         }
+        TestComponentIndex.getInstance().invalidate();
     }
     
     /**
@@ -157,16 +193,9 @@ public class TestDAO extends AbstractDAO<Test> {
             throw new IllegalArgumentException("The supplied list of test id's is null");
         }
 
-        List<Test> testList = new ArrayList<>();
-
         try (MongoConnection c = db.newConnection()) {
-            for (String id : testIds) {
-                Test thisTest = super.readOne(c, id);
-                testList.add(thisTest);
-            }
+            return readByIds(c, testIds, null, null);
         }
-
-        return testList;
     }
     
     /**
@@ -213,19 +242,18 @@ public class TestDAO extends AbstractDAO<Test> {
     public void loadTests(ExecutionRequest request) throws Exception {
           // We want to return the full test even if the test Id is the only this stored.
         if (request.getTests() != null) {
-            List<Test> loadedTests = new ArrayList<>();
-            List<Document> idArray = new ArrayList<>();
+            List<String> testIds = new ArrayList<>();
 
             for (Test thisTest : request.getTests()) {
                 if (StringUtils.isNotBlank(thisTest.getId())) {
-                    idArray.add(new Document("_id",new ObjectId(thisTest.getId())));
-
+                    testIds.add(thisTest.getId());
                 }
             }
 
-            if (!idArray.isEmpty()) {
+            if (!testIds.isEmpty()) {
+                List<Test> loadedTests;
                 try (MongoConnection c = db.newConnection()) {
-                    loadedTests.addAll(super.read(c, new Document("$or", idArray)));
+                    loadedTests = readByIds(c, testIds, null, null);
                 }
 
                 request.setTests(loadedTests);
@@ -234,7 +262,8 @@ public class TestDAO extends AbstractDAO<Test> {
     }
 
     /**
-     * Retrieve components covered by the CFBT tests.
+     * Retrieve components covered by the CFBT tests. The covered components are served from the
+     * {@link TestComponentIndex}.
      *
      * @param covered
      * @param dataCenter
@@ -242,21 +271,13 @@ public class TestDAO extends AbstractDAO<Test> {
      * @throws Exception
      */
     public List<Component> getCoveredComponents(boolean covered, String dataCenter) throws Exception {
+        if (covered) {
+            return new ArrayList<>(TestComponentIndex.getInstance().getCoveredComponents(db, dataCenter));
+        }
         List<Component> components = new ArrayList<>();
         try (MongoConnection c = db.newConnection()) {
-            Document queryDoc = null;
-            if (covered) {
-                queryDoc = new Document("enabled", true);
-                queryDoc.append("useForReleaseVetting", true);
-                if(!org.apache.commons.lang3.StringUtils.isBlank(dataCenter)) {
-                    queryDoc.append("testConfigurations."+ dataCenter+".enabled", true);
-                    queryDoc.append("testConfigurations."+ dataCenter+".releaseVetting", true);
-                }
-                queryDoc.append("needToBeConfigured", false);
-                queryDoc.append("installed", true);
-            }
             Bson projection = Projections.include("components");
-            List<Test> testsListData = read(c, queryDoc, projection, null, null);
+            List<Test> testsListData = read(c, null, projection, null, null);
             Comparator<Component> comp = (Component o1, Component o2) -> o1.getName().compareTo(o2.getName());
             TreeSet<Component> componentDistinct = new TreeSet<>(comp);
             for (Test test : testsListData) {
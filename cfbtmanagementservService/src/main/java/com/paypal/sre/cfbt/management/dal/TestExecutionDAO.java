@@ -4,6 +4,7 @@
 
 package com.paypal.sre.cfbt.management.dal;
 
+import com.mongodb.client.model.Projections;
 import com.mongodb.client.result.UpdateResult;
 import com.paypal.sre.cfbt.data.execapi.Execution;
 import com.paypal.sre.cfbt.dataaccess.AbstractDAO;
@@ -13,7 +14,10 @@ import com.paypal.sre.cfbt.mongo.MongoConnectionFactory;
 import com.paypal.sre.cfbt.shared.NetworkUtil;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import org.bson.Document;
 
 /**
@@ -121,9 +125,9 @@ public class TestExecutionDAO extends AbstractDAO<Execution> {
         andInProgressList.add(new Document("executionRequestIds", new Document("$elemMatch", new Document("$in", searchIds))));
         andInProgressList.add(new Document("status", Execution.Status.IN_PROGRESS.name()));
         
-        try (MongoConnection c = db.newConnection()) {
-            return super.read(c, new Document("$and", andInProgressList));
-        }        
+        try (ConnectionScope scope = ConnectionScope.open(db)) {
+            return super.read(scope.connection(), new Document("$and", andInProgressList));
+        }
     }
 
     /**
@@ -180,4 +184,38 @@ public class TestExecutionDAO extends AbstractDAO<Execution> {
         Document query = new Document("$elemMatch", new Document("$in", requestIds));
         return super.read(c, new Document("executionRequestIds", query));
     }
+
+    /**
+     * Get the Executions of the given tests which are associated with given request ids.
+     *
+     * @param c a {@code MongoConnection} object.
+     * @param requestIds The list of request ids
+     * @param testIds The list of test ids
+     * @return The list of {@link Execution}
+     */
+    public List<Execution> getExecutionsByRequestIdsAndTestIds(MongoConnection c, List<String> requestIds, List<String> testIds) throws Exception {
+        Document query = new Document("executionRequestIds", new Document("$elemMatch", new Document("$in", requestIds)));
+        query.append("testId", new Document("$in", testIds));
+        return super.read(c, query);
+    }
+
+    /**
+     * Get the ids of the given executions which are still in one of the given statuses.
+     *
+     * @param c a {@code MongoConnection} object.
+     * @param executionIds The list of execution ids
+     * @param statuses The list of {@link Execution.Status}
+     * @return The set of matching execution ids
+     */
+    public Set<String> getExecutionIdsInStatus(MongoConnection c, Collection<String> executionIds, List<Execution.Status> statuses) throws Exception {
+        List<String> statusList = new ArrayList<>();
+        statuses.forEach((status) -> statusList.add(status.toString()));
+
+        Set<String> matching = new HashSet<>();
+        for (Execution execution : BatchedIdLookup.read(executionIds, new Document("status", new Document("$in", statusList)),
+                Projections.include("_id"), (query, fields) -> super.read(c, query, fields, null, null), Execution::getId)) {
+            matching.add(execution.getId());
+        }
+        return matching;
+    }
 }
@@ -5,9 +5,12 @@ import java.io.InputStream;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -17,6 +20,7 @@ import com.paypal.sre.cfbt.request.User;
 import com.paypal.sre.cfbt.shared.CFBTLogger;
 import org.apache.commons.lang3.StringUtils;
 import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.joda.time.DateTime;
 import com.mongodb.BasicDBObject;
 import com.mongodb.client.AggregateIterable;
@@ -38,6 +42,7 @@ import org.slf4j.LoggerFactory;
 
 public class TestRepository {
     private static final Logger logger = LoggerFactory.getLogger(TestRepository.class);
+    private static final int BACKFILL_DAYS = 30;
     /**
      * Correct the selected browser if it's set incorrectly.
      * @param aDB a {@link MongoConnectionFactory}
@@ -132,26 +137,193 @@ public class TestRepository {
 
                 updateFields.put("testStatistics", MongoDataMarshaller.encode(stats));
                 if (!Execution.Status.IN_PROGRESS.equals(result.getStatus())) { //do not calc realtime stats for In Progress
+                    TestStatisticsBucketDAO bucketDAO = TestStatisticsBucketDAO.getInstance();
+                    if (!bucketDAO.hasBuckets(c, aTest.getId())) {
+                        rebuildStatistics(aDB, c, aTest.getId(), result.getId(), BACKFILL_DAYS);
+                    }
+                    // Executions are bucketed by the status they completed with, the corrections are overlaid on the rollup.
+                    // Executions without execution time are not bucketed, they are counted in every window.
+                    if (result.getExecutionTime() != null && result.getId() != null) {
+                        bucketDAO.record(c, aTest.getId(), TestStatisticsBucketDAO.day(DateUtil.dateTimeUTC(result.getExecutionTime())),
+                                result.getId(), result.getStatus(), result.getDurationTime());
+                    }
+
                     //add statistics for any executions within 7 days prior to this execution
-                    TestStatistics stats7 = this.getStatisticsForTest(aDB, aTest.getId(), 1,
-                            result.getStatus(), result.getDurationTime(), stats.getLastRunTime());
+                    TestStatistics stats7 = rollupStatistics(aDB, c, aTest.getId(), 1);
                     aTest.setTestStatistics7(stats7);
                     updateFields.put("testStatistics7", MongoDataMarshaller.encode(stats7));
                     //add statistics for any executions within 30 days prior to this execution
-                    TestStatistics stats30 = this.getStatisticsForTest(aDB, aTest.getId(), 3,
-                            result.getStatus(), result.getDurationTime(), stats.getLastRunTime());
+                    TestStatistics stats30 = rollupStatistics(aDB, c, aTest.getId(), 3);
                     aTest.setTestStatistics30(stats30);
                     updateFields.put("testStatistics30", MongoDataMarshaller.encode(stats30));
                 }
                 updateFields.put("time_updated", DateUtil.currentDateTimeISOFormat());
                 updateSpec.put("$set", updateFields);
                 TestDAO.getInstance(aDB).update(c, test.getId(), updateSpec);
+                TestComponentIndex.getInstance().invalidate(test.getId());
             }
         }
 
         return aTest;
     }
     
+    /**
+     * Roll up the statistics of a test over a window of days from its buckets, with the executions kept out of the
+     * buckets: the executions in progress in the window and the executions without execution time, which the
+     * aggregation the buckets replace counted as well. The buckets count the executions by the status they completed
+     * with, the executions of the window since corrected to a false positive or negative are moved to those counters.
+     *
+     * @param db     The {@link MongoConnectionFactory}
+     * @param c      The {@link MongoConnection}
+     * @param testId The id of the test.
+     * @param days   The number of days before today included in the window.
+     * @return The {@link TestStatistics} over the window.
+     * @throws Exception On error accessing Mongo.
+     */
+    private TestStatistics rollupStatistics(MongoConnectionFactory db, MongoConnection c, String testId, int days) throws Exception {
+        Document matchBy = new Document("testId", testId).append("$or", Arrays.asList(
+                new Document("status", Execution.Status.IN_PROGRESS.toString())
+                        .append("executionTime", new Document("$gte", TestStatisticsBucketDAO.windowStart(days))),
+                new Document("status", new Document("$in", Arrays.asList("PASS", "FAIL", "ERROR", "IN_PROGRESS")))
+                        .append("executionTime", new Document("$exists", false))));
+        Document unbucketed = aggregateBuckets(db, c, matchBy, new Document("$literal", ""), true).get("");
+        TestStatistics stats = TestStatisticsBucketDAO.getInstance().rollup(c, testId, days, unbucketed);
+
+        Document correctedBy = new Document("testId", testId).append("correctStatus", false)
+                .append("executionTime", new Document("$gte", TestStatisticsBucketDAO.windowStart(days)))
+                .append("status", new Document("$in", Arrays.asList("PASS", "FAIL")));
+        Document groupBy = new Document("_id", "$status").append("total", new Document("$sum", 1));
+        for (Document group : TestExecutionDAO.getInstance(db).aggregate(c,
+                Arrays.asList(new Document("$match", correctedBy), new Document("$group", groupBy)))) {
+            int total = group.getInteger("total");
+            if ("PASS".equals(group.getString("_id"))) {
+                stats.setNumberSuccesses(stats.getNumberSuccesses() - total);
+                stats.setNumberFalsePositives(stats.getNumberFalsePositives() + total);
+            } else {
+                stats.setNumberFailures(stats.getNumberFailures() - total);
+                stats.setNumberFalseNegatives(stats.getNumberFalseNegatives() + total);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Rebuild the daily statistics buckets of a test from its execution history. Used to backfill the buckets of
+     * tests which executed before the buckets existed; only the missing buckets are created, so the buckets of a
+     * concurrent backfill or recording are never overwritten. Like the recordings, the rebuilt buckets count the
+     * executions by their status alone, the corrections are overlaid when rolling up.
+     *
+     * @param db             The {@link MongoConnectionFactory}
+     * @param c              The {@link MongoConnection}
+     * @param testId         The id of the test.
+     * @param excludedExecutionId An execution left out of the rebuild, typically the one about to be recorded.
+     * @param days           The number of days of history to rebuild.
+     * @throws Exception On error accessing Mongo.
+     */
+    public void rebuildStatistics(MongoConnectionFactory db, MongoConnection c, String testId, String excludedExecutionId, int days) throws Exception {
+        final List<String> statuses = Arrays.asList("PASS", "FAIL", "ERROR");
+        String from = DateUtil.currentDateTimeUTC().minusDays(days).toString().replaceAll(".000", "");
+
+        Document matchBy = new Document("testId", testId)
+                .append("status", new Document("$in", statuses))
+                .append("executionTime", new Document("$gte", from));
+        if (excludedExecutionId != null) {
+            matchBy.append("_id", new Document("$ne", new ObjectId(excludedExecutionId)));
+        }
+        Map<String, Document> buckets = aggregateBuckets(db, c, matchBy,
+                new Document("$substr", Arrays.asList("$executionTime", 0, 10)), false);
+
+        TestStatisticsBucketDAO bucketDAO = TestStatisticsBucketDAO.getInstance();
+        int created = 0;
+        for (Map.Entry<String, Document> bucket : buckets.entrySet()) {
+            @SuppressWarnings("unchecked")
+            List<String> executionIds = (List<String>) bucket.getValue().remove("executionIds");
+            if (bucketDAO.insertIfAbsent(c, testId, bucket.getKey(), bucket.getValue(), executionIds)) {
+                created++;
+            }
+        }
+        CFBTLogger.logInfo(logger, TestRepository.class.getCanonicalName(),
+                "Rebuilt " + created + " of " + buckets.size() + " daily statistics buckets for test " + testId);
+    }
+
+    /**
+     * Aggregate executions into bucket values.
+     *
+     * @param db      The {@link MongoConnectionFactory}
+     * @param c       The {@link MongoConnection}
+     * @param matchBy The executions to aggregate.
+     * @param day     The expression of the bucket of an execution.
+     * @param corrected true, to count the false positives and negatives, false to count the executions by status.
+     * @return The bucket values by bucket, with the ids of their executions; the extremes are left out of the buckets
+     *         without timed execution.
+     * @throws Exception On error accessing Mongo.
+     */
+    private Map<String, Document> aggregateBuckets(MongoConnectionFactory db, MongoConnection c, Document matchBy,
+            Document day, boolean corrected) throws Exception {
+        Document groupBy = new Document("_id", new Document("day", day)
+                .append("status", "$status").append("correctStatus", "$correctStatus"))
+                .append("total", new Document("$sum", 1))
+                .append("timed", new Document("$sum", new Document("$cond", Arrays.asList(
+                        new Document("$gt", Arrays.asList("$durationTime", null)), 1, 0))))
+                .append("totalTime", new Document("$sum", "$durationTime"))
+                .append("min", new Document("$min", "$durationTime"))
+                .append("max", new Document("$max", "$durationTime"))
+                .append("ids", new Document("$push", "$_id"));
+
+        Map<String, Document> buckets = new HashMap<>();
+        for (Document group : TestExecutionDAO.getInstance(db).aggregate(c,
+                Arrays.asList(new Document("$match", matchBy), new Document("$group", groupBy)))) {
+            Document key = group.get("_id", Document.class);
+            Document bucket = buckets.computeIfAbsent(key.getString("day"), (bucketDay) -> new Document()
+                    .append("numberExecutions", 0).append("totalExecutionTime", 0L)
+                    .append("numberSuccesses", 0).append("numberFailures", 0).append("numberFalsePositives", 0)
+                    .append("numberFalseNegatives", 0).append("numberErrors", 0)
+                    .append("executionIds", new ArrayList<String>()));
+
+            int total = group.getInteger("total");
+            boolean correct = !corrected || !Boolean.FALSE.equals(key.getBoolean("correctStatus"));
+            String counter = null;
+            switch (key.getString("status")) {
+            case "PASS":
+                counter = correct ? "numberSuccesses" : "numberFalsePositives";
+                break;
+            case "FAIL":
+                counter = correct ? "numberFailures" : "numberFalseNegatives";
+                break;
+            case "ERROR":
+                counter = "numberErrors";
+                break;
+            default:
+                break;
+            }
+            if (counter != null) {
+                bucket.put(counter, bucket.getInteger(counter) + total);
+            }
+
+            bucket.put("numberExecutions", bucket.getInteger("numberExecutions") + group.getInteger("timed"));
+            bucket.put("totalExecutionTime", bucket.getLong("totalExecutionTime") + ((Number) group.get("totalTime")).longValue());
+            // A null extreme would stop the $min and $max of the later recordings, so it is left out.
+            Integer min = group.getInteger("min");
+            Integer max = group.getInteger("max");
+            if (min != null && (bucket.getInteger("minExecutionTime") == null || min < bucket.getInteger("minExecutionTime"))) {
+                bucket.put("minExecutionTime", min);
+            }
+            if (max != null && (bucket.getInteger("maxExecutionTime") == null || max > bucket.getInteger("maxExecutionTime"))) {
+                bucket.put("maxExecutionTime", max);
+            }
+            @SuppressWarnings("unchecked")
+            List<String> executionIds = (List<String>) bucket.get("executionIds");
+            for (Object id : group.get("ids", List.class)) {
+                executionIds.add(id.toString());
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * Compute the statistics of a test by aggregating its execution history. The statistics are now maintained
+     * incrementally by {@link TestStatisticsBucketDAO}, this remains available to verify or repair them.
+     */
     public TestStatistics getStatisticsForTest(MongoConnectionFactory db, String testId, Integer days,
             Execution.Status lastStatus, Integer lastDuration, String lastRunTime) throws Exception {
         TestStatistics returnStats = new TestStatistics();
@@ -193,40 +365,45 @@ public class TestRepository {
 
         TestExecutionDAO testExecutionDAO = TestExecutionDAO.getInstance(db);
 
-        output = testExecutionDAO.aggregate(db.newConnection(),
-                Arrays.asList(new Document("$match", matchBy), new Document("$group", groupStatusBy)));
-
-        // first tally the fail/pass/error statistics for previous executions.
-        for (Document dbObject : output) {
-            Document theStatDoc = dbObject.get("_id", Document.class);
-            boolean isItCorrect = theStatDoc.getBoolean("correctStatus");
-            int theValue = dbObject.getInteger("total");
-            switch (theStatDoc.getString("status")) {
-            case "FAIL":
-                if (isItCorrect) {
-                    returnStats.setNumberFailures(theValue);
-                } else {
-                    returnStats.setNumberFalseNegatives(theValue);
-                }
-                break;
-            case "PASS":
-                if (isItCorrect) {
-                    returnStats.setNumberSuccesses(theValue);
-                } else {
-                    returnStats.setNumberFalsePositives(theValue);
+        Document theStatDoc;
+
+        try (MongoConnection c = db.newConnection()) {
+            output = testExecutionDAO.aggregate(c,
+                    Arrays.asList(new Document("$match", matchBy), new Document("$group", groupStatusBy)));
+
+            // first tally the fail/pass/error statistics for previous executions.
+            for (Document dbObject : output) {
+                Document statusDoc = dbObject.get("_id", Document.class);
+                boolean isItCorrect = statusDoc.getBoolean("correctStatus");
+                int theValue = dbObject.getInteger("total");
+                switch (statusDoc.getString("status")) {
+                case "FAIL":
+                    if (isItCorrect) {
+                        returnStats.setNumberFailures(theValue);
+                    } else {
+                        returnStats.setNumberFalseNegatives(theValue);
+                    }
+                    break;
+                case "PASS":
+                    if (isItCorrect) {
+                        returnStats.setNumberSuccesses(theValue);
+                    } else {
+                        returnStats.setNumberFalsePositives(theValue);
+                    }
+                    break;
+                case "ERROR":
+                    returnStats.setNumberErrors(theValue);
+                    break;
+                default:
+                    break;
                 }
-                break;
-            case "ERROR":
-                returnStats.setNumberErrors(theValue);
-                break;
-            default:
-                break;
             }
+
+            output = testExecutionDAO.aggregate(c,
+                    Arrays.asList(new Document("$match", matchBy), new Document("$group", groupDurationBy)));
+            theStatDoc = output.first();
         }
 
-        output = testExecutionDAO.aggregate(db.newConnection(),
-                Arrays.asList(new Document("$match", matchBy), new Document("$group", groupDurationBy)));
-        Document theStatDoc = output.first();
         // if we have stats returned from aggregate, and we have a duration passed in for
         // current execution, collect min/max/average/count stats for existing executions
         if (theStatDoc != null && lastDuration != null) {
@@ -270,6 +447,18 @@ public class TestRepository {
      *             If it has trouble connecting with Mongo.
      */
     public List<Test> getTests(MongoConnectionFactory aDB) throws UnknownHostException, Exception {
+        return getTests(aDB, null);
+    }
+
+    /**
+     * Same as {@link #getTests(MongoConnectionFactory)} for some of the tests.
+     *
+     * @param aDB     The {@link MongoConnectionFactory}
+     * @param testIds The ids of the tests, null for all of them.
+     * @return the list of installed and configured {@link Test} among them.
+     * @throws Exception If it has trouble reading Mongo.
+     */
+    public List<Test> getTests(MongoConnectionFactory aDB, Collection<String> testIds) throws Exception {
 
         List<Test> results;
 
@@ -277,7 +466,8 @@ public class TestRepository {
             Document queryDoc = new Document("installed", true);
             queryDoc.append("needToBeConfigured", false);
 
-            results = TestDAO.getInstance(aDB).read(c, queryDoc, null, null);
+            results = testIds == null ? TestDAO.getInstance(aDB).read(c, queryDoc, null, null)
+                    : TestDAO.getInstance(aDB).readByIds(c, testIds, queryDoc, null);
             int defaultExecutionTime = ConfigManager.getConfiguration().getInt("maxTestExecutionTimeInMinutes", 6) * 60;
             for (Test aTest : results) {
                 if (aTest.getMaxExecutionTime() == 0) {
@@ -292,7 +482,8 @@ public class TestRepository {
     }
 
     /**
-     * Return all tests that are affected by a list of components
+     * Return all tests that are affected by a list of components, served from the {@link TestComponentIndex}. The
+     * tests written outside of this service may be up to "componentIndexRefreshInSeconds" stale.
      *
      * @param aDB
      *            a {@code MongoConnectionFactory}
@@ -307,35 +498,21 @@ public class TestRepository {
             String datacenter)
             throws Exception {
 
-        List<Test> allTests = getTests(aDB); // we only want configured tests
-        List<Test> outTests = new ArrayList<>();
-
         if (components == null) {
             throw new IllegalArgumentException("compnents is null");
         }
 
-        Boolean compFound;
-        for (Test aTest : allTests) {
-            boolean dcSpecificEnabled = aTest.isEnabledForDatacenter(datacenter);
-
-            if (aTest.getEnabled() && !aTest.getNeedToBeConfigured() && dcSpecificEnabled) {
-                compFound = false;
-                for (Component component : components.getComponents()) {
-                    component.setName(component.getName().toLowerCase());
-                    List<String> compNames = new ArrayList<>();
-                    for (Component aComp : aTest.getComponents()) {
-                        compNames.add(aComp.getName());
-                    }
-                    if (compNames.contains(component.getName())) {
-                        compFound = true;
-                    }
-                }
-                if (compFound) {
-                    outTests.add(aTest);
-                }
-            }
+        Set<String> componentNames = new HashSet<>();
+        for (Component component : components.getComponents()) {
+            component.setName(component.getName().toLowerCase());
+            componentNames.add(component.getName());
         }
 
+        long start = System.currentTimeMillis();
+        List<Test> outTests = TestComponentIndex.getInstance().searchTests(aDB, componentNames, datacenter);
+        CFBTLogger.logInfo(logger, "searchTest", "Found " + outTests.size() + " tests for " + componentNames.size()
+                + " components in " + (System.currentTimeMillis() - start) + " ms");
+
         return outTests;
     }
 
@@ -461,6 +638,7 @@ public class TestRepository {
                     createActivitiesForNewTestConfig(mDB, test.getId(), test.getEnabled(), test.getUseForReleaseVetting(),dataCenterToBeUpdated);
                 }
             }
+            TestComponentIndex.getInstance().invalidate();
             CFBTLogger.logInfo(logger, "updateTestConfigurations", "Successfully updated the data centers in the test configurations." );
         }catch(Exception e){
             CFBTLogger.logError(CFBTLogger.CalEventEnum.UPDATE_DATACENTERS, "CFBT API: Error while updating data centers in the test configurations.", e);
@@ -520,7 +698,10 @@ public class TestRepository {
             activity.setGroups(groups);
             activity.setId(null);
             ActivityDAO activityDAO = ActivityDAO.getInstance();
-            Activity activityOut = activityDAO.createActivity(mDB.newConnection(),activity);
+            Activity activityOut;
+            try (ConnectionScope scope = ConnectionScope.open(mDB)) {
+                activityOut = activityDAO.createActivity(scope.connection(), activity);
+            }
             if(activityOut != null){
                 CFBTLogger.logInfo(logger, "updateTestConfigDCActivities", "Successfully updated the activities for testId :"+ testId );
             }
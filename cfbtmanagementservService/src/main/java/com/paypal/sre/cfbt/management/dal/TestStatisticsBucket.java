@@ -0,0 +1,52 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management.dal;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The execution statistics of a test for a single day, maintained incrementally as the executions complete. The
+ * executions are counted by the status they completed with, later corrections are not applied to the bucket.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class TestStatisticsBucket {
+    @JsonProperty("testId")
+    private String testId;
+
+    /** The day, formatted as yyyy-MM-dd in UTC. */
+    @JsonProperty("day")
+    private String day;
+
+    @JsonProperty("numberExecutions")
+    private int numberExecutions;
+
+    @JsonProperty("totalExecutionTime")
+    private long totalExecutionTime;
+
+    @JsonProperty("minExecutionTime")
+    private int minExecutionTime;
+
+    @JsonProperty("maxExecutionTime")
+    private int maxExecutionTime;
+
+    @JsonProperty("numberSuccesses")
+    private int numberSuccesses;
+
+    @JsonProperty("numberFailures")
+    private int numberFailures;
+
+    @JsonProperty("numberErrors")
+    private int numberErrors;
+
+    public String getTestId() { return testId; }
+    public String getDay() { return day; }
+    public int getNumberExecutions() { return numberExecutions; }
+    public long getTotalExecutionTime() { return totalExecutionTime; }
+    public int getMinExecutionTime() { return minExecutionTime; }
+    public int getMaxExecutionTime() { return maxExecutionTime; }
+    public int getNumberSuccesses() { return numberSuccesses; }
+    public int getNumberFailures() { return numberFailures; }
+    public int getNumberErrors() { return numberErrors; }
+}
@@ -0,0 +1,307 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management.dal;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.result.UpdateResult;
+import com.paypal.sre.cfbt.data.execapi.Execution;
+import com.paypal.sre.cfbt.data.test.TestStatistics;
+import com.paypal.sre.cfbt.dataaccess.AbstractDAO;
+import com.paypal.sre.cfbt.mongo.MongoConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.bson.Document;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+/**
+ * This class is the singleton concrete implementation of the AbstractDAO class that handles
+ * {@link TestStatisticsBucket} data operations in the MongoDB "TestStatisticsBucket" collection.
+ *
+ * Every completed execution is folded into the bucket of its test and day with a single atomic upsert, windowed
+ * statistics are then rolled up from at most one bucket per day instead of aggregating the execution history. The
+ * buckets only hold the completed executions with an execution time, counted by the status they completed with: the
+ * false positives and negatives are corrected afterwards and are overlaid on the rollup by {@link TestRepository}.
+ */
+public class TestStatisticsBucketDAO extends AbstractDAO<TestStatisticsBucket> {
+
+    private static final String COLLECTION = "TestStatisticsBucket";
+    static final String MARKERS = "TestStatisticsBucketExecution";
+    static final long MARKER_EXPIRY_SECONDS = TimeUnit.DAYS.toSeconds(2);
+    private static final TestStatisticsBucketDAO mInstance = new TestStatisticsBucketDAO(COLLECTION);
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormat.forPattern("yyyy-MM-dd").withZoneUTC();
+
+    /**
+     * Constructor of singleton instance for this object.
+     *
+     * @param aCollectionName the name of the collection
+     */
+    public TestStatisticsBucketDAO(String aCollectionName) {
+        super(aCollectionName, TestStatisticsBucket.class);
+    }
+
+    /**
+     * Accessor for singleton instance of this object.
+     *
+     * @return the instance.
+     */
+    public static TestStatisticsBucketDAO getInstance() {
+        return mInstance;
+    }
+
+    /**
+     * @param dateTime The date.
+     * @return The day of the bucket holding the statistics for this date.
+     */
+    public static String day(DateTime dateTime) {
+        return DAY_FORMAT.print(dateTime.withZone(DateTimeZone.UTC));
+    }
+
+    /**
+     * Fold a completed execution into the bucket of its test and day. The execution is marked as recorded first, an
+     * execution recorded again, e.g. on a retry, finds its marker and is not counted twice.
+     *
+     * @param c           The {@link MongoConnection}
+     * @param testId      The id of the test.
+     * @param day         The day of the execution.
+     * @param executionId The id of the execution.
+     * @param status      The final {@link Execution.Status}
+     * @param duration    The duration of the execution in seconds, may be null.
+     */
+    public void record(MongoConnection c, String testId, String day, String executionId, Execution.Status status,
+            Integer duration) throws Exception {
+        Document inc = new Document();
+        Document update = new Document();
+
+        switch (status) {
+        case PASS:
+            inc.append("numberSuccesses", 1);
+            break;
+        case FAIL:
+            inc.append("numberFailures", 1);
+            break;
+        case ERROR:
+            inc.append("numberErrors", 1);
+            break;
+        default:
+            break;
+        }
+
+        if (duration != null && (Execution.Status.PASS.equals(status) || Execution.Status.FAIL.equals(status)
+                || Execution.Status.ERROR.equals(status))) {
+            inc.append("numberExecutions", 1).append("totalExecutionTime", (long) duration);
+            update.append("$min", new Document("minExecutionTime", duration));
+            update.append("$max", new Document("maxExecutionTime", duration));
+        }
+
+        if (inc.isEmpty() || !mark(c, Arrays.asList(executionId), testId, day).contains(executionId)) {
+            return;
+        }
+        update.append("$inc", inc);
+        Document filter = new Document("testId", testId).append("day", day);
+
+        // The upsert fails on the unique (testId, day) index when another execution created the bucket in the meantime.
+        MongoCollection<Document> buckets = c.getDB().getCollection(COLLECTION);
+        try {
+            buckets.updateOne(filter, update, new UpdateOptions().upsert(true));
+        } catch (MongoWriteException ex) {
+            if (!ErrorCategory.DUPLICATE_KEY.equals(ex.getError().getCategory())) {
+                throw ex;
+            }
+            buckets.updateOne(filter, update);
+        }
+    }
+
+    /**
+     * Create the bucket of a test and day, used to backfill the buckets from the execution history. The executions
+     * are marked as recorded first, so a later recording of one of them is not counted again. A bucket which already
+     * exists, written by a concurrent backfill or recording, is left as is.
+     *
+     * @param c            The {@link MongoConnection}
+     * @param testId       The id of the test.
+     * @param day          The day.
+     * @param values       The complete bucket values.
+     * @param executionIds The ids of the executions the values hold.
+     * @return true, when the bucket was created.
+     */
+    public boolean insertIfAbsent(MongoConnection c, String testId, String day, Document values,
+            List<String> executionIds) throws Exception {
+        mark(c, executionIds, testId, day);
+        try {
+            UpdateResult result = c.getDB().getCollection(COLLECTION).updateOne(new Document("testId", testId).append("day", day),
+                    new Document("$setOnInsert", values), new UpdateOptions().upsert(true));
+            return result.getUpsertedId() != null;
+        } catch (MongoWriteException ex) {
+            if (!ErrorCategory.DUPLICATE_KEY.equals(ex.getError().getCategory())) {
+                throw ex;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Mark executions as recorded, one marker per execution keyed by its id. The markers expire after
+     * {@link #MARKER_EXPIRY_SECONDS}, long after an execution could be recorded again.
+     *
+     * @param c            The {@link MongoConnection}
+     * @param executionIds The ids of the executions.
+     * @param testId       The id of their test.
+     * @param day          The day of their bucket.
+     * @return The ids of the executions marked by this call, the others were already recorded.
+     */
+    private static Set<String> mark(MongoConnection c, List<String> executionIds, String testId, String day) {
+        Set<String> marked = new HashSet<>(executionIds);
+        if (executionIds.isEmpty()) {
+            return marked;
+        }
+        Date recorded = new Date();
+        List<Document> markers = new ArrayList<>();
+        for (String executionId : executionIds) {
+            markers.add(new Document("_id", executionId).append("testId", testId).append("day", day)
+                    .append("recorded", recorded));
+        }
+        try {
+            c.getDB().getCollection(MARKERS).insertMany(markers, new InsertManyOptions().ordered(false));
+        } catch (MongoBulkWriteException ex) {
+            for (BulkWriteError error : ex.getWriteErrors()) {
+                if (!ErrorCategory.DUPLICATE_KEY.equals(ErrorCategory.fromErrorCode(error.getCode()))) {
+                    throw ex;
+                }
+                marked.remove(executionIds.get(error.getIndex()));
+            }
+        }
+        return marked;
+    }
+
+    /**
+     * @param c      The {@link MongoConnection}
+     * @param testId The id of the test.
+     * @return True if at least one bucket exists for the test.
+     */
+    public boolean hasBuckets(MongoConnection c, String testId) throws Exception {
+        return !super.read(c, new Document("testId", testId), Projections.include("_id"), null, 1).isEmpty();
+    }
+
+    /**
+     * @param days The number of days before today included in a window.
+     * @return The first day of the window.
+     */
+    public static String windowStart(int days) {
+        return day(DateTime.now(DateTimeZone.UTC).minusDays(days));
+    }
+
+    /**
+     * Roll up the buckets of a test over a window of days ending today. The buckets are whole UTC days, the window
+     * holds today and the previous {@code days} days, i.e. between {@code days} and {@code days + 1} days of history.
+     *
+     * @param c      The {@link MongoConnection}
+     * @param testId The id of the test.
+     * @param days   The number of days before today included in the window.
+     * @param extra  Statistics of executions kept out of the buckets, with the fields of a bucket, may be null.
+     * @return The {@link TestStatistics} over the window.
+     */
+    public TestStatistics rollup(MongoConnection c, String testId, int days, Document extra) throws Exception {
+        TestStatistics stats = new TestStatistics();
+        stats.setAverageExecutionTime((Double) 0.0);
+        stats.setMinExecutionTime(0);
+        stats.setMaxExecutionTime(0);
+        stats.setNumberExecutions(0);
+        stats.setNumberSuccesses(0);
+        stats.setNumberFailures(0);
+        stats.setNumberFalseNegatives(0);
+        stats.setNumberFalsePositives(0);
+        stats.setNumberErrors(0);
+
+        Document match = new Document("testId", testId)
+                .append("day", new Document("$gte", windowStart(days)));
+        Document group = new Document("_id", null)
+                .append("numberExecutions", new Document("$sum", "$numberExecutions"))
+                .append("totalExecutionTime", new Document("$sum", "$totalExecutionTime"))
+                .append("minExecutionTime", new Document("$min", "$minExecutionTime"))
+                .append("maxExecutionTime", new Document("$max", "$maxExecutionTime"))
+                .append("numberSuccesses", new Document("$sum", "$numberSuccesses"))
+                .append("numberFailures", new Document("$sum", "$numberFailures"))
+                .append("numberErrors", new Document("$sum", "$numberErrors"));
+
+        AggregateIterable<Document> output = super.aggregate(c,
+                Arrays.asList(new Document("$match", match), new Document("$group", group)));
+        Document rollup = merge(output.first(), extra);
+        if (rollup != null) {
+            int numberExecutions = intValue(rollup, "numberExecutions");
+            stats.setNumberExecutions(numberExecutions);
+            if (numberExecutions > 0) {
+                stats.setAverageExecutionTime(((Number) rollup.get("totalExecutionTime")).doubleValue() / numberExecutions);
+                stats.setMinExecutionTime(intValue(rollup, "minExecutionTime"));
+                stats.setMaxExecutionTime(intValue(rollup, "maxExecutionTime"));
+            }
+            stats.setNumberSuccesses(intValue(rollup, "numberSuccesses"));
+            stats.setNumberFailures(intValue(rollup, "numberFailures"));
+            stats.setNumberFalsePositives(intValue(rollup, "numberFalsePositives"));
+            stats.setNumberFalseNegatives(intValue(rollup, "numberFalseNegatives"));
+            stats.setNumberErrors(intValue(rollup, "numberErrors"));
+        }
+        return stats;
+    }
+
+    /**
+     * Add up two sets of bucket values, the extremes missing from one of them are taken from the other.
+     */
+    private static Document merge(Document values, Document other) {
+        if (values == null || other == null) {
+            return values == null ? other : values;
+        }
+        Document merged = new Document();
+        for (String counter : Arrays.asList("numberExecutions", "numberSuccesses", "numberFailures", "numberFalsePositives",
+                "numberFalseNegatives", "numberErrors")) {
+            merged.append(counter, intValue(values, counter) + intValue(other, counter));
+        }
+        merged.append("totalExecutionTime", longValue(values, "totalExecutionTime") + longValue(other, "totalExecutionTime"));
+        Integer min = extreme(values.get("minExecutionTime"), other.get("minExecutionTime"), true);
+        Integer max = extreme(values.get("maxExecutionTime"), other.get("maxExecutionTime"), false);
+        if (min != null) {
+            merged.append("minExecutionTime", min);
+        }
+        if (max != null) {
+            merged.append("maxExecutionTime", max);
+        }
+        return merged;
+    }
+
+    private static Integer extreme(Object value, Object other, boolean min) {
+        if (!(value instanceof Number)) {
+            return other instanceof Number ? ((Number) other).intValue() : null;
+        }
+        if (!(other instanceof Number)) {
+            return ((Number) value).intValue();
+        }
+        int a = ((Number) value).intValue();
+        int b = ((Number) other).intValue();
+        return min ? Math.min(a, b) : Math.max(a, b);
+    }
+
+    private static long longValue(Document document, String key) {
+        Object value = document.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    private static int intValue(Document document, String key) {
+        Object value = document.get(key);
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+}
@@ -159,7 +159,8 @@ public class ThreadStatistics {
         Map<String, List<ThreadStatistic>> aliveThreadStats = new HashMap<>();
 
         try (MongoConnection c = db.newConnection()) {
-             List<ThreadStatistic> threadStatistics = THREAD_STATISTICS_DAO.read(c, null);
+            // Only the threads which are not dead, the dead ones are purged by the ClusterView.
+            List<ThreadStatistic> threadStatistics = THREAD_STATISTICS_DAO.readSince(c, detectDeadTime());
            
             for (ThreadStatistic stat : threadStatistics) {
                 if (stat.heartBeatDate != null) {
@@ -4,9 +4,19 @@
 
 package com.paypal.sre.cfbt.management.dal;
 
+import com.mongodb.client.MongoCollection;
 import com.paypal.sre.cfbt.data.execapi.ExecutionRequest;
 import com.paypal.sre.cfbt.dataaccess.AbstractDAO;
 import com.paypal.sre.cfbt.management.dal.ThreadStatistics.ThreadStatistic;
+import com.paypal.sre.cfbt.mongo.MongoConnection;
+import com.paypal.sre.cfbt.shared.CFBTLogger;
+import com.paypal.sre.cfbt.shared.DateUtil;
+import java.util.ArrayList;
+import java.util.List;
+import org.bson.Document;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * This class is the singleton concrete implementation of the AbstractDAO
@@ -15,8 +25,17 @@ import com.paypal.sre.cfbt.management.dal.ThreadStatistics.ThreadStatistic;
  *
  */
 public class ThreadStatisticsDAO extends AbstractDAO<ThreadStatistic> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThreadStatisticsDAO.class);
+    private static final int PURGE_BATCH_SIZE = 500;
+    private static final String FORMAT_WARNING = "Heartbeats found out of the ISO UTC format, comparing them as times";
     
     private static final ThreadStatisticsDAO mInstance = new ThreadStatisticsDAO("ThreadStatistics");
+
+    /**
+     * Whether the last check found every heartbeat in the format of {@link DateUtil#dateTimeISOFormat}, zero padded
+     * UTC strings which sort as their time. Unknown until {@link #checkFormat} or the first {@link #deleteBefore}.
+     */
+    private volatile boolean canonicalHeartbeats = false;
     
     /**
      * Constructor of singleton instance for this object.
@@ -36,4 +55,121 @@ public class ThreadStatisticsDAO extends AbstractDAO<ThreadStatistic> {
         return mInstance;
     }
 
-}
+    /**
+     * Read the threads which had a heartbeat after the given time.
+     *
+     * The heartbeats are written by the executor nodes. While they're all known to be in the canonical format only
+     * the heartbeats which sort after the given time are read, otherwise every thread is read and the heartbeats are
+     * compared as times.
+     *
+     * @param c a {@link MongoConnection} object.
+     * @param since The time of the oldest heartbeat to read, excluded.
+     * @return The threads.
+     */
+    public List<ThreadStatistic> readSince(MongoConnection c, DateTime since) {
+        if (canonicalHeartbeats) {
+            List<ThreadStatistic> threads = super.read(c, new Document("heartBeatDate", new Document("$gt", DateUtil.dateTimeISOFormat(since))));
+            if (isCanonical(threads)) {
+                return threads;
+            }
+            canonicalHeartbeats = false;
+            CFBTLogger.logWarn(LOGGER, ThreadStatisticsDAO.class.getCanonicalName(), FORMAT_WARNING);
+        }
+
+        List<ThreadStatistic> threads = new ArrayList<>();
+        for (ThreadStatistic thread : super.read(c, new Document("heartBeatDate", new Document("$ne", null)))) {
+            DateTime heartBeatTime = heartBeatTime(thread.getHeartBeatDate());
+            if (heartBeatTime != null && heartBeatTime.isAfter(since)) {
+                threads.add(thread);
+            }
+        }
+        return threads;
+    }
+
+    /**
+     * Check the format of every heartbeat for {@link #readSince}, at startup. {@link #deleteBefore} checks it again
+     * on every purge.
+     *
+     * @param c a {@link MongoConnection} object.
+     * @return true, when every heartbeat is in the canonical format.
+     */
+    public boolean checkFormat(MongoConnection c) {
+        scan(c, null);
+        return canonicalHeartbeats;
+    }
+
+    /**
+     * Delete the threads which had no heartbeat since the given time, comparing the heartbeats as times, by batches
+     * of a few hundred. The heartbeats which can't be parsed are kept.
+     *
+     * Every heartbeat is read, which also checks their format for {@link #readSince}.
+     *
+     * @param c a {@link MongoConnection} object.
+     * @param before The time of the last heartbeat to keep.
+     * @return The number of deleted threads.
+     */
+    public long deleteBefore(MongoConnection c, DateTime before) {
+        return scan(c, before);
+    }
+
+    /**
+     * Read every heartbeat, record whether they're all canonical and delete the threads without heartbeat since the
+     * given time, if any.
+     */
+    private long scan(MongoConnection c, DateTime before) {
+        MongoCollection<Document> collection = c.getDB().getCollection("ThreadStatistics");
+        List<Document> expired = new ArrayList<>();
+        long deleted = 0;
+        boolean canonical = true;
+        for (Document thread : collection.find(new Document("heartBeatDate", new Document("$ne", null)))
+                .projection(new Document("heartBeatDate", 1))) {
+            Object heartBeatDate = thread.get("heartBeatDate");
+            DateTime heartBeatTime = heartBeatDate instanceof String ? heartBeatTime((String) heartBeatDate) : null;
+            if (heartBeatTime == null || !DateUtil.dateTimeISOFormat(heartBeatTime).equals(heartBeatDate)) {
+                canonical = false;
+            }
+            if (before != null && heartBeatTime != null && heartBeatTime.isBefore(before)) {
+                // Only while the heartbeat is unchanged, the thread may have come back since.
+                expired.add(new Document("_id", thread.get("_id")).append("heartBeatDate", heartBeatDate));
+                if (expired.size() == PURGE_BATCH_SIZE) {
+                    deleted += collection.deleteMany(new Document("$or", expired)).getDeletedCount();
+                    expired.clear();
+                }
+            }
+        }
+        if (!expired.isEmpty()) {
+            deleted += collection.deleteMany(new Document("$or", expired)).getDeletedCount();
+        }
+        if (!canonical) {
+            CFBTLogger.logWarn(LOGGER, ThreadStatisticsDAO.class.getCanonicalName(), FORMAT_WARNING);
+        }
+        canonicalHeartbeats = canonical;
+        return deleted;
+    }
+
+    private static boolean isCanonical(List<ThreadStatistic> threads) {
+        for (ThreadStatistic thread : threads) {
+            DateTime heartBeatTime = heartBeatTime(thread.getHeartBeatDate());
+            if (heartBeatTime == null || !DateUtil.dateTimeISOFormat(heartBeatTime).equals(thread.getHeartBeatDate())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param heartBeatDate The heartbeat of a thread.
+     * @return The time of the heartbeat, null when it can't be parsed.
+     */
+    private static DateTime heartBeatTime(String heartBeatDate) {
+        if (heartBeatDate == null) {
+            return null;
+        }
+        try {
+            return DateUtil.dateTimeUTC(heartBeatDate);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+}
\ No newline at end of file
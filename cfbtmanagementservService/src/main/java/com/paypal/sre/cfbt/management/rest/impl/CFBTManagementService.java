@@ -1,13 +1,16 @@
 package com.paypal.sre.cfbt.management.rest.impl;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import com.paypal.sre.cfbt.management.appproperty.ApplicationPropertiesInfo;
 import com.paypal.sre.cfbt.management.appproperty.ApplicationProperty;
 import com.paypal.sre.cfbt.management.appproperty.ApplicationPropertyJsonPatchProcessor;
@@ -15,6 +18,7 @@ import com.paypal.sre.cfbt.request.RequestHandler;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.lang.StringUtils;
+import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
@@ -55,6 +59,7 @@ import com.paypal.sre.cfbt.data.execapi.SystemStatusRequest;
 import com.paypal.sre.cfbt.data.execapi.SystemUnderTest;
 import com.paypal.sre.cfbt.data.execapi.Test;
 import com.paypal.sre.cfbt.data.notification.SlackNotification;
+import com.paypal.sre.cfbt.data.test.Attachment;
 import com.paypal.sre.cfbt.data.test.TestPackage;
 import com.paypal.sre.cfbt.dataaccess.FeatureDAO;
 import com.paypal.sre.cfbt.execution.request.statemachine.Transitions;
@@ -62,6 +67,9 @@ import com.paypal.sre.cfbt.execution.request.statemachine.Transitions.Message;
 import com.paypal.sre.cfbt.executor.Executor;
 import com.paypal.sre.cfbt.management.CFBTTestResourceClient;
 import com.paypal.sre.cfbt.management.cluster.ClusterInfo;
+import com.paypal.sre.cfbt.management.cluster.ClusterView;
+import com.paypal.sre.cfbt.management.dal.AttachmentDAO;
+import com.paypal.sre.cfbt.management.dal.ConnectionScope;
 import com.paypal.sre.cfbt.management.dal.DatabaseConfig;
 import com.paypal.sre.cfbt.management.dal.DatacenterConfigRepository;
 import com.paypal.sre.cfbt.management.dal.ExecutionRequestDAO;
@@ -71,6 +79,7 @@ import com.paypal.sre.cfbt.management.dal.OverrideDetailsRepo;
 import com.paypal.sre.cfbt.management.dal.ReleaseTestDAO;
 import com.paypal.sre.cfbt.management.dal.ReleaseTestRepo;
 import com.paypal.sre.cfbt.management.dal.SlackNotificationDAO;
+import com.paypal.sre.cfbt.management.dal.TestComponentIndex;
 import com.paypal.sre.cfbt.management.dal.TestDAO;
 import com.paypal.sre.cfbt.management.dal.TestRepository;
 import com.paypal.sre.cfbt.management.features.FeatureChange;
@@ -97,6 +106,8 @@ import javax.ws.rs.ForbiddenException;
 public class CFBTManagementService implements CFBTMANAGEMENTAPI {
 
     private static final Logger logger = LoggerFactory.getLogger(CFBTManagementService.class);
+    private static final String DETAIL_FULL = "full";
+    private static final String NEXT_CURSOR_HEADER = "X-CFBT-NEXT-CURSOR";
     private static MongoConnectionFactory dbConnectionFactory;
     private final Configuration config;
     private final DatabaseConfig dbConfig;
@@ -155,7 +166,7 @@ public class CFBTManagementService implements CFBTMANAGEMENTAPI {
             ExecutionRequestDAO requestDAO = ExecutionRequestDAO.getInstance(dbConnectionFactory);
             if (executionRequestDetails != null && !StringUtils.isBlank(executionRequestDetails.getExecutionRequestId())) {
                 CFBTLogger.logInfo(logger, CalEventEnum.EMERGENCY_STOP, "CFBT API: Emergency Stop = " + executionRequestDetails.getExecutionRequestId());
-                ExecutionRequest request = requestDAO.getById(executionRequestDetails.getExecutionRequestId());
+                ExecutionRequest request = requestDAO.getById(executionRequestDetails.getExecutionRequestId(), true);
 
                 if (request == null) {
                     throw new IllegalArgumentException("Request ID not found");
@@ -201,7 +212,7 @@ public class CFBTManagementService implements CFBTMANAGEMENTAPI {
             ExecutionRequestDAO requestDAO = ExecutionRequestDAO.getInstance(dbConnectionFactory);
             if (executionRequestDetails != null && !StringUtils.isBlank(executionRequestDetails.getExecutionRequestId())) {
                 CFBTLogger.logInfo(logger, CalEventEnum.ABORT_EXECUTION, "CFBT API: Execution Halt = " + executionRequestDetails.getExecutionRequestId());
-                ExecutionRequest request = requestDAO.getById(executionRequestDetails.getExecutionRequestId());
+                ExecutionRequest request = requestDAO.getById(executionRequestDetails.getExecutionRequestId(), true);
 
                 //Remove the request from Queue
                 Queue.triggerDequeueRequest(dbConfig, request);
@@ -266,6 +277,10 @@ public class CFBTManagementService implements CFBTMANAGEMENTAPI {
             // Notify to execserv nodes to perform the test package action
             executor.notifyPackageAction(userInfo, nodeIPAddress, packageAction, testPackage);
 
+            // The package may add, change or remove test parameters.
+            testresourceservClient.invalidateAllParameters();
+            TestComponentIndex.getInstance().invalidate();
+
         } catch (IllegalArgumentException ex) {
             CFBTExceptionUtil.throwBusinessException(CommonError.VALIDATION_ERROR, errorMessage + ex, ex);
         } catch (BusinessException ex) {
@@ -297,7 +312,7 @@ public class CFBTManagementService implements CFBTMANAGEMENTAPI {
             tests = stringIdsToTests(runRequest.getTestIds());
         } else if (runRequest.thisIsRerun()) {
             try {
-                ExecutionRequest prevRequest = ExecutionRequestDAO.getInstance(dbConnectionFactory).getById(runRequest.getExecutionRequestId());
+                ExecutionRequest prevRequest = ExecutionRequestDAO.getInstance(dbConnectionFactory).getById(runRequest.getExecutionRequestId(), true);
                 tests = prevRequest.getTests();
                 trReleaseId = prevRequest.getTrReleaseId();
                 systemUnderTest = new SystemUnderTest();
@@ -523,8 +538,8 @@ public class CFBTManagementService implements CFBTMANAGEMENTAPI {
         }
 
         Feature campOn = null;
-        try {
-            campOn = FeatureDAO.getInstance().readWithName(dbConnectionFactory.newConnection(), "CampOn");
+        try (ConnectionScope scope = ConnectionScope.open(dbConnectionFactory)) {
+            campOn = FeatureDAO.getInstance().readWithName(scope.connection(), "CampOn");
         } catch (Exception ex) {
             CFBTExceptionUtil.throwBusinessException(CommonError.INTERNAL_SERVICE_ERROR, "Unable to load features to check for camp on",
                     ex);
@@ -631,7 +646,7 @@ public class CFBTManagementService implements CFBTMANAGEMENTAPI {
         ReleaseTest updatedReleaseTest = null;
         try {
  
-            ExecutionRequest request = ExecutionRequestDAO.getInstance(dbConnectionFactory).getById(id);
+            ExecutionRequest request = ExecutionRequestDAO.getInstance(dbConnectionFactory).getById(id, true);
 
             if (completeRequest.getOverrideDetails() != null) {
                 completeRequest.getOverrideDetails().setRequester(new User(userInfo).getUserId());
@@ -759,7 +774,7 @@ public class CFBTManagementService implements CFBTMANAGEMENTAPI {
         ReleaseTest releaseTest = null;
 
         try {
-            ExecutionRequest request = ExecutionRequestDAO.getInstance(dbConfig.getConnectionFactory()).getById(id);
+            ExecutionRequest request = ExecutionRequestDAO.getInstance(dbConfig.getConnectionFactory()).getById(id, true);
             Queue queue = Queue.releaseVettingQueue(dbConfig);
 
             request = queue.changePosition(request, changePosition.getPositionOffset());
@@ -786,7 +801,7 @@ public class CFBTManagementService implements CFBTMANAGEMENTAPI {
                     null);
         }
         try {
-            ExecutionRequest request = executionRequestDAO.getById(executionRequestId);
+            ExecutionRequest request = executionRequestDAO.getById(executionRequestId, true);
             RequestThreadHandler threadHandler = new RequestThreadHandler(dbConfig, request.getQueueName());
 
             transitionedRequest = threadHandler.triggerEvent(request, Message.COMPLETE_TESTS);
@@ -804,8 +819,8 @@ public class CFBTManagementService implements CFBTMANAGEMENTAPI {
      */
     private boolean checkFeatureEnabled(String featureName) {
         Feature feature = null;
-        try {
-            feature = FeatureDAO.getInstance().readWithName(dbConnectionFactory.newConnection(), featureName);
+        try (ConnectionScope scope = ConnectionScope.open(dbConnectionFactory)) {
+            feature = FeatureDAO.getInstance().readWithName(scope.connection(), featureName);
         } catch (Exception ex) {
             //eat the exception and send the enabled as false
             CFBTLogger.logError(logger, CFBTManagementService.class.toString(), ex.getLocalizedMessage(), ex);
@@ -863,10 +878,10 @@ public class CFBTManagementService implements CFBTMANAGEMENTAPI {
                             null);
                 }
                 executor.updateConfiguredThreads(nodeUpdates.getIpAddress(), numOfThreads);
-                clusterInfo = new ClusterInfo(dbConnectionFactory, config, applicationPropertiesInfoInfo);
+                clusterInfo = ClusterView.getInstance().get(dbConnectionFactory, config);
                 clusterInfo.updateEnableTestRunAndConfiguredThreads(dbConnectionFactory, nodeUpdates.getIpAddress(), numOfThreads, nodeUpdates.getEnableTestRun());
             }
-            clusterInfo = new ClusterInfo(dbConnectionFactory, config, applicationPropertiesInfoInfo);
+            clusterInfo = ClusterView.getInstance().get(dbConnectionFactory, config);
             clusterDetails = clusterInfo.getClusterDetails();
         } catch (BusinessException ex) {
             throw ex;
@@ -930,7 +945,7 @@ public class CFBTManagementService implements CFBTMANAGEMENTAPI {
      * @return response containing list of execution requests
      */
     @Override
-    public Response systemStatusExecutionRequests(String userInfo, SystemStatusRequest request) {
+    public Response systemStatusExecutionRequests(String userInfo, SystemStatusRequest request, String detail) {
 
         List<ExecutionRequest> executionRequestList = new ArrayList<>();
         DateTime dateTimeFrom;
@@ -950,15 +965,18 @@ public class CFBTManagementService implements CFBTMANAGEMENTAPI {
 
         try {
             ExecutionRequestDAO dao = ExecutionRequestDAO.getInstance(dbConnectionFactory);
-            executionRequestList.addAll(dao.getSystemStatus(dateTimeFrom, pendingLimit, completedLimit, request.getSynthetic(), config.getBoolean("shouldShowSyntheticsOnCFBT", false)));
+            executionRequestList.addAll(dao.getSystemStatus(dateTimeFrom, pendingLimit, completedLimit, request.getSynthetic(),
+                    config.getBoolean("shouldShowSyntheticsOnCFBT", false), projection(detail)));
         } catch (Exception ex) {
             CFBTExceptionUtil.throwBusinessException(CommonError.INTERNAL_SERVICE_ERROR, "Error trying to read execution requests", ex);
         }
 
         for (ExecutionRequest executionRequest : executionRequestList) {
-            executionRequest.getTests().forEach((test) -> {
-                test.clearAllButIds();
-            });
+            if (executionRequest.getTests() != null) {
+                executionRequest.getTests().forEach((test) -> {
+                    test.clearAllButIds();
+                });
+            }
         }
 
         return Response.ok().entity(executionRequestList).build();
@@ -967,7 +985,7 @@ public class CFBTManagementService implements CFBTMANAGEMENTAPI {
 
     @Override
     public Response getReleaseTests(String userInfo, int pageNum, int size, String queuestatus,
-            boolean includePendingTestCompleteCallback) {
+            boolean includePendingTestCompleteCallback, String detail, String cursor) {
         if (pageNum == 0) {
             pageNum = 1;
         }
@@ -982,8 +1000,10 @@ public class CFBTManagementService implements CFBTMANAGEMENTAPI {
                         "Wrong status value , " + "Expected PENDING/RUNNING Actual : " + queuestatus, ex);
             }
         }
+        if (cursor != null && !ReleaseTestDAO.isValidCursor(cursor)) {
+            CFBTExceptionUtil.throwBusinessException(CommonError.VALIDATION_ERROR, "Invalid cursor : " + cursor, null);
+        }
 
-        List<ReleaseTest> releaseTestList = new ArrayList<>();
         List<String> statusList = new ArrayList<>();
         if ("PENDING".equals(queuestatus)) {
             statusList.add(ExecutionRequest.Status.PENDING.toString());
@@ -993,41 +1013,14 @@ public class CFBTManagementService implements CFBTMANAGEMENTAPI {
             statusList.add(ExecutionRequest.Status.PENDING.toString());
             statusList.addAll(Status.runningStatuses());
         }
-        try {
-            List<ExecutionRequest> executionRequestList = ExecutionRequestDAO.getInstance(dbConnectionFactory)
-                    .getByStatus(statusList);
-            for (ExecutionRequest er : executionRequestList) {
-                if (Type.RELEASE.equals(er.getType())) {
-                    ReleaseTest releaseTest = er.getReleaseTest();
-                    er.setReleaseTest(null);
-                    releaseTest.setExecutionRequest(er);
-                    releaseTestList.add(releaseTest);
-                }
-            }
-            if (includePendingTestCompleteCallback) {
-                List<ReleaseTest> callbackNotCompeleteList = ReleaseTestDAO.getInstance(dbConnectionFactory)
-                        .readByTestingCompleteCallbackStatus(dbConfig.getConnectionFactory().newConnection(),
-                                ReleaseTest.CallStatus.NOT_COMPLETE);
-                if (callbackNotCompeleteList != null && callbackNotCompeleteList.size() > 0) {
-                    for (ReleaseTest eachReleaseTest : callbackNotCompeleteList) {
-                        // Compares the releaseTestList and callbackNotCompeleteList using the execution Request ID
-                        // to confirm the unique releaseTest object is added to the list.
-                        List<String> releaseIdList = releaseTestList.stream()
-                                .filter(releaseTest -> releaseTest.getExecutionRequest().getId()
-                                        .equals(eachReleaseTest.getExecutionRequest().getId()))
-                                .map(releaseTest -> releaseTest.getExecutionRequest().getId())
-                                .collect(Collectors.toList());
-                        if (releaseIdList == null || releaseIdList.isEmpty()) {
-                            releaseTestList.add(eachReleaseTest);
-                        }
-                    }
-                }
-            }
 
-            // Sort by position
-            releaseTestList.sort((r1, r2) -> r1.getExecutionRequest().getPosition() - r2.getExecutionRequest().getPosition());
+        ReleaseTestDAO.ListingPage listing = null;
+        try (MongoConnection c = dbConnectionFactory.newConnection()) {
+            // Only the rows of the page get their special messages.
+            listing = ReleaseTestDAO.getInstance(dbConnectionFactory).readListing(c, statusList,
+                    includePendingTestCompleteCallback, projection(detail), pageNum, size, cursor);
             SpecialMessage special = new SpecialMessage(dbConfig, Queue.RELEASE_VETTING_QUEUE_NAME);
-            special.addSpecialMessage(releaseTestList);
+            special.addSpecialMessage(listing.getReleaseTests());
 
         } catch (Exception e) {
             CFBTLogger.logError(logger, CFBTManagementService.class.toString(), e.getMessage());
@@ -1035,11 +1028,24 @@ public class CFBTManagementService implements CFBTMANAGEMENTAPI {
                     "An error occured while trying to retrieve the release Tests list. ", e);
         }
 
-        Page<ReleaseTest> page = new Page<>(releaseTestList, pageNum, size, releaseTestList.size());
+        // The listing starts at the cursor, or at the first page, the page cuts the requested page out of it.
+        Page<ReleaseTest> page = new Page<>(listing.getListing(), cursor != null ? 1 : pageNum, size, listing.getTotal());
         PagedResource<ReleaseTest> pagedResource = new PagedResource<>(page, "page", "size");
+        if (listing.getNextCursor() != null) {
+            return Response.ok().entity(pagedResource).header(NEXT_CURSOR_HEADER, listing.getNextCursor()).build();
+        }
         return Response.ok().entity(pagedResource).build();
     }
 
+    /**
+     * The listings return request summaries unless the full detail is requested.
+     * @param detail The detail query parameter.
+     * @return The projection to read the requests with, null for the whole request.
+     */
+    private Bson projection(String detail) {
+        return DETAIL_FULL.equalsIgnoreCase(detail) ? null : ExecutionRequestDAO.SUMMARY_PROJECTION;
+    }
+
     @Override
     public Response getReleaseTest(String userInfo, String id) {
         if (!ObjectId.isValid(id)) {
@@ -1067,6 +1073,124 @@ public class CFBTManagementService implements CFBTMANAGEMENTAPI {
         return Response.ok().entity(releaseTest).build();
     }
 
+    /**
+     * Stream the decoded content of an attachment, or a single byte range of it.
+     *
+     * The content is opened once and read while the response is written, so that it's never held in memory. Its
+     * connection is released once the response is written.
+     */
+    @Override
+    public Response getAttachmentContent(String userInfo, String id, String range) {
+        if (!ObjectId.isValid(id)) {
+            CFBTExceptionUtil.throwBusinessException(CommonError.INVALID_RESOURCE_ID, "Invalid attachment ID: " + id, null);
+        }
+
+        MongoConnection c = null;
+        AttachmentDAO.Content content = null;
+        final String msg = "Unable to load the attachment content. ";
+        try {
+            c = dbConnectionFactory.newConnection();
+            content = AttachmentDAO.getInstance().openContent(c, id);
+        } catch (Exception ex) {
+            close(c, content);
+            CFBTLogger.logError(logger, CFBTManagementService.class.toString(), msg, ex);
+            CFBTExceptionUtil.throwBusinessException(CommonError.INTERNAL_SERVICE_ERROR, msg + ex.getMessage(), ex);
+        }
+        if (content == null) {
+            close(c, null);
+            CFBTExceptionUtil.throwBusinessException(CommonError.INVALID_RESOURCE_ID, "Attachment not found: " + id, null);
+        }
+
+        Attachment attachment = content.getAttachment();
+        long length = content.getLength();
+        long[] bytes = parseRange(range, length);
+        if (bytes == null) {
+            close(c, content);
+            return Response.status(416).header("Content-Range", "bytes */" + length).build();
+        }
+        final long start = bytes[0];
+        final long end = bytes[1];
+        final MongoConnection connection = c;
+        final AttachmentDAO.Content opened = content;
+        StreamingOutput output = (out) -> {
+            try {
+                opened.writeTo(out, start, end);
+            } finally {
+                close(connection, opened);
+            }
+        };
+
+        boolean partial = range != null && length >= 0 && (start > 0 || end < length - 1);
+        Response.ResponseBuilder response = Response.status(partial ? 206 : 200).entity(output)
+                .type(attachment.getType() == null ? MediaType.APPLICATION_OCTET_STREAM : attachment.getType())
+                .header("Accept-Ranges", length < 0 ? "none" : "bytes");
+        if (end >= 0) {
+            response.header("Content-Length", end - start + 1);
+        }
+        if (partial) {
+            response.header("Content-Range", "bytes " + start + "-" + end + "/" + length);
+        }
+        return response.build();
+    }
+
+    private void close(MongoConnection c, AttachmentDAO.Content content) {
+        try {
+            if (content != null) {
+                content.close();
+            }
+        } catch (IOException ex) {
+            CFBTLogger.logError(logger, CFBTManagementService.class.toString(), "Error closing the attachment content", ex);
+        }
+        try {
+            if (c != null) {
+                c.close();
+            }
+        } catch (Exception ex) {
+            CFBTLogger.logError(logger, CFBTManagementService.class.toString(), "Error closing the mongo connection", ex);
+        }
+    }
+
+    /**
+     * Resolve a "bytes=" range header against the content length.
+     *
+     * @return the first and last bytes to send, the last is -1 when the length is unknown, null when the range can't
+     * be satisfied.
+     */
+    static long[] parseRange(String range, long length) {
+        if (range == null || length < 0) {
+            return new long[] { 0, length < 0 ? -1 : length - 1 };
+        }
+        String spec = range.trim();
+        if (!spec.startsWith("bytes=") || spec.contains(",")) {
+            // Multiple ranges aren't served, the whole content is.
+            return new long[] { 0, length - 1 };
+        }
+        spec = spec.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                start = Math.max(0, length - Long.parseLong(last));
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+            }
+            if (start < 0 || start > end) {
+                return null;
+            }
+            return new long[] { start, end };
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
     /**
      * Returns all of the data centers present in DatacenterConfig collection.
      * 
@@ -1109,7 +1233,7 @@ public class CFBTManagementService implements CFBTMANAGEMENTAPI {
     public Response getClusterDetails() {
         ClusterDetails clusterDetails = null;
         try {
-            ClusterInfo clusterInfo = new ClusterInfo(dbConnectionFactory, config);
+            ClusterInfo clusterInfo = ClusterView.getInstance().get(dbConnectionFactory, config);
             clusterDetails = clusterInfo.getClusterDetails();
         } catch (Exception ex) {
             CFBTExceptionUtil.throwBusinessException(CommonError.INTERNAL_SERVICE_ERROR,
@@ -1387,15 +1511,19 @@ public class CFBTManagementService implements CFBTMANAGEMENTAPI {
             exceptionList.removeExempted(components);
             if (!components.isEmpty()) {
                 try {
-                    List<com.paypal.sre.cfbt.data.test.Component> coveredComponents = TestDAO.getInstance(dbConnectionFactory).getCoveredComponents(true, datacenter);
+                    long start = System.currentTimeMillis();
+                    Set<String> coveredNames = new HashSet<>();
+                    for (com.paypal.sre.cfbt.data.test.Component coveredComponent : TestDAO.getInstance(dbConnectionFactory).getCoveredComponents(true, datacenter)) {
+                        coveredNames.add(coveredComponent.getName().toLowerCase());
+                    }
                     for (String providedComponent : components) {
-                        for (com.paypal.sre.cfbt.data.test.Component coveredComponent : coveredComponents) {
-                            if (coveredComponent.getName().equalsIgnoreCase(providedComponent)) {
-                                hasTests = true;
-                                break;
-                            }
+                        if (coveredNames.contains(providedComponent.toLowerCase())) {
+                            hasTests = true;
+                            break;
                         }
                     }
+                    CFBTLogger.logInfo(logger, "hasTests", "Checked " + components.size() + " components in "
+                            + (System.currentTimeMillis() - start) + " ms");
                 } catch (Exception ex) {
                     CFBTLogger.logError(logger, "hasTests", "Error trying to determine if components have tests " + ex.getMessage());
                 }
@@ -7,15 +7,14 @@ import com.ebay.kernel.cal.api.CalTransaction;
 import com.ebay.kernel.cal.api.sync.CalTransactionFactory;
 import com.paypal.infra.util.cal.CalType;
 import com.paypal.sre.cfbt.data.execapi.ReleaseRequest;
-import com.paypal.sre.cfbt.data.execapi.ReleaseTest;
 import com.paypal.sre.cfbt.management.dal.DatabaseConfig;
 import com.paypal.sre.cfbt.management.dal.ExecutionRequestDAO;
 import com.paypal.sre.cfbt.management.dal.ExecutionRequestStatisticsDAO;
 import com.paypal.sre.cfbt.mongo.MongoConnectionFactory;
 import com.paypal.sre.cfbt.shared.DateUtil;
+import org.bson.Document;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
-import org.joda.time.Period;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -81,95 +80,66 @@ public class ExecutionRequestStatsProcessor extends RunOnceCommand {
      * Method to calculate and update the statistics. The following statistics are calculated based on the past 7 days
      * PASSED/FAILED/ERROR {@link ExecutionRequest} data : 90th percentile execution and deploy and percentage rollback
      * duration.
+     *
+     * The durations are computed and grouped by release vehicle in mongo, only the durations are loaded.
      */
     private void updateStatistics() {
 
         try {
 
-            DateTime currentDateTime = DateTime.now(DateTimeZone.UTC);
+            DateTime currentDateTime = DateTime.now(DateTimeZone.UTC).withMillisOfSecond(0);
             String toDate = DateUtil.dateTimeISOFormat(currentDateTime);
             // Consider only last 7 days data.
             String fromDate = DateUtil.dateTimeISOFormat(currentDateTime.minusDays(7));
 
-            List<ExecutionRequest> executionRequests = requestDAO
-                    .getExecutionRequests(DateUtil.trimDateTimeString(fromDate), DateUtil.trimDateTimeString(toDate));
-            List<ExecutionRequest> eligibleRequests = new ArrayList<>();
+            List<Document> vehicleGroups = requestDAO.getDurationsByReleaseVehicle(currentDateTime.minusDays(7),
+                    currentDateTime, Arrays.asList(ExecutionRequest.ResultStatus.PASS.toString(),
+                            ExecutionRequest.ResultStatus.FAILURE.toString(),
+                            ExecutionRequest.ResultStatus.ERROR.toString(),
+                            ExecutionRequest.ResultStatus.PASS_WITH_WARNING.toString()));
 
-            if (executionRequests == null) {
+            if (vehicleGroups.isEmpty()) {
                 CFBTLogger.logInfo(logger, CFBTLogger.CalEventEnum.EXECUTION_REQUEST_STATS_PROCESSOR,
                         "There are no execution requests for period between " + fromDate + " & " + toDate);
-                return;
-            }
-            for (ExecutionRequest er : executionRequests) {
-                if (ExecutionRequest.ResultStatus.PASS.equals(er.getResultStatus())
-                        || ExecutionRequest.ResultStatus.FAILURE.equals(er.getResultStatus())
-                        || ExecutionRequest.ResultStatus.ERROR.equals(er.getResultStatus())
-                        || ExecutionRequest.ResultStatus.PASS_WITH_WARNING.equals(er.getResultStatus())) {
-                    eligibleRequests.add(er);
-                }
             }
 
-            HashMap<String, List<Integer>> executionDurationMap = new HashMap<>();
-            HashMap<String, List<Integer>> deploymentDurationMap = new HashMap<>();
-            HashMap<String, Integer> rollbackMap = new HashMap<>();
-            HashMap<String, Integer> totalReleasesMap = new HashMap<>();
-            executionDurationMap.put(ExecutionRequestStatistics.ALL_STATS,new ArrayList<>());
-            deploymentDurationMap.put(ExecutionRequestStatistics.ALL_STATS,new ArrayList<>());
-            rollbackMap.put(ExecutionRequestStatistics.ALL_STATS,0);
-            totalReleasesMap.put(ExecutionRequestStatistics.ALL_STATS,0);
-            for (ReleaseRequest.ReleaseVehicle vehicle : ReleaseRequest.ReleaseVehicle.values()) {
-                executionDurationMap.put(vehicle.toString(),new ArrayList<>());
-                deploymentDurationMap.put(vehicle.toString(),new ArrayList<>());
-                rollbackMap.put(vehicle.toString(),0);
-                totalReleasesMap.put(vehicle.toString(),0);
-            }
-            for (ExecutionRequest er : eligibleRequests) {
-                int executionDuration = getExecutionDuration(er);
-                executionDurationMap.get(ExecutionRequestStatistics.ALL_STATS).add(executionDuration);
-                if (er.getReleaseTest() != null &&
-                        ExecutionRequest.Type.RELEASE.equals(er.getType()) &&
-                        er.getReleaseTest().getReleaseVehicle() != null) {
-                    String rv = er.getReleaseTest().getReleaseVehicle();
-                    int deployDuration = getDeployDuration(er);
-                    executionDurationMap.get(rv).add(executionDuration);
-                    totalReleasesMap.replace(ExecutionRequestStatistics.ALL_STATS,totalReleasesMap.get(ExecutionRequestStatistics.ALL_STATS)+1);
-                    totalReleasesMap.replace(rv,totalReleasesMap.get(rv)+1);
-                    if (ReleaseTest.Action.ROLLBACK.equals(er.getReleaseTest().getCompletionAction())) {
-                        rollbackMap.replace(ExecutionRequestStatistics.ALL_STATS,rollbackMap.get(ExecutionRequestStatistics.ALL_STATS)+1);
-                        rollbackMap.replace(rv,rollbackMap.get(rv)+1);
-                    }
-                    if (deployDuration > 0) {
-                        deploymentDurationMap.get(ExecutionRequestStatistics.ALL_STATS).add(deployDuration);
-                        deploymentDurationMap.get(rv).add(deployDuration);
-                    }
+            Map<String, Document> groupByVehicle = new HashMap<>();
+            List<int[]> allExecutionDurations = new ArrayList<>();
+            List<int[]> allDeployDurations = new ArrayList<>();
+            int allRollbacks = 0;
+            int allReleases = 0;
+            for (Document vehicleGroup : vehicleGroups) {
+                allExecutionDurations.add(toIntArray(vehicleGroup, "executionDurations"));
+                String rv = vehicleGroup.getString("_id");
+                if (rv != null) {
+                    groupByVehicle.put(rv, vehicleGroup);
+                    allDeployDurations.add(toIntArray(vehicleGroup, "deployDurations"));
+                    allRollbacks += vehicleGroup.getInteger("rollbacks", 0);
+                    allReleases += vehicleGroup.getInteger("releases", 0);
                 }
             }
 
             for (ReleaseRequest.ReleaseVehicle vehicle : ReleaseRequest.ReleaseVehicle.values()) {
                 String rv = vehicle.toString();
+                Document vehicleGroup = groupByVehicle.getOrDefault(rv, new Document());
                 // if there were no releases of one of the types, making this be at least one makes the rollback percentage
                 // be 0 instead of NaN from dividing by 0
-                if (totalReleasesMap.get(rv) == 0) {
-                    totalReleasesMap.replace(rv, 1);
-                }
+                int releases = Math.max(1, vehicleGroup.getInteger("releases", 0));
                 ExecutionRequestStatistics newStats = new ExecutionRequestStatistics();
                 newStats.setReleaseVehicle(rv);
-                newStats.setNinetyPercentileDuration(calculatePercentileDuration(executionDurationMap.get(rv), 90));
-                newStats.setNinetyPercentileDeploy(calculatePercentileDuration(deploymentDurationMap.get(rv), 90));
-                newStats.setRollbackPercentage((double) rollbackMap.get(rv) / (double) totalReleasesMap.get(rv) * 100.0);
+                newStats.setNinetyPercentileDuration(calculatePercentileDuration(toIntArray(vehicleGroup, "executionDurations"), 90));
+                newStats.setNinetyPercentileDeploy(calculatePercentileDuration(toIntArray(vehicleGroup, "deployDurations"), 90));
+                newStats.setRollbackPercentage((double) vehicleGroup.getInteger("rollbacks", 0) / (double) releases * 100.0);
                 newStats.setDateTime(toDate);
                 statsDAO.insert(newStats);
             }
             // if there were no releases at all, making this be at least one makes the rollback percentage
             // be 0 instead of NaN from dividing by 0
-            if (totalReleasesMap.get(ExecutionRequestStatistics.ALL_STATS) == 0) {
-                totalReleasesMap.replace(ExecutionRequestStatistics.ALL_STATS, 1);
-            }
             ExecutionRequestStatistics newStats = new ExecutionRequestStatistics();
             newStats.setReleaseVehicle(ExecutionRequestStatistics.ALL_STATS);
-            newStats.setNinetyPercentileDuration(calculatePercentileDuration(executionDurationMap.get(ExecutionRequestStatistics.ALL_STATS), 90));
-            newStats.setNinetyPercentileDeploy(calculatePercentileDuration(deploymentDurationMap.get(ExecutionRequestStatistics.ALL_STATS), 90));
-            newStats.setRollbackPercentage((double) rollbackMap.get(ExecutionRequestStatistics.ALL_STATS) / (double) totalReleasesMap.get(ExecutionRequestStatistics.ALL_STATS) * 100.0);
+            newStats.setNinetyPercentileDuration(calculatePercentileDuration(concat(allExecutionDurations), 90));
+            newStats.setNinetyPercentileDeploy(calculatePercentileDuration(concat(allDeployDurations), 90));
+            newStats.setRollbackPercentage((double) allRollbacks / (double) Math.max(1, allReleases) * 100.0);
             newStats.setDateTime(toDate);
             statsDAO.insert(newStats);
 
@@ -180,64 +150,52 @@ public class ExecutionRequestStatsProcessor extends RunOnceCommand {
     }
 
     /**
-     * Get the execution duration for an execution request.
+     * Read a list of durations of a group.
      *
-     * @param er
-     *            - the {@link ExecutionRequest}
-     * @return the execution duration
+     * @param vehicleGroup
+     *            - the group {@link Document}
+     * @param field
+     *            - the durations field.
+     * @return the durations, empty when the group has none.
      */
-    private int getExecutionDuration(ExecutionRequest er) {
-        int duration = 0;
-        if (er.getExecutionStart() != null) {
-            DateTime startDateTime = new DateTime(er.getExecutionStart(), DateTimeZone.UTC);
-            DateTime endDateTime = new DateTime(er.getExecutionComplete(), DateTimeZone.UTC);
-            Period elapsedTime = new Period(startDateTime, endDateTime);
-            duration = elapsedTime.getHours() * 3600 + elapsedTime.getMinutes() * 60 + elapsedTime.getSeconds();
+    private int[] toIntArray(Document vehicleGroup, String field) {
+        List<?> durations = vehicleGroup.get(field, List.class);
+        if (durations == null) {
+            return new int[0];
         }
-        return duration;
+        int[] values = new int[durations.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = ((Number) durations.get(i)).intValue();
+        }
+        return values;
     }
 
-    /**
-     * Get the deployment duration for an execution request.
-     *
-     * @param er
-     *            - the {@link ExecutionRequest}
-     * @return the execution duration
-     */
-    private int getDeployDuration(ExecutionRequest er) {
-        int duration = 0;
-        if (er.getReleaseTest() != null && ExecutionRequest.Type.RELEASE.equals(er.getType()) &&
-                er.getReleaseTest().getDeploymentComplete() != null) {
-            DateTime startDateTime = new DateTime(er.getReleaseTest().getDeploymentStart(), DateTimeZone.UTC);
-            DateTime endDateTime = new DateTime(er.getReleaseTest().getDeploymentComplete(), DateTimeZone.UTC);
-            Period elapsedTime = new Period(startDateTime, endDateTime);
-            duration = elapsedTime.getHours() * 3600 + elapsedTime.getMinutes() * 60 + elapsedTime.getSeconds();
+    private int[] concat(List<int[]> arrays) {
+        int[] values = new int[arrays.stream().mapToInt((array) -> array.length).sum()];
+        int offset = 0;
+        for (int[] array : arrays) {
+            System.arraycopy(array, 0, values, offset, array.length);
+            offset += array.length;
         }
-        return duration;
+        return values;
     }
 
     /**
-     * Method to calculate the specified percentile value from the provided {@link List} of {@link Integer}
+     * Method to calculate the specified percentile value from the provided durations.
      *
-     * @param durationList
-     *            - the {@link List} of {@link Integer} representing the durations.
+     * @param durations
+     *            - the durations, sorted in place.
      * @param percentile
      *            - the percentile value that need to be calculated.
      * @return the calculated percentile value
      */
-    private int calculatePercentileDuration(List<Integer> durationList, int percentile) {
-        int percentileIndex = 1;
-
-        if (durationList == null) {
+    private int calculatePercentileDuration(int[] durations, int percentile) {
+        if (durations == null || durations.length == 0) {
             return 0;
         }
 
-        if (durationList.size() > 0) {
-            Collections.sort(durationList);
-            percentileIndex = (int) Math.ceil(((double) percentile / (double) 100) * (double) durationList.size());
-            return durationList.get(percentileIndex - 1);
-        } else {
-            return 0;
-        }
+        Arrays.sort(durations);
+        int percentileIndex = (int) Math.ceil(((double) percentile / (double) 100) * (double) durations.length);
+        return durations[Math.max(percentileIndex, 1) - 1];
     }
 }
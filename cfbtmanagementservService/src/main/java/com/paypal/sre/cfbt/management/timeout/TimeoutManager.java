@@ -24,6 +24,7 @@ import com.paypal.sre.cfbt.data.execapi.Test;
 import com.paypal.sre.cfbt.data.execapi.ExecutionRequest.Status;
 import com.paypal.sre.cfbt.execution.request.statemachine.Transitions.Message;
 import com.paypal.sre.cfbt.executor.Executor;
+import com.paypal.sre.cfbt.management.dal.ConnectionScope;
 import com.paypal.sre.cfbt.management.dal.DatabaseConfig;
 import com.paypal.sre.cfbt.management.dal.ExecutionRepository;
 import com.paypal.sre.cfbt.management.dal.ExecutionRequestDAO;
@@ -88,7 +89,7 @@ public class TimeoutManager {
                     }
 
                     ExecutionRequestDAO executionRequestDAO = ExecutionRequestDAO.getInstance(dbFactory);
-                    ExecutionRequest request = executionRequestDAO.getById(event.getTargetId());
+                    ExecutionRequest request = executionRequestDAO.getById(event.getTargetId(), true);
                     ExecutionRepository executionRepo = new ExecutionRepository();
                     ExecutionRequestRepository requestRepo = new ExecutionRequestRepository();
                     RequestThreadHandler threadHandler = new RequestThreadHandler(dbConfig, request.getQueueName());
@@ -211,7 +212,9 @@ public class TimeoutManager {
      * Method to abort any tests out of expected SLA.
      */
     private void abortOutOfSLATests() {
-        try {
+        // One connection for the whole sweep, the running executions and tests are read through it. The sweep aborts
+        // tests as it goes and may take longer than the leak threshold.
+        try (ConnectionScope scope = ConnectionScope.open(dbFactory, 0)) {
             List<String> statusList = new ArrayList<>();
 
             statusList.add(Status.IN_PROGRESS.toString());
@@ -227,7 +230,7 @@ public class TimeoutManager {
             for (ExecutionRequest request : requestList) {
                 List<Execution> executions = testExecutionDAO.getRunningExecutions(request.getId());
                 for (Execution execution : executions) {
-                    Test test = testDAO.readOne(dbConfig.getConnectionFactory().newConnection(), execution.getTestId(),
+                    Test test = testDAO.readOne(scope.connection(), execution.getTestId(),
                             false, null);
                     long maxExecutionTime = (test.getMaxExecutionTime() == 0) ? defaultMaxTestExecutionTime
                             : test.getMaxExecutionTime();
@@ -328,8 +331,8 @@ public class TimeoutManager {
      */
     private boolean checkFeatureEnabled(String featureName) {
         Feature feature = null;
-        try {
-            feature = FeatureDAO.getInstance().readWithName(dbFactory.newConnection(), featureName);
+        try (ConnectionScope scope = ConnectionScope.open(dbFactory)) {
+            feature = FeatureDAO.getInstance().readWithName(scope.connection(), featureName);
         } catch (Exception ex) {
             //eat the exception and send the enabled as false
             CFBTLogger.logError(LOGGER, TimeoutManager.class.toString(), ex.getLocalizedMessage(), ex);
@@ -11,7 +11,7 @@ import com.paypal.sre.cfbt.data.execapi.ReleaseTest;
 import com.paypal.sre.cfbt.data.execapi.Test;
 import com.paypal.sre.cfbt.data.test.Component;
 import com.paypal.sre.cfbt.management.appproperty.ApplicationProperty;
-import com.paypal.sre.cfbt.management.dal.ApplicationPropertyDAO;
+import com.paypal.sre.cfbt.management.dal.ApplicationPropertyCache;
 import com.paypal.sre.cfbt.management.dal.TestDAO;
 import com.paypal.sre.cfbt.mongo.MongoConnectionFactory;
 import java.util.ArrayList;
@@ -33,8 +33,7 @@ public class CFBTExceptionList {
      */
     public CFBTExceptionList(MongoConnectionFactory db) throws Exception {
         this.db = db;
-        ApplicationPropertyDAO appDAO = ApplicationPropertyDAO.getInstance();
-        ApplicationProperty property = appDAO.getApplicationProperty(db.newConnection());
+        ApplicationProperty property = ApplicationPropertyCache.read(db);
         String exemptComponents = property.getExemptComponents();
         String allTestsComponents = property.getAllTestsComponents();
         if (exemptComponents != null) {
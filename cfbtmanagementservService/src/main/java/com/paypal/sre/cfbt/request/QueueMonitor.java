@@ -272,7 +272,7 @@ public class QueueMonitor implements QueueObserver {
      */
     public void triggerTimeout(ExecutionRequest request, ReleaseTest.Action action) {
         try {
-            ExecutionRequest loadedRequest = requestDAO.getById(request.getId());
+            ExecutionRequest loadedRequest = requestDAO.getById(request.getId(), true);
 
             if (loadedRequest == null) {
                 throw new IllegalStateException("This request is not found");
@@ -130,7 +130,7 @@ public class RunOneProcessor implements RequestProcessor{
     public void triggerTimeout(ExecutionRequest request, ReleaseTest.Action action) throws Exception {
         if (request.getRunNow()) {
             try {
-                ExecutionRequest loadedRequest = ExecutionRequestDAO.getInstance(dbConfig.getConnectionFactory()).getById(request.getId());
+                ExecutionRequest loadedRequest = ExecutionRequestDAO.getInstance(dbConfig.getConnectionFactory()).getById(request.getId(), true);
 
                 if (loadedRequest == null) {
                     throw new IllegalStateException("This request is not found");
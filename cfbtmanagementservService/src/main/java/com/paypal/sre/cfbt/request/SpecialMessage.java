@@ -7,7 +7,7 @@ import java.util.List;
 import java.util.ArrayList;
 import com.paypal.sre.cfbt.data.execapi.ExecutionRequest;
 import com.paypal.sre.cfbt.management.appproperty.ApplicationProperty;
-import com.paypal.sre.cfbt.management.dal.ApplicationPropertyDAO;
+import com.paypal.sre.cfbt.management.dal.ApplicationPropertyCache;
 import com.paypal.sre.cfbt.shared.DateUtil;
 import com.paypal.sre.cfbt.data.execapi.Alert;
 import com.paypal.sre.cfbt.data.execapi.ReleaseTest;
@@ -40,8 +40,7 @@ public class SpecialMessage {
      */
     public SpecialMessage(DatabaseConfig db, String queueName) throws Exception {
         this.db = db;
-        ApplicationPropertyDAO appDAO = ApplicationPropertyDAO.getInstance();
-        property = appDAO.getApplicationProperty(db.getConnectionFactory().newConnection());
+        property = ApplicationPropertyCache.read(db.getConnectionFactory());
         this.queueName = queueName;
         this.estimate = new EstimatedTime(db.getConnectionFactory());
     }
@@ -0,0 +1,149 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.executor;
+
+import com.paypal.sre.cfbt.data.execapi.Execution;
+import com.paypal.sre.cfbt.data.execapi.Test;
+import com.paypal.sre.cfbt.data.executor.TestExecutionContainer;
+import com.paypal.sre.cfbt.management.CFBTTestResourceClient;
+import com.paypal.sre.cfbt.management.dal.DatabaseConfig;
+import com.paypal.sre.cfbt.management.dal.TestExecutionDAO;
+import com.paypal.sre.cfbt.management.rest.impl.ConfigManager;
+import com.paypal.sre.cfbt.mongo.MongoConnection;
+import com.paypal.sre.cfbt.request.DatabaseConfigFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.configuration.Configuration;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.mockito.Matchers;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+
+/**
+ * Unit tests for the {@link DispatchController}, the dispatch is run explicitly instead of by the poller.
+ */
+public class DispatchControllerTest {
+    private Configuration previousConfig;
+    private DatabaseConfig previousDb;
+    private CFBTTestResourceClient previousClient;
+    private DatabaseConfig db;
+
+    @BeforeClass
+    public void init() {
+        previousConfig = ConfigManager.getConfiguration();
+        previousDb = ConfigManager.getDatabaseConfig();
+        previousClient = ConfigManager.getTestResourceServClient();
+
+        Configuration config = mock(Configuration.class);
+        when(config.getBoolean(Matchers.eq("dispatchBackpressureEnabled"), Matchers.anyBoolean())).thenReturn(true);
+        when(config.getInt(Matchers.anyString(), Matchers.anyInt())).thenReturn(5);
+        db = new DatabaseConfigFactory().databaseConfig("Dispatch");
+        ConfigManager.setConfiguration(config, db, mock(CFBTTestResourceClient.class));
+    }
+
+    @AfterClass
+    public void restore() {
+        ConfigManager.setConfiguration(previousConfig, previousDb, previousClient);
+    }
+
+    @org.testng.annotations.Test
+    public void holdsPartitionsBeyondCapacityUntilOneCompletes() throws Exception {
+        DispatchController controller = new DispatchController((factory) -> 1, mock(ScheduledExecutorService.class));
+        List<List<TestExecutionContainer>> published = new ArrayList<>();
+        List<TestExecutionContainer> first = partition("holds1");
+        List<TestExecutionContainer> second = partition("holds2");
+
+        controller.submit(first, published::add);
+        controller.submit(second, published::add);
+        controller.dispatch();
+        Assert.assertEquals(published.size(), 1);
+        Assert.assertEquals(controller.getHeldPartitionCount(), 1);
+        Assert.assertEquals(controller.getInFlightPartitionCount(), 1);
+
+        // The first partition is still running.
+        controller.dispatch();
+        Assert.assertEquals(published.size(), 1);
+
+        complete(first);
+        controller.dispatch();
+        Assert.assertEquals(published.size(), 2);
+        Assert.assertEquals(published.get(1).get(0).getExecution().getId(), second.get(0).getExecution().getId());
+        Assert.assertEquals(controller.getHeldPartitionCount(), 0);
+    }
+
+    @org.testng.annotations.Test
+    public void releasesOnlyTheExecutionsStillPending() throws Exception {
+        DispatchController controller = new DispatchController((factory) -> 1, mock(ScheduledExecutorService.class));
+        List<List<TestExecutionContainer>> published = new ArrayList<>();
+        List<TestExecutionContainer> partition = partition("release1");
+        partition.addAll(partition("release2"));
+
+        controller.submit(partition, published::add);
+        // Stopped while held.
+        complete(partition.subList(0, 1));
+        controller.dispatch();
+
+        Assert.assertEquals(published.size(), 1);
+        Assert.assertEquals(published.get(0).size(), 1);
+        Assert.assertEquals(published.get(0).get(0).getExecution().getId(), partition.get(1).getExecution().getId());
+    }
+
+    @org.testng.annotations.Test
+    public void keepsPartitionsHeldWhenAdmissionControlFails() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        DispatchController controller = new DispatchController((factory) -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IllegalStateException("cluster unavailable");
+            }
+            return 1;
+        }, mock(ScheduledExecutorService.class));
+        List<List<TestExecutionContainer>> published = new ArrayList<>();
+
+        controller.submit(partition("error1"), published::add);
+        controller.dispatch();
+        Assert.assertTrue(published.isEmpty());
+        Assert.assertEquals(controller.getHeldPartitionCount(), 1);
+
+        controller.dispatch();
+        Assert.assertEquals(published.size(), 1);
+        Assert.assertEquals(controller.getHeldPartitionCount(), 0);
+    }
+
+    /**
+     * Store a pending execution of the test and return its single test partition.
+     */
+    private List<TestExecutionContainer> partition(String testId) throws Exception {
+        Execution execution = new Execution();
+        execution.setTestId(testId);
+        execution.setExecutionRequestIds(new ArrayList<>(Arrays.asList("DispatchRequest")));
+        execution.setStatus(Execution.Status.PENDING);
+
+        List<TestExecutionContainer> partition = new ArrayList<>();
+        TestExecutionDAO dao = TestExecutionDAO.getInstance(db.getConnectionFactory());
+        try (MongoConnection c = db.getConnectionFactory().newConnection()) {
+            dao.insertExecutions(c, Arrays.asList(execution));
+            for (Execution stored : dao.getExecutionsByRequestIdsAndTestIds(c, Arrays.asList("DispatchRequest"), Arrays.asList(testId))) {
+                partition.add(new TestExecutionContainer(mock(Test.class), stored, new ArrayList<>(), null));
+            }
+        }
+        return partition;
+    }
+
+    private void complete(List<TestExecutionContainer> partition) throws Exception {
+        try (MongoConnection c = db.getConnectionFactory().newConnection()) {
+            for (TestExecutionContainer container : partition) {
+                c.getDB().getCollection("TestExecution").updateOne(
+                        new Document("_id", new ObjectId(container.getExecution().getId())),
+                        new Document("$set", new Document("status", Execution.Status.PASS.toString())));
+            }
+        }
+    }
+}
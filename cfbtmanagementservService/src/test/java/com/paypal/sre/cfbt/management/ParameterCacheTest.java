@@ -0,0 +1,91 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management;
+
+import com.paypal.sre.cfbt.data.test.Parameter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link ParameterCache}.
+ */
+public class ParameterCacheTest {
+
+    private static List<Parameter> parameters(boolean secure) {
+        Parameter parameter = new Parameter();
+        parameter.setName("account");
+        parameter.setSecure(secure);
+        parameter.setValue("value".toCharArray());
+        List<Parameter> parameters = new ArrayList<>();
+        parameters.add(parameter);
+        return parameters;
+    }
+
+    @Test
+    public void servesRepeatedLoadsFromCache() {
+        ParameterCache cache = new ParameterCache(10, 60000);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("test1", "group", () -> { loads.incrementAndGet(); return parameters(false); });
+        List<Parameter> cached = cache.get("test1", "group", () -> { loads.incrementAndGet(); return parameters(false); });
+
+        Assert.assertEquals(loads.get(), 1);
+        Assert.assertEquals(String.valueOf(cached.get(0).getValue()), "value");
+        Assert.assertEquals(cache.getStats().getHits(), 1);
+        Assert.assertEquals(cache.getStats().getMisses(), 1);
+
+        // Callers get copies, merging into the returned list must not leak into the cache.
+        cached.get(0).setValue(null);
+        Assert.assertNotNull(cache.get("test1", "group", () -> parameters(false)).get(0).getValue());
+    }
+
+    @Test
+    public void neverCachesSecureValues() {
+        ParameterCache cache = new ParameterCache(10, 60000);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("test1", "group", () -> { loads.incrementAndGet(); return parameters(true); });
+        cache.get("test1", "group", () -> { loads.incrementAndGet(); return parameters(true); });
+
+        Assert.assertEquals(loads.get(), 2);
+    }
+
+    @Test
+    public void invalidationAndEviction() {
+        ParameterCache cache = new ParameterCache(1, 60000);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("test1", "group", () -> { loads.incrementAndGet(); return parameters(false); });
+        cache.invalidate("test1");
+        cache.get("test1", "group", () -> { loads.incrementAndGet(); return parameters(false); });
+        Assert.assertEquals(loads.get(), 2);
+
+        // Only one entry fits, loading test2 evicts test1.
+        cache.get("test2", "group", () -> { loads.incrementAndGet(); return parameters(false); });
+        cache.get("test1", "group", () -> { loads.incrementAndGet(); return parameters(false); });
+        Assert.assertEquals(loads.get(), 4);
+
+        cache.invalidateAll();
+        cache.get("test1", "group", () -> { loads.incrementAndGet(); return parameters(false); });
+        Assert.assertEquals(loads.get(), 5);
+    }
+
+    @Test
+    public void doesNotCacheLoadsRacingWithAnInvalidation() {
+        ParameterCache cache = new ParameterCache(10, 60000);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("test1", "group", () -> {
+            loads.incrementAndGet();
+            cache.invalidate("test1");
+            return parameters(false);
+        });
+        cache.get("test1", "group", () -> { loads.incrementAndGet(); return parameters(false); });
+
+        Assert.assertEquals(loads.get(), 2);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management;
+
+import com.paypal.sre.cfbt.data.execapi.Test;
+import com.paypal.sre.cfbt.data.test.Parameter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.jgrapht.UndirectedGraph;
+import org.jgrapht.alg.ConnectivityInspector;
+import org.jgrapht.graph.DefaultEdge;
+import org.jgrapht.graph.SimpleGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+
+/**
+ * Unit tests for the {@link PartitionUtil}, comparing the union-find partitioner with the
+ * graph based implementation it replaced.
+ */
+public class PartitionUtilTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionUtilTest.class);
+
+    private static Test test(String id, String... sharedValues) {
+        Test test = new Test();
+        test.setId(id);
+        List<Parameter> parameters = new ArrayList<>();
+        for (String value : sharedValues) {
+            Parameter parameter = new Parameter();
+            parameter.setName("account" + parameters.size());
+            parameter.setShared(true);
+            parameter.setValue(value.toCharArray());
+            parameters.add(parameter);
+        }
+        Parameter notShared = new Parameter();
+        notShared.setName("notShared");
+        notShared.setShared(false);
+        notShared.setValue("shared0".toCharArray());
+        parameters.add(notShared);
+        test.setParameters(parameters);
+        return test;
+    }
+
+    /**
+     * Generate tests where a handful of popular resources are shared by many tests.
+     */
+    private static List<Test> generateTests(int count, int resources, long seed) {
+        Random random = new Random(seed);
+        List<Test> tests = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int shared = random.nextInt(3);
+            String[] values = new String[shared];
+            for (int j = 0; j < shared; j++) {
+                // Skew the distribution so that the first resources are very popular.
+                int resource = (int) (resources * Math.pow(random.nextDouble(), 3));
+                values[j] = "shared" + resource;
+            }
+            tests.add(test("test" + i, values));
+        }
+        return tests;
+    }
+
+    private static Set<Set<String>> ids(List<List<Test>> partitions) {
+        Set<Set<String>> ids = new HashSet<>();
+        for (List<Test> partition : partitions) {
+            Set<String> partitionIds = new HashSet<>();
+            partition.forEach((test) -> partitionIds.add(test.getId()));
+            Assert.assertEquals(partitionIds.size(), partition.size());
+            ids.add(partitionIds);
+        }
+        return ids;
+    }
+
+    /**
+     * The jgrapht implementation previously used by {@link PartitionUtil}.
+     */
+    private static Set<Set<String>> graphPartition(List<Test> tests) {
+        UndirectedGraph<String, DefaultEdge> g = new SimpleGraph<>(DefaultEdge.class);
+        Map<String, Set<String>> testsByResource = new HashMap<>();
+        for (Test test : tests) {
+            g.addVertex(test.getId());
+            for (Parameter p : test.getParameters()) {
+                if (p.getShared()) {
+                    testsByResource.computeIfAbsent(String.copyValueOf(p.getValue()), (r) -> new HashSet<>()).add(test.getId());
+                }
+            }
+        }
+        for (Set<String> sharing : testsByResource.values()) {
+            for (String t0 : sharing) {
+                for (String t1 : sharing) {
+                    if (!t0.equals(t1)) {
+                        g.addEdge(t0, t1);
+                    }
+                }
+            }
+        }
+        return new HashSet<>(new ConnectivityInspector<>(g).connectedSets());
+    }
+
+    @org.testng.annotations.Test
+    public void partitionsTransitivelySharedTests() {
+        List<Test> tests = new ArrayList<>();
+        tests.add(test("T1", "P0", "P1"));
+        tests.add(test("T2", "P1", "P2"));
+        tests.add(test("T3", "P3"));
+        tests.add(test("T4"));
+        tests.add(test("T5", "P2"));
+
+        Set<Set<String>> partitions = ids(PartitionUtil.partitionTests(tests));
+
+        Assert.assertEquals(partitions.size(), 3);
+        Assert.assertTrue(partitions.contains(new HashSet<>(Arrays.asList("T1", "T2", "T5"))));
+        Assert.assertTrue(partitions.contains(new HashSet<>(Arrays.asList("T3"))));
+        Assert.assertTrue(partitions.contains(new HashSet<>(Arrays.asList("T4"))));
+    }
+
+    @org.testng.annotations.Test
+    public void matchesGraphPartitions() {
+        for (long seed = 0; seed < 20; seed++) {
+            List<Test> tests = generateTests(500, 200, seed);
+            Assert.assertEquals(ids(PartitionUtil.partitionTests(tests)), graphPartition(tests));
+        }
+    }
+
+    /**
+     * Micro benchmark of both implementations on a release with popular shared accounts, run with -Pbenchmark.
+     */
+    @org.testng.annotations.Test(groups = "benchmark")
+    public void benchmarkAgainstGraphPartition() {
+        List<Test> tests = generateTests(2000, 100, 42);
+        int iterations = 10;
+
+        // Warm up both implementations.
+        for (int i = 0; i < iterations; i++) {
+            PartitionUtil.partitionTests(tests);
+            graphPartition(tests);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            PartitionUtil.partitionTests(tests);
+        }
+        long unionFind = (System.nanoTime() - start) / iterations;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            graphPartition(tests);
+        }
+        long graph = (System.nanoTime() - start) / iterations;
+
+        LOGGER.info("partition of " + tests.size() + " tests: union-find " + unionFind / 1000 + " us, graph "
+                + graph / 1000 + " us");
+        Assert.assertEquals(ids(PartitionUtil.partitionTests(tests)), graphPartition(tests));
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management.cluster;
+
+import com.mongodb.client.model.changestream.OperationType;
+import com.mongodb.client.model.changestream.UpdateDescription;
+import com.paypal.sre.cfbt.data.ThreadDetails;
+import com.paypal.sre.cfbt.management.CFBTTestResourceClient;
+import com.paypal.sre.cfbt.management.dal.DatabaseConfig;
+import com.paypal.sre.cfbt.management.dal.ThreadStatistics.ThreadStatistic;
+import com.paypal.sre.cfbt.management.rest.impl.ConfigManager;
+import com.paypal.sre.cfbt.mongo.MongoConnection;
+import com.paypal.sre.cfbt.mongo.MongoConnectionFactory;
+import com.paypal.sre.cfbt.request.DatabaseConfigFactory;
+import com.paypal.sre.cfbt.shared.DateUtil;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import org.apache.commons.configuration.Configuration;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.joda.time.DateTime;
+import org.mockito.Matchers;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the incremental refresh of the {@link ClusterView}.
+ */
+public class ClusterViewTest {
+    private static final String IP = "10.0.0.1";
+
+    private Configuration previousConfig;
+    private DatabaseConfig previousDb;
+    private CFBTTestResourceClient previousClient;
+    private Configuration config;
+
+    @BeforeClass
+    public void init() {
+        previousConfig = ConfigManager.getConfiguration();
+        previousDb = ConfigManager.getDatabaseConfig();
+        previousClient = ConfigManager.getTestResourceServClient();
+
+        config = mock(Configuration.class);
+        when(config.getInt(Matchers.anyString(), Matchers.anyInt())).thenAnswer((invocation) -> invocation.getArguments()[1]);
+        when(config.getBoolean(Matchers.anyString(), Matchers.anyBoolean())).thenAnswer((invocation) -> invocation.getArguments()[1]);
+        ConfigManager.setConfiguration(config, previousDb, previousClient);
+    }
+
+    @AfterClass
+    public void restore() {
+        ConfigManager.setConfiguration(previousConfig, previousDb, previousClient);
+    }
+
+    @Test
+    public void mergesTheHeartbeatsWrittenSinceTheLastRefresh() throws Exception {
+        MongoConnectionFactory db = new DatabaseConfigFactory().databaseConfig("ClusterViewMerge").getConnectionFactory();
+        ClusterView view = new ClusterView();
+        DateTime now = DateUtil.currentDateTimeUTC();
+
+        try (MongoConnection c = db.newConnection()) {
+            register(c);
+            heartbeat(c, "thread-1", now);
+            Assert.assertEquals(threads(view.get(db, config)).keySet(), Collections.singleton("thread-1"));
+
+            heartbeat(c, "thread-2", now);
+            view.invalidate();
+            Assert.assertEquals(threads(view.get(db, config)).keySet(), new HashSet<>(Arrays.asList("thread-1", "thread-2")));
+        }
+    }
+
+    @Test
+    public void keepsTheThreadsOfTheEarlierRefreshes() throws Exception {
+        MongoConnectionFactory db = new DatabaseConfigFactory().databaseConfig("ClusterViewKeep").getConnectionFactory();
+        ClusterView view = new ClusterView();
+        DateTime now = DateUtil.currentDateTimeUTC();
+
+        try (MongoConnection c = db.newConnection()) {
+            register(c);
+            // Older than the clock skew, only the first refresh reads it.
+            heartbeat(c, "thread-1", now.minusMinutes(5));
+            heartbeat(c, "thread-2", now);
+            Assert.assertEquals(threads(view.get(db, config)).size(), 2);
+
+            view.invalidate();
+            Map<String, ThreadStatistic> threads = threads(view.get(db, config));
+            Assert.assertEquals(threads.size(), 2);
+            Assert.assertEquals(threads.get("thread-1").getHeartBeatDate(), DateUtil.dateTimeISOFormat(now.minusMinutes(5)));
+        }
+    }
+
+    @Test
+    public void marksTheThreadsDownAndLeavesOutTheDeadOnes() throws Exception {
+        MongoConnectionFactory db = new DatabaseConfigFactory().databaseConfig("ClusterViewDown").getConnectionFactory();
+        ClusterView view = new ClusterView();
+        DateTime now = DateUtil.currentDateTimeUTC();
+
+        try (MongoConnection c = db.newConnection()) {
+            register(c);
+            heartbeat(c, "up", now);
+            heartbeat(c, "down", now.minusMinutes(20));
+            heartbeat(c, "dead", now.minusMinutes(5 * 60));
+
+            Map<String, ThreadStatistic> threads = threads(view.get(db, config));
+            Assert.assertEquals(threads.keySet(), new HashSet<>(Arrays.asList("up", "down")));
+            Assert.assertEquals(threads.get("up").getStatus(), ThreadDetails.Status.UP);
+            Assert.assertEquals(threads.get("down").getStatus(), ThreadDetails.Status.DOWN);
+        }
+    }
+
+    @Test
+    public void ignoresTheChangesOfTheHeartbeatsAlone() {
+        UpdateDescription heartbeat = new UpdateDescription(Collections.<String>emptyList(),
+                new BsonDocument("heartBeatDate", new BsonString("2020-05-01T10:00:00.000Z")));
+        UpdateDescription status = new UpdateDescription(Collections.<String>emptyList(),
+                new BsonDocument("heartBeatDate", new BsonString("2020-05-01T10:00:00.000Z")).append("status", new BsonString("DOWN")));
+
+        Assert.assertFalse(ClusterView.changesThreadState(OperationType.UPDATE, heartbeat));
+        Assert.assertTrue(ClusterView.changesThreadState(OperationType.UPDATE, status));
+        Assert.assertTrue(ClusterView.changesThreadState(OperationType.UPDATE,
+                new UpdateDescription(Arrays.asList("testName"), new BsonDocument())));
+        Assert.assertTrue(ClusterView.changesThreadState(OperationType.INSERT, null));
+        Assert.assertTrue(ClusterView.changesThreadState(OperationType.REPLACE, null));
+        Assert.assertTrue(ClusterView.changesThreadState(OperationType.DELETE, null));
+    }
+
+    private static void register(MongoConnection c) {
+        c.getDB().getCollection("NodeRegistrationData").insertOne(new Document("ip", IP)
+                .append("registeredTime", DateUtil.dateTimeISOFormat(DateUtil.currentDateTimeUTC()))
+                .append("active", Boolean.TRUE)
+                .append("numConfiguredThreads", 2)
+                .append("enableTestRun", Boolean.TRUE));
+    }
+
+    private static void heartbeat(MongoConnection c, String name, DateTime heartBeatDate) {
+        c.getDB().getCollection("ThreadStatistics").insertOne(new Document("ipAddress", IP)
+                .append("hostName", "node1")
+                .append("name", name)
+                .append("heartBeatDate", DateUtil.dateTimeISOFormat(heartBeatDate))
+                .append("status", ThreadDetails.Status.UP.toString()));
+    }
+
+    private static Map<String, ThreadStatistic> threads(ClusterInfo cluster) {
+        Map<String, ThreadStatistic> threads = new HashMap<>();
+        ClusterInfo.Node node = cluster.getFullCluster().get(IP);
+        Assert.assertNotNull(node);
+        for (ThreadStatistic thread : node.getThreadList()) {
+            threads.put(thread.getName(), thread);
+        }
+        return threads;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management.dal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.Deflater;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.io.IOUtils;
+import org.mockito.Matchers;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link AttachmentCodec} and {@link AttachmentCodecPolicy}.
+ *
+ * {@link #benchmark()} measures the codecs over a corpus of attachments, a directory of files named by their type
+ * extension, given with -Dattachment.corpus=&lt;dir&gt; and run with -Pbenchmark.
+ */
+public class AttachmentCodecTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AttachmentCodecTest.class);
+
+    @Test
+    public void roundTrips() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("<div class=\"step\">Step ").append(i).append(" passed</div>\n");
+        }
+        byte[] content = text.toString().getBytes(StandardCharsets.UTF_8);
+
+        for (AttachmentCodec codec : AttachmentCodec.values()) {
+            byte[] compressed = compress(codec, content, Deflater.BEST_SPEED);
+            try (InputStream in = codec.decompress(new ByteArrayInputStream(compressed))) {
+                Assert.assertEquals(IOUtils.toByteArray(in), content, codec.name());
+            }
+            if (!AttachmentCodec.NONE.equals(codec)) {
+                Assert.assertTrue(compressed.length < content.length / 10, codec.name());
+            }
+        }
+    }
+
+    @Test
+    public void picksTheCodecByTypeAndSize() {
+        Assert.assertEquals(AttachmentCodecPolicy.codec(null, "text/html; charset=UTF-8", 5000), AttachmentCodec.DEFLATE);
+        Assert.assertEquals(AttachmentCodecPolicy.codec(null, "application/har+json", 5000), AttachmentCodec.DEFLATE);
+        Assert.assertEquals(AttachmentCodecPolicy.codec(null, "text/plain", 50), AttachmentCodec.NONE);
+        Assert.assertEquals(AttachmentCodecPolicy.codec(null, "image/png", 5000000), AttachmentCodec.NONE);
+        Assert.assertEquals(AttachmentCodecPolicy.codec(null, null, 5000), AttachmentCodec.NONE);
+        Assert.assertEquals(AttachmentCodecPolicy.level(null, 5000), Deflater.DEFAULT_COMPRESSION);
+        Assert.assertEquals(AttachmentCodecPolicy.level(null, 5000000), Deflater.BEST_SPEED);
+    }
+
+    @Test
+    public void fallsBackToDeflateForAnUnknownCodec() {
+        Configuration config = mock(Configuration.class);
+        when(config.getLong(Matchers.anyString(), Matchers.anyLong())).thenAnswer((invocation) -> invocation.getArguments()[1]);
+        when(config.getString("attachmentCodec", null)).thenReturn("brotli");
+        Assert.assertEquals(AttachmentCodecPolicy.codec(config, "text/html", 5000), AttachmentCodec.DEFLATE);
+
+        when(config.getString("attachmentCodec", null)).thenReturn(" gzip ");
+        Assert.assertEquals(AttachmentCodecPolicy.codec(config, "text/html", 5000), AttachmentCodec.GZIP);
+    }
+
+    @Test(groups = "benchmark")
+    public void benchmark() throws Exception {
+        String corpus = System.getProperty("attachment.corpus");
+        File[] files = corpus == null ? null : new File(corpus).listFiles(File::isFile);
+        if (files == null || files.length == 0) {
+            throw new SkipException("No attachment corpus, set -Dattachment.corpus");
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int[] levels = { Deflater.BEST_SPEED, Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION };
+        for (File file : files) {
+            byte[] content = Files.readAllBytes(file.toPath());
+            double megabytes = content.length / 1048576.0;
+            for (AttachmentCodec codec : AttachmentCodec.values()) {
+                for (int level : levels) {
+                    long start = threads.getCurrentThreadCpuTime();
+                    byte[] compressed = compress(codec, content, level);
+                    long compressNanos = threads.getCurrentThreadCpuTime() - start;
+                    start = threads.getCurrentThreadCpuTime();
+                    try (InputStream in = codec.decompress(new ByteArrayInputStream(compressed))) {
+                        IOUtils.toByteArray(in);
+                    }
+                    long decompressNanos = threads.getCurrentThreadCpuTime() - start;
+                    LOGGER.info(String.format("%-8s %-24s %-8s level %2d: ratio %.2f, compress %.1f ms/MB, decompress %.1f ms/MB",
+                            FilenameUtils.getExtension(file.getName()), file.getName(), codec, level,
+                            (double) content.length / compressed.length, compressNanos / 1e6 / megabytes,
+                            decompressNanos / 1e6 / megabytes));
+                    if (AttachmentCodec.NONE.equals(codec)) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private static byte[] compress(AttachmentCodec codec, byte[] content, int level) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.compress(new ByteArrayInputStream(content), out, level);
+        return out.toByteArray();
+    }
+}
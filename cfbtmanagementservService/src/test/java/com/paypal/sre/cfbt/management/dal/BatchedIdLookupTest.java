@@ -0,0 +1,98 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management.dal;
+
+import com.mongodb.MongoClientSettings;
+import com.paypal.sre.cfbt.data.execapi.Test;
+import com.paypal.sre.cfbt.management.CFBTTestResourceClient;
+import com.paypal.sre.cfbt.management.rest.impl.ConfigManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.configuration.Configuration;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.types.ObjectId;
+import org.mockito.Matchers;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+
+/**
+ * Unit tests for the {@link BatchedIdLookup}.
+ */
+public class BatchedIdLookupTest {
+
+    private Configuration previousConfig;
+    private DatabaseConfig previousDb;
+    private CFBTTestResourceClient previousClient;
+
+    @BeforeClass
+    public void init() {
+        previousConfig = ConfigManager.getConfiguration();
+        previousDb = ConfigManager.getDatabaseConfig();
+        previousClient = ConfigManager.getTestResourceServClient();
+
+        Configuration config = mock(Configuration.class);
+        when(config.getInt(Matchers.anyString(), Matchers.anyInt())).thenReturn(5);
+        ConfigManager.setConfiguration(config, previousDb, previousClient);
+    }
+
+    @AfterClass
+    public void restore() {
+        ConfigManager.setConfiguration(previousConfig, previousDb, previousClient);
+    }
+
+    @org.testng.annotations.Test
+    public void readsInChunksAndPreservesOrder() throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            ids.add(new ObjectId().toHexString());
+        }
+        String missing = ids.remove(3);
+        List<String> requested = new ArrayList<>(ids);
+        Collections.reverse(requested);
+        requested.add(missing);
+        requested.add(ids.get(0));
+
+        List<Integer> chunkSizes = new ArrayList<>();
+        List<Test> tests = BatchedIdLookup.read(requested, null, null, (query, projection) -> {
+            BsonDocument queryDoc = query.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry());
+            List<Test> found = new ArrayList<>();
+            for (BsonValue id : queryDoc.getDocument("_id").getArray("$in")) {
+                String hexId = id.asObjectId().getValue().toHexString();
+                if (!missing.equals(hexId)) {
+                    Test test = new Test();
+                    test.setId(hexId);
+                    found.add(test);
+                }
+            }
+            chunkSizes.add(queryDoc.getDocument("_id").getArray("$in").size());
+            // The database returns the documents in its own order.
+            Collections.shuffle(found);
+            return found;
+        }, Test::getId);
+
+        int chunkSize = ConfigManager.getConfiguration().getInt("idLookupChunkSize", 500);
+        Assert.assertEquals(chunkSizes.size(), (12 + chunkSize - 1) / chunkSize);
+        Assert.assertEquals(chunkSizes.stream().mapToInt(Integer::intValue).sum(), 12);
+
+        List<String> expected = new ArrayList<>(ids);
+        Collections.reverse(expected);
+        List<String> actual = new ArrayList<>();
+        tests.forEach((test) -> actual.add(test.getId()));
+        Assert.assertEquals(actual, expected);
+    }
+
+    @org.testng.annotations.Test
+    public void emptyIdsDoNotQuery() throws Exception {
+        List<Test> tests = BatchedIdLookup.read(Arrays.asList(), null, null, (query, projection) -> {
+            throw new IllegalStateException("No query expected");
+        }, Test::getId);
+        Assert.assertTrue(tests.isEmpty());
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management.dal;
+
+import com.paypal.sre.cfbt.mongo.MongoConnectionFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link ChangeStreamInvalidator}.
+ */
+public class ChangeStreamInvalidatorTest {
+
+    @Test
+    public void reopensTheStreamAndDropsTheCacheAfterAFailure() throws Exception {
+        MongoConnectionFactory db = mock(MongoConnectionFactory.class);
+        when(db.newConnection()).thenThrow(new IllegalStateException("mongo unavailable"));
+        AtomicInteger invalidations = new AtomicInteger();
+        ChangeStreamInvalidator invalidator = new ChangeStreamInvalidator("Invalidated", (change) -> { },
+                invalidations::incrementAndGet, 1, 4);
+
+        invalidator.start(db);
+        invalidator.start(db);
+        try {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (invalidator.getFailures() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            invalidator.stop();
+        }
+
+        Assert.assertTrue(invalidator.getFailures() >= 3);
+        Assert.assertTrue(invalidations.get() >= 3);
+    }
+}
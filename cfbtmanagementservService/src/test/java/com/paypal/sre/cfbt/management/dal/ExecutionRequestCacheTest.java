@@ -0,0 +1,101 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management.dal;
+
+import com.paypal.sre.cfbt.data.execapi.ExecutionRequest;
+import com.paypal.sre.cfbt.management.CFBTTestResourceClient;
+import com.paypal.sre.cfbt.management.rest.impl.ConfigManager;
+import com.paypal.sre.cfbt.mongo.MongoConnectionFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.configuration.Configuration;
+import org.bson.types.ObjectId;
+import org.mockito.Matchers;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link ExecutionRequestCache}.
+ */
+public class ExecutionRequestCacheTest {
+    private Configuration previousConfig;
+    private DatabaseConfig previousDb;
+    private CFBTTestResourceClient previousClient;
+    private MongoConnectionFactory db;
+
+    @BeforeClass
+    public void init() throws Exception {
+        previousConfig = ConfigManager.getConfiguration();
+        previousDb = ConfigManager.getDatabaseConfig();
+        previousClient = ConfigManager.getTestResourceServClient();
+
+        Configuration config = mock(Configuration.class);
+        when(config.getInt(Matchers.anyString(), Matchers.anyInt())).thenAnswer((invocation) -> invocation.getArguments()[1]);
+        when(config.getInt(Matchers.eq("executionRequestCacheTtlInMillis"), Matchers.anyInt())).thenReturn(60000);
+        ConfigManager.setConfiguration(config, previousDb, previousClient);
+
+        // The change stream never opens, so it never drops the cache under the tests.
+        db = mock(MongoConnectionFactory.class);
+        when(db.newConnection()).thenAnswer((invocation) -> {
+            Thread.sleep(Long.MAX_VALUE);
+            return null;
+        });
+        ExecutionRequestCache.getInstance().invalidateAll();
+    }
+
+    @AfterClass
+    public void restore() {
+        ExecutionRequestCache.getInstance().invalidateAll();
+        ConfigManager.setConfiguration(previousConfig, previousDb, previousClient);
+    }
+
+    @Test
+    public void returnsCopiesOfTheCachedRequest() throws Exception {
+        String id = new ObjectId().toHexString();
+        AtomicInteger loads = new AtomicInteger();
+        ExecutionRequestCache cache = ExecutionRequestCache.getInstance();
+
+        ExecutionRequest first = cache.get(db, id, () -> {
+            loads.incrementAndGet();
+            return ExecutionRequest.builder().status(ExecutionRequest.Status.PENDING).build();
+        });
+        first.setStatus(ExecutionRequest.Status.COMPLETED);
+
+        ExecutionRequest second = cache.get(db, id, () -> {
+            loads.incrementAndGet();
+            return null;
+        });
+        Assert.assertEquals(loads.get(), 1);
+        Assert.assertEquals(second.getStatus(), ExecutionRequest.Status.PENDING);
+        Assert.assertNotSame(second, first);
+    }
+
+    @Test
+    public void reloadsAfterAnInvalidation() throws Exception {
+        String id = new ObjectId().toHexString();
+        ExecutionRequestCache cache = ExecutionRequestCache.getInstance();
+
+        cache.get(db, id, () -> ExecutionRequest.builder().status(ExecutionRequest.Status.PENDING).build());
+        cache.invalidate(id);
+        ExecutionRequest reloaded = cache.get(db, id, () -> ExecutionRequest.builder().status(ExecutionRequest.Status.IN_PROGRESS).build());
+        Assert.assertEquals(reloaded.getStatus(), ExecutionRequest.Status.IN_PROGRESS);
+    }
+
+    @Test
+    public void doesNotCacheLoadsRacingWithAnInvalidation() throws Exception {
+        String id = new ObjectId().toHexString();
+        ExecutionRequestCache cache = ExecutionRequestCache.getInstance();
+
+        cache.get(db, id, () -> {
+            // Updated while the load was reading the previous value.
+            cache.invalidate(id);
+            return ExecutionRequest.builder().status(ExecutionRequest.Status.PENDING).build();
+        });
+        ExecutionRequest reloaded = cache.get(db, id, () -> ExecutionRequest.builder().status(ExecutionRequest.Status.IN_PROGRESS).build());
+        Assert.assertEquals(reloaded.getStatus(), ExecutionRequest.Status.IN_PROGRESS);
+    }
+}
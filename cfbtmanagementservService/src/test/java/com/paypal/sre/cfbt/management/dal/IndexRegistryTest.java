@@ -0,0 +1,63 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management.dal;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.paypal.sre.cfbt.mongo.MongoConnection;
+import com.paypal.sre.cfbt.request.DatabaseConfigFactory;
+import java.util.ArrayList;
+import java.util.List;
+import org.bson.Document;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link IndexRegistry}.
+ */
+public class IndexRegistryTest {
+
+    @Test
+    public void createsTheUniqueIndexesBeforeTheOthers() throws Exception {
+        DatabaseConfig db = new DatabaseConfigFactory().databaseConfig("IndexRegistry");
+        IndexRegistry registry = IndexRegistry.getInstance();
+
+        List<String> unique = new ArrayList<>();
+        for (IndexRegistry.IndexSpec spec : registry.getIndexes()) {
+            if (spec.isUnique()) {
+                unique.add(spec.getCollection() + "." + spec.getName());
+            }
+        }
+        Assert.assertTrue(unique.contains("TestStatisticsBucket.testId_1_day_1_background_"));
+
+        try (MongoConnection c = db.getConnectionFactory().newConnection()) {
+            Assert.assertEquals(registry.reconcileUnique(c), unique);
+            Assert.assertTrue(registry.reconcileUnique(c).isEmpty());
+
+            // The other indexes are left to the full reconcile, which doesn't recreate the unique ones.
+            List<String> created = registry.reconcile(c);
+            Assert.assertEquals(created.size(), registry.getIndexes().size() - unique.size());
+            for (String name : unique) {
+                Assert.assertFalse(created.contains(name), name);
+            }
+            Assert.assertTrue(registry.reconcile(c).isEmpty());
+        }
+    }
+
+    @Test
+    public void rejectsDuplicateBucketsOnceReconciled() throws Exception {
+        DatabaseConfig db = new DatabaseConfigFactory().databaseConfig("IndexRegistryBuckets");
+
+        try (MongoConnection c = db.getConnectionFactory().newConnection()) {
+            IndexRegistry.getInstance().reconcileUnique(c);
+            c.getDB().getCollection("TestStatisticsBucket").insertOne(new Document("testId", "test").append("day", "2020-05-01"));
+            try {
+                c.getDB().getCollection("TestStatisticsBucket").insertOne(new Document("testId", "test").append("day", "2020-05-01"));
+                Assert.fail("Duplicate bucket inserted");
+            } catch (MongoWriteException ex) {
+                Assert.assertEquals(ex.getError().getCategory(), ErrorCategory.DUPLICATE_KEY);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management.dal;
+
+import com.paypal.sre.cfbt.data.execapi.ExecutionRequest;
+import com.paypal.sre.cfbt.data.execapi.ReleaseTest;
+import com.paypal.sre.cfbt.mongo.MongoConnection;
+import com.paypal.sre.cfbt.request.DatabaseConfigFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the paging of the {@link ReleaseTestDAO#readListing} release test listing.
+ */
+public class ReleaseTestDAOTest {
+    private static final List<String> PENDING = Arrays.asList(ExecutionRequest.Status.PENDING.toString());
+
+    @Test
+    public void encodesAndDecodesCursors() {
+        String id = new ObjectId().toHexString();
+
+        ReleaseTestDAO.ListingCursor timed = ReleaseTestDAO.ListingCursor.decode(
+                new ReleaseTestDAO.ListingCursor(3, "2020-05-01T10:00:00.000Z", id).encode());
+        Assert.assertEquals(timed.getPosition(), 3);
+        Assert.assertEquals(timed.getRequestTime(), "2020-05-01T10:00:00.000Z");
+        Assert.assertEquals(timed.getId(), id);
+
+        ReleaseTestDAO.ListingCursor untimed = ReleaseTestDAO.ListingCursor.decode(
+                new ReleaseTestDAO.ListingCursor(3, null, id).encode());
+        Assert.assertNull(untimed.getRequestTime());
+        Assert.assertEquals(untimed.getId(), id);
+
+        Assert.assertTrue(ReleaseTestDAO.isValidCursor(new ReleaseTestDAO.ListingCursor(0, null, id).encode()));
+        Assert.assertFalse(ReleaseTestDAO.isValidCursor("not a cursor"));
+        Assert.assertFalse(ReleaseTestDAO.isValidCursor(Base64.getUrlEncoder().encodeToString("1|42".getBytes(StandardCharsets.UTF_8))));
+        Assert.assertFalse(ReleaseTestDAO.isValidCursor(Base64.getUrlEncoder().encodeToString(("x|" + id).getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void pagesThroughTheListingByPageAndByCursor() throws Exception {
+        DatabaseConfig db = new DatabaseConfigFactory().databaseConfig("ReleaseListing");
+        ReleaseTestDAO dao = ReleaseTestDAO.getInstance(db.getConnectionFactory());
+
+        try (MongoConnection c = db.getConnectionFactory().newConnection()) {
+            // Requests with and without a request time, sharing positions.
+            for (int i = 0; i < 7; i++) {
+                Document request = new Document("type", ExecutionRequest.Type.RELEASE.toString())
+                        .append("status", ExecutionRequest.Status.PENDING.toString())
+                        .append("position", i / 3)
+                        .append("releaseTest", new Document());
+                if (i % 3 == 1) {
+                    request.append("requestTime", "2020-05-01T10:00:0" + i + ".000Z");
+                } else if (i % 3 == 2) {
+                    request.append("requestTime", null);
+                }
+                c.getDB().getCollection("ExecutionRequest").insertOne(request);
+            }
+
+            List<String> byPage = new ArrayList<>();
+            for (int pageNum = 1; pageNum <= 3; pageNum++) {
+                ReleaseTestDAO.ListingPage page = dao.readListing(c, PENDING, false, null, pageNum, 3, null);
+                Assert.assertEquals(page.getTotal(), 7);
+                Assert.assertEquals(page.getReleaseTests().size(), pageNum < 3 ? 3 : 1);
+                Assert.assertEquals(page.getListing().size(), Math.min(pageNum * 3, 7));
+                // Only the rows of the page are read.
+                Assert.assertEquals(page.getListing().get(0) == null, pageNum > 1);
+                byPage.addAll(ids(page.getReleaseTests()));
+            }
+
+            List<String> byCursor = new ArrayList<>();
+            ReleaseTestDAO.ListingPage page = dao.readListing(c, PENDING, false, null, 1, 3, null);
+            byCursor.addAll(ids(page.getReleaseTests()));
+            while (page.getNextCursor() != null) {
+                page = dao.readListing(c, PENDING, false, null, 1, 3, page.getNextCursor());
+                byCursor.addAll(ids(page.getReleaseTests()));
+            }
+
+            Assert.assertEquals(new HashSet<>(byPage).size(), 7);
+            Assert.assertEquals(byCursor, byPage);
+        }
+    }
+
+    private static List<String> ids(List<ReleaseTest> releaseTests) {
+        List<String> ids = new ArrayList<>();
+        for (ReleaseTest releaseTest : releaseTests) {
+            ids.add(releaseTest.getExecutionRequest().getId());
+        }
+        return ids;
+    }
+}
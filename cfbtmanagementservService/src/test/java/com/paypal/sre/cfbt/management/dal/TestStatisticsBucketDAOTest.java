@@ -0,0 +1,64 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management.dal;
+
+import com.paypal.sre.cfbt.data.execapi.Execution;
+import com.paypal.sre.cfbt.data.test.TestStatistics;
+import com.paypal.sre.cfbt.mongo.MongoConnection;
+import com.paypal.sre.cfbt.request.DatabaseConfigFactory;
+import java.util.Arrays;
+import org.bson.Document;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the recording of the executions in the {@link TestStatisticsBucketDAO}.
+ */
+public class TestStatisticsBucketDAOTest {
+
+    @Test
+    public void recordsAnExecutionOnce() throws Exception {
+        DatabaseConfig db = new DatabaseConfigFactory().databaseConfig("TestStatisticsBucketOnce");
+        TestStatisticsBucketDAO dao = new TestStatisticsBucketDAO("TestStatisticsBucket");
+        String today = TestStatisticsBucketDAO.day(DateTime.now(DateTimeZone.UTC));
+
+        try (MongoConnection c = db.getConnectionFactory().newConnection()) {
+            dao.record(c, "test", today, "execution-1", Execution.Status.PASS, 10);
+            dao.record(c, "test", today, "execution-1", Execution.Status.PASS, 10);
+            dao.record(c, "test", today, "execution-2", Execution.Status.FAIL, 20);
+
+            TestStatistics stats = dao.rollup(c, "test", 1, null);
+            Assert.assertEquals(stats.getNumberExecutions(), 2);
+            Assert.assertEquals(stats.getNumberSuccesses(), 1);
+            Assert.assertEquals(stats.getNumberFailures(), 1);
+            Assert.assertEquals(c.getDB().getCollection(TestStatisticsBucketDAO.MARKERS).count(), 2);
+            // The bucket holds the counters alone, whatever the number of executions.
+            Assert.assertFalse(c.getDB().getCollection("TestStatisticsBucket").find().first().containsKey("executionIds"));
+        }
+    }
+
+    @Test
+    public void skipsTheBackfilledExecutions() throws Exception {
+        DatabaseConfig db = new DatabaseConfigFactory().databaseConfig("TestStatisticsBucketBackfill");
+        TestStatisticsBucketDAO dao = new TestStatisticsBucketDAO("TestStatisticsBucket");
+        String today = TestStatisticsBucketDAO.day(DateTime.now(DateTimeZone.UTC));
+
+        try (MongoConnection c = db.getConnectionFactory().newConnection()) {
+            Document values = new Document("numberExecutions", 1).append("totalExecutionTime", 10L)
+                    .append("numberSuccesses", 1).append("numberFailures", 0).append("numberErrors", 0)
+                    .append("minExecutionTime", 10).append("maxExecutionTime", 10);
+            Assert.assertTrue(dao.insertIfAbsent(c, "test", today, values, Arrays.asList("execution-1")));
+            Assert.assertFalse(dao.insertIfAbsent(c, "test", today, values, Arrays.asList("execution-1")));
+
+            dao.record(c, "test", today, "execution-1", Execution.Status.PASS, 10);
+            dao.record(c, "test", today, "execution-2", Execution.Status.PASS, 30);
+
+            TestStatistics stats = dao.rollup(c, "test", 1, null);
+            Assert.assertEquals(stats.getNumberSuccesses(), 2);
+            Assert.assertEquals(stats.getMaxExecutionTime(), 30);
+        }
+    }
+}
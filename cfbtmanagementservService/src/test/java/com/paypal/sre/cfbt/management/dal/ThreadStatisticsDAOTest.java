@@ -0,0 +1,94 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.management.dal;
+
+import com.paypal.sre.cfbt.management.dal.ThreadStatistics.ThreadStatistic;
+import com.paypal.sre.cfbt.mongo.MongoConnection;
+import com.paypal.sre.cfbt.request.DatabaseConfigFactory;
+import com.paypal.sre.cfbt.shared.DateUtil;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.bson.Document;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the heartbeat comparisons of the {@link ThreadStatisticsDAO}.
+ */
+public class ThreadStatisticsDAOTest {
+
+    @Test
+    public void comparesTheHeartbeatsAsTimes() throws Exception {
+        DatabaseConfig db = new DatabaseConfigFactory().databaseConfig("ThreadStatisticsTimes");
+        ThreadStatisticsDAO dao = new ThreadStatisticsDAO("ThreadStatistics");
+        DateTime now = DateUtil.currentDateTimeUTC();
+
+        try (MongoConnection c = db.getConnectionFactory().newConnection()) {
+            heartbeat(c, "live", DateUtil.dateTimeISOFormat(now));
+            // Live, but sorts before the older heartbeats as a string.
+            heartbeat(c, "offset", now.withZone(DateTimeZone.forOffsetHours(-10)).toString());
+            heartbeat(c, "expired", DateUtil.dateTimeISOFormat(now.minusHours(2)));
+            heartbeat(c, "unparsable", "yesterday");
+
+            Assert.assertEquals(dao.deleteBefore(c, now.minusHours(1)), 1);
+            Assert.assertEquals(names(c), new HashSet<>(Arrays.asList("live", "offset", "unparsable")));
+
+            Set<String> read = new HashSet<>();
+            for (ThreadStatistic thread : dao.readSince(c, now.minusMinutes(1))) {
+                read.add(thread.getName());
+            }
+            Assert.assertEquals(read, new HashSet<>(Arrays.asList("live", "offset")));
+        }
+    }
+
+    @Test
+    public void readsOnlyTheRecentHeartbeatsOnceTheyreCanonical() throws Exception {
+        DatabaseConfig db = new DatabaseConfigFactory().databaseConfig("ThreadStatisticsCanonical");
+        ThreadStatisticsDAO dao = new ThreadStatisticsDAO("ThreadStatistics");
+        DateTime now = DateUtil.currentDateTimeUTC();
+
+        try (MongoConnection c = db.getConnectionFactory().newConnection()) {
+            heartbeat(c, "live", DateUtil.dateTimeISOFormat(now));
+            heartbeat(c, "idle", DateUtil.dateTimeISOFormat(now.minusMinutes(10)));
+            Assert.assertTrue(dao.checkFormat(c));
+
+            Assert.assertEquals(dao.readSince(c, now.minusMinutes(1)).size(), 1);
+            Assert.assertEquals(dao.readSince(c, now.minusHours(1)).size(), 2);
+        }
+    }
+
+    @Test
+    public void purgesByBatches() throws Exception {
+        DatabaseConfig db = new DatabaseConfigFactory().databaseConfig("ThreadStatisticsBatches");
+        ThreadStatisticsDAO dao = new ThreadStatisticsDAO("ThreadStatistics");
+        DateTime now = DateUtil.currentDateTimeUTC();
+
+        try (MongoConnection c = db.getConnectionFactory().newConnection()) {
+            for (int i = 0; i < 1234; i++) {
+                heartbeat(c, "retired-" + i, DateUtil.dateTimeISOFormat(now.minusDays(30).plusSeconds(i)));
+            }
+            heartbeat(c, "live", DateUtil.dateTimeISOFormat(now));
+
+            Assert.assertEquals(dao.deleteBefore(c, now.minusDays(7)), 1234);
+            Assert.assertEquals(names(c), new HashSet<>(Arrays.asList("live")));
+        }
+    }
+
+    private static void heartbeat(MongoConnection c, String name, String heartBeatDate) {
+        c.getDB().getCollection("ThreadStatistics").insertOne(new Document("ipAddress", "10.0.0.1")
+                .append("name", name)
+                .append("heartBeatDate", heartBeatDate));
+    }
+
+    private static Set<String> names(MongoConnection c) {
+        Set<String> names = new HashSet<>();
+        for (Document thread : c.getDB().getCollection("ThreadStatistics").find()) {
+            names.add(thread.getString("name"));
+        }
+        return names;
+    }
+}
@@ -42,4 +42,16 @@ public class CFBTManagementServiceTest {
         Assert.assertEquals(result.getEntity(), "Hello CFBT User! I am ready to serve you.");
     }
 
+    @Test
+    public void testParseRange() {
+        Assert.assertEquals(CFBTManagementService.parseRange(null, 100), new long[] { 0, 99 });
+        Assert.assertEquals(CFBTManagementService.parseRange("bytes=10-19", 100), new long[] { 10, 19 });
+        Assert.assertEquals(CFBTManagementService.parseRange("bytes=90-", 100), new long[] { 90, 99 });
+        Assert.assertEquals(CFBTManagementService.parseRange("bytes=-5", 100), new long[] { 95, 99 });
+        Assert.assertEquals(CFBTManagementService.parseRange("bytes=50-500", 100), new long[] { 50, 99 });
+        Assert.assertNull(CFBTManagementService.parseRange("bytes=100-", 100));
+        Assert.assertNull(CFBTManagementService.parseRange("bytes=a-b", 100));
+        Assert.assertEquals(CFBTManagementService.parseRange("bytes=10-19", -1), new long[] { 0, -1 });
+    }
+
 }
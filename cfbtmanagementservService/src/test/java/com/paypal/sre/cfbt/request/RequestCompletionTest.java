@@ -0,0 +1,171 @@
+/*
+ * (C) 2020 PayPal, Internal software, do not distribute.
+ */
+package com.paypal.sre.cfbt.request;
+
+import com.paypal.sre.cfbt.data.execapi.Execution;
+import com.paypal.sre.cfbt.data.execapi.ExecutionRequest;
+import com.paypal.sre.cfbt.management.CFBTTestResourceClient;
+import com.paypal.sre.cfbt.management.dal.DatabaseConfig;
+import com.paypal.sre.cfbt.management.dal.ExecutionRequestDAO;
+import com.paypal.sre.cfbt.management.dal.ExecutionRequestRepository;
+import com.paypal.sre.cfbt.management.dal.StatisticsBuffer;
+import com.paypal.sre.cfbt.management.rest.impl.ConfigManager;
+import com.paypal.sre.cfbt.shared.DateUtil;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.configuration.Configuration;
+import org.mockito.Matchers;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Covers the TESTING_COMPLETE transition when many tests of a request complete concurrently.
+ *
+ * {@link #benchmark()} logs the time to complete a request with and without the statistics buffer, run it with
+ * -Pbenchmark.
+ */
+public class RequestCompletionTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestCompletionTest.class);
+    private static final int NUMBER_TESTS = 200;
+    private static final int THREADS = 16;
+
+    private Configuration previousConfig;
+    private DatabaseConfig previousDb;
+    private CFBTTestResourceClient previousClient;
+    private DatabaseConfig db;
+    private boolean buffered = false;
+
+    @BeforeClass
+    public void init() {
+        previousConfig = ConfigManager.getConfiguration();
+        previousDb = ConfigManager.getDatabaseConfig();
+        previousClient = ConfigManager.getTestResourceServClient();
+
+        // The configured defaults, with the statistics buffer as set by the test.
+        Configuration config = mock(Configuration.class);
+        when(config.getBoolean(Matchers.anyString(), Matchers.anyBoolean())).thenAnswer((invocation) -> invocation.getArguments()[1]);
+        when(config.getBoolean(Matchers.eq("statisticsBufferEnabled"), Matchers.anyBoolean())).thenAnswer((invocation) -> buffered);
+        when(config.getInt(Matchers.anyString(), Matchers.anyInt())).thenAnswer((invocation) -> invocation.getArguments()[1]);
+        db = new DatabaseConfigFactory().databaseConfig("Completion");
+        ConfigManager.setConfiguration(config, db, mock(CFBTTestResourceClient.class));
+    }
+
+    @AfterClass
+    public void restore() {
+        buffered = false;
+        ConfigManager.setConfiguration(previousConfig, previousDb, previousClient);
+    }
+
+    @Test
+    public void completesOnceAllTestsReported() throws Exception {
+        buffered = false;
+        completeConcurrently();
+    }
+
+    @Test
+    public void completesOnceAllTestsReportedWhenBuffered() throws Exception {
+        buffered = true;
+        try {
+            completeConcurrently();
+        } finally {
+            buffered = false;
+        }
+    }
+
+    @Test(groups = "benchmark")
+    public void benchmark() throws Exception {
+        try {
+            for (boolean buffer : new boolean[] { false, true, false, true }) {
+                buffered = buffer;
+                long millis = completeConcurrently();
+                LOGGER.info(String.format("%d completions on %d threads, statistics buffer %s: %d ms",
+                        NUMBER_TESTS, THREADS, buffer ? "on" : "off", millis));
+            }
+        } finally {
+            buffered = false;
+        }
+    }
+
+    /**
+     * The TESTING_COMPLETE transition is visible as soon as the last completion returns, or once the buffered
+     * completions are flushed, which combines them into fewer writes than there are completions.
+     *
+     * @return The time to complete the request, in ms.
+     */
+    private long completeConcurrently() throws Exception {
+        ExecutionRequestDAO dao = ExecutionRequestDAO.getInstance(db.getConnectionFactory());
+
+        ExecutionRequest request = ExecutionRequest.builder()
+                .numberTests(NUMBER_TESTS)
+                .status(ExecutionRequest.Status.IN_PROGRESS)
+                .datacenter("msmaster")
+                .type(ExecutionRequest.Type.RELEASE)
+                .requestTime(DateUtil.currentDateTimeISOFormat())
+                .build();
+        dao.insert(request);
+
+        ExecutionRequestRepository repository = new ExecutionRequestRepository();
+        StatisticsBuffer buffer = StatisticsBuffer.getInstance();
+        long deltas = buffer.getDeltas();
+        long writes = buffer.getWrites();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        long start = System.currentTimeMillis();
+        try {
+            List<Future<?>> completions = new ArrayList<>();
+            for (int i = 0; i < NUMBER_TESTS - 1; i++) {
+                completions.add(pool.submit(() -> {
+                    repository.updateFromExecution(db.getConnectionFactory(), execution(request.getId(), Execution.Status.IN_PROGRESS), true);
+                    return null;
+                }));
+                Execution.Status status = i % 3 == 0 ? Execution.Status.FAIL : Execution.Status.PASS;
+                completions.add(pool.submit(() -> {
+                    repository.updateFromExecution(db.getConnectionFactory(), execution(request.getId(), status), true);
+                    return null;
+                }));
+            }
+            for (Future<?> completion : completions) {
+                completion.get();
+            }
+
+            Assert.assertEquals(dao.getById(request.getId()).getStatus(), ExecutionRequest.Status.IN_PROGRESS);
+
+            repository.updateFromExecution(db.getConnectionFactory(), execution(request.getId(), Execution.Status.PASS), true);
+            if (buffered) {
+                buffer.flushAll();
+            }
+            ExecutionRequest completed = dao.getById(request.getId());
+            if (buffered) {
+                // The flush also fires COMPLETE_TESTS, which may move the request past TESTING_COMPLETE.
+                Assert.assertNotEquals(completed.getStatus(), ExecutionRequest.Status.IN_PROGRESS);
+                Assert.assertEquals(buffer.getDeltas() - deltas, 2 * NUMBER_TESTS - 1);
+                Assert.assertTrue(buffer.getWrites() - writes < NUMBER_TESTS, (buffer.getWrites() - writes) + " writes");
+            } else {
+                Assert.assertEquals(completed.getStatus(), ExecutionRequest.Status.TESTING_COMPLETE);
+                Assert.assertEquals(buffer.getWrites(), writes);
+            }
+            Assert.assertEquals(completed.getPassedTests() + completed.getFailedTests(), NUMBER_TESTS);
+            return System.currentTimeMillis() - start;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static Execution execution(String requestId, Execution.Status status) {
+        Execution execution = new Execution();
+        execution.setExecutionRequestIds(Arrays.asList(requestId));
+        execution.setReleaseVetting(true);
+        execution.setStatus(status);
+        return execution;
+    }
+}